@@ -0,0 +1,428 @@
+/**
+ * FeedFollower.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import teleporter.metrics.FeedStats;
+
+/**
+ * Follows an append-only feed of route lines, applying new lines to the
+ * network as they are written.
+ * <p>
+ * A background thread waits for the feed's directory to report a change, or
+ * at most a second, then reads every complete line past the applied offset and
+ * applies them in batches. A line still being written is left for the next
+ * read. A feed that shrinks is taken to have been replaced and is read again
+ * from the start.
+ * <p>
+ * The offset is saved in a checkpoint together with the routes of the
+ * network, since the network itself is not kept across restarts. The
+ * checkpoint is written to a temporary file, forced to disk and moved over the
+ * previous one, so a crash leaves either checkpoint whole. On start the routes
+ * of the checkpoint are loaded and following resumes from its offset, which
+ * only needs the routes still in the network rather than every line of the
+ * feed. Lines applied after the last checkpoint are applied again, in the same
+ * order and from the same routes, which ends in the same network.
+ */
+public final class FeedFollower implements Closeable
+{
+    /**
+     * Runs work on the network under its read or write lock.
+     */
+    public interface Access
+    {
+        /**
+         * Runs work that only reads the network.
+         *
+         * @param task the work
+         * @throws Exception if the work fails
+         */
+        void read(Callable<?> task) throws Exception;
+
+        /**
+         * Runs work that changes the network, with nothing else using it.
+         *
+         * @param task the work
+         * @throws Exception if the work fails
+         */
+        void write(Callable<?> task) throws Exception;
+    }
+
+    private static final Logger LOG = Logger.getLogger(FeedFollower.class.getName());
+
+    private static final String OFFSET = "offset ";
+    private static final int READ_BUFFER = 1 << 16;
+    private static final long POLL_MILLIS = 1000;
+
+    private final Path feed;
+    private final Path checkpoint;
+    private final Main main;
+    private final Graph graph;
+    private final Access access;
+    private final int batchSize;
+    private final long checkpointNanos;
+    private final FeedStats stats = new FeedStats();
+    private final Thread thread;
+
+    private volatile boolean closed;
+    private long offset;
+    private long checkpointOffset;
+    private long checkpointTime;
+
+    /**
+     * Creates a follower; {@link #start()} starts it.
+     *
+     * @param feed             the feed to follow
+     * @param checkpoint       the checkpoint file
+     * @param main             applies the lines
+     * @param graph            the network the lines are applied to
+     * @param access           runs work on the network under its locks
+     * @param batchSize        the most lines applied at once
+     * @param checkpointMillis the least time between checkpoints
+     */
+    public FeedFollower(Path feed, Path checkpoint, Main main, Graph graph, Access access, int batchSize,
+            long checkpointMillis)
+    {
+        Objects.requireNonNull(feed, "feed cannot be null");
+        Objects.requireNonNull(checkpoint, "checkpoint cannot be null");
+        Objects.requireNonNull(main, "main cannot be null");
+        Objects.requireNonNull(graph, "graph cannot be null");
+        Objects.requireNonNull(access, "access cannot be null");
+
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        if (checkpointMillis < 0)
+        {
+            throw new IllegalArgumentException("checkpointMillis cannot be negative");
+        }
+
+        this.feed = feed.toAbsolutePath();
+        this.checkpoint = checkpoint;
+        this.main = main;
+        this.graph = graph;
+        this.access = access;
+        this.batchSize = batchSize;
+        this.checkpointNanos = TimeUnit.MILLISECONDS.toNanos(checkpointMillis);
+        this.thread = new Thread(this::follow, "teleporter-feed");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Loads the checkpoint, if any, and starts following the feed in the
+     * background.
+     *
+     * @throws IOException if unable to read the checkpoint
+     */
+    public void start() throws IOException
+    {
+        this.restore();
+        this.stats.register(this.feed.getFileName().toString());
+        this.thread.start();
+    }
+
+    /**
+     * Gets the progress and lag of the feed.
+     *
+     * @return the statistics
+     */
+    public FeedStats getStats()
+    {
+        return this.stats;
+    }
+
+    /**
+     * Stops following after the current batch and writes a last checkpoint.
+     *
+     * @throws IOException if unable to write the checkpoint
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.closed = true;
+
+        try
+        {
+            this.thread.join();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.offset != this.checkpointOffset)
+        {
+            this.save();
+        }
+    }
+
+    private void follow()
+    {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService())
+        {
+            this.feed.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+
+            while (!this.closed)
+            {
+                this.readAvailable();
+
+                if (this.offset != this.checkpointOffset
+                        && System.nanoTime() - this.checkpointTime >= this.checkpointNanos)
+                {
+                    this.save();
+                }
+
+                // events only wake the thread; the feed size says what changed
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null)
+                {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            LOG.log(Level.SEVERE, "unable to follow " + this.feed, ex);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readAvailable() throws IOException
+    {
+        long size;
+        try
+        {
+            size = Files.size(this.feed);
+        }
+        catch (NoSuchFileException ex)
+        {
+            return;
+        }
+
+        if (size < this.offset)
+        {
+            LOG.warning(this.feed + " shrank to " + size + " bytes, reading it again from the start");
+            this.offset = 0;
+            this.stats.restarted();
+        }
+
+        this.stats.seen(size);
+        if (size == this.offset)
+        {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(this.feed, StandardOpenOption.READ))
+        {
+            channel.position(this.offset);
+
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+            ByteArrayOutputStream partial = new ByteArrayOutputStream();
+            List<String> batch = new ArrayList<>(this.batchSize);
+            long position = this.offset;
+
+            while (!this.closed && channel.read(buffer) > 0)
+            {
+                // the feed may have grown since it was first measured
+                this.stats.seen(channel.size());
+
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    byte b = buffer.get();
+                    position++;
+                    if (b != '\n')
+                    {
+                        partial.write(b);
+                        continue;
+                    }
+
+                    String line = partial.toString(StandardCharsets.UTF_8);
+                    partial.reset();
+                    batch.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+                    if (batch.size() == this.batchSize)
+                    {
+                        this.apply(batch, position);
+                    }
+                }
+                buffer.clear();
+            }
+
+            this.apply(batch, position - partial.size());
+        }
+    }
+
+    private void apply(List<String> batch, long end) throws IOException
+    {
+        if (!batch.isEmpty())
+        {
+            int applied = this.ingest(batch);
+
+            this.offset = end;
+            this.stats.applied(end, applied, batch.size() - applied);
+            batch.clear();
+        }
+    }
+
+    private int ingest(List<String> batch) throws IOException
+    {
+        int[] applied = new int[1];
+        try
+        {
+            this.access.write(() -> applied[0] = this.main.ingest(batch));
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            throw ex;
+        }
+        catch (Exception ex)
+        {
+            throw new IOException("unable to apply feed lines", ex);
+        }
+
+        return applied[0];
+    }
+
+    /**
+     * Loads the routes of the checkpoint and resumes from its offset.
+     */
+    private void restore() throws IOException
+    {
+        if (!Files.exists(this.checkpoint))
+        {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(this.checkpoint, StandardCharsets.UTF_8))
+        {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith(OFFSET))
+            {
+                throw new IOException(this.checkpoint + " is not a feed checkpoint");
+            }
+            long restored = Long.parseLong(header.substring(OFFSET.length()));
+
+            List<String> batch = new ArrayList<>(this.batchSize);
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                batch.add(line);
+                if (batch.size() == this.batchSize)
+                {
+                    this.ingest(batch);
+                    batch.clear();
+                }
+            }
+            this.ingest(batch);
+
+            this.offset = restored;
+            this.checkpointOffset = restored;
+            this.checkpointTime = System.nanoTime();
+            this.stats.applied(restored, 0, 0);
+            LOG.info("resuming " + this.feed + " at byte " + restored + " with " + this.graph.getRouteCount()
+                    + " routes from " + this.checkpoint);
+        }
+    }
+
+    /**
+     * Writes the offset and the routes of the network to the checkpoint.
+     */
+    private void save() throws IOException
+    {
+        Path temporary = this.checkpoint.resolveSibling(this.checkpoint.getFileName() + ".tmp");
+        long saved = this.offset;
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            writer.write(OFFSET + saved + "\n");
+            this.access.read(() ->
+            {
+                this.graph.forEachRoute((from, to) -> {
+                    try
+                    {
+                        writer.write(from.name + " - " + to.name + "\n");
+                    }
+                    catch (IOException ex)
+                    {
+                        throw new UncheckedIOException(ex);
+                    }
+                }, false);
+
+                return null;
+            });
+            writer.flush();
+            channel.force(true);
+        }
+        catch (UncheckedIOException ex)
+        {
+            throw ex.getCause();
+        }
+        catch (IOException ex)
+        {
+            throw ex;
+        }
+        catch (Exception ex)
+        {
+            throw new IOException("unable to write checkpoint " + this.checkpoint, ex);
+        }
+
+        Files.move(temporary, this.checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.checkpointOffset = saved;
+        this.checkpointTime = System.nanoTime();
+        this.stats.checkpointed();
+    }
+}
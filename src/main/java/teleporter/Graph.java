@@ -23,133 +23,1250 @@
  */
 package teleporter;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.function.BiConsumer;
 
+import teleporter.QueryPlan.Strategy;
+import teleporter.QueryPlanner.Index;
 import teleporter.data.City;
-import teleporter.data.Node;
 import teleporter.data.Route;
+import teleporter.index.Biconnectivity;
+import teleporter.index.Components;
+import teleporter.index.DistanceLabels;
+import teleporter.index.DynamicConnectivity;
+import teleporter.index.IncrementalComponents;
+import teleporter.metrics.QueryContext;
+import teleporter.storage.CompactStorage;
+import teleporter.storage.CompressedStorage;
+import teleporter.storage.FrozenStorage;
+import teleporter.storage.GraphStorage;
+import teleporter.storage.HeapStorage;
+import teleporter.storage.NeighborCursor;
+import teleporter.storage.VertexOrder;
+import teleporter.util.IntBitmap;
+import teleporter.util.LongHashSet;
 
 /**
  * Provides an undirected cyclic graph for modeling a teleportation network.
+ * <p>
+ * Queries may run on several threads at once while nothing changes the
+ * network; routes must be added or removed by one thread at a time with no
+ * queries running. Queries needing a whole index, such as a component
+ * summary, build it once between them while the others wait. Queries that
+ * only search faster with an index request it instead, and it is built by
+ * {@link #buildRequestedIndexes()} like a change.
  */
 public class Graph
 {
-    private final Map<City, Node> vertexMap = new HashMap<>();
-    private final Function<City, Node> cityToNode = (city) -> new Node(city);
+    private GraphStorage storage;
+    private final LongHashSet routeKeys = new LongHashSet();
+    private final ThreadLocal<Traversal> traversals = ThreadLocal.withInitial(Traversal::new);
+    private final QueryPlanner planner = new QueryPlanner();
+    private final Object buildLock = new Object();
+
+    private volatile Components components;
+    private volatile Biconnectivity biconnectivity;
+    private volatile IncrementalComponents incremental;
+    private DynamicConnectivity connectivity;
+    private DistanceLabels distances;
+    private Watches watches;
+    private long duplicateRouteCount;
+    private int numbering;
+
+    /**
+     * Creates a new graph stored on the Java heap.
+     */
+    public Graph()
+    {
+        this(new HeapStorage());
+    }
+
+    /**
+     * Creates a new graph using the input storage.
+     *
+     * @param storage the storage for the cities and routes
+     */
+    public Graph(GraphStorage storage)
+    {
+        Objects.requireNonNull(storage, "storage cannot be null");
+
+        this.storage = storage;
+    }
+
+    /**
+     * Adds a new route to the network. Routes already in the network are
+     * detected with a single lookup of their packed city identifiers and
+     * counted as duplicates.
+     *
+     * @param route the route to add
+     * @return if the route was not already in the network
+     * @throws IllegalStateException if the network is frozen, or already
+     *                               holds {@link LongHashSet#MAX_SIZE}
+     *                               routes
+     */
+    public boolean addRoute(Route route)
+    {
+        this.checkNotFrozen();
+
+        int from = this.storage.intern(route.from);
+        int to = this.storage.intern(route.to);
+
+        if (!this.routeKeys.add(routeKey(from, to)))
+        {
+            this.duplicateRouteCount++;
+            return false;
+        }
+
+        this.storage.connect(from, to);
+
+        this.components = null;
+        this.biconnectivity = null;
+        this.distances = null;
+        if (this.connectivity != null)
+        {
+            this.connectivity.routeAdded(from, to);
+        }
+        else if (this.incremental != null)
+        {
+            this.incremental.routeAdded(from, to, this.storage.size());
+        }
+
+        if (this.watches != null)
+        {
+            this.watches.routeAdded(route, from, to);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes a route from the network. The first removal starts maintaining
+     * connectivity incrementally, so route and loop searches stay fast while
+     * routes come and go.
+     *
+     * @param route the route to remove
+     * @return if the route was in the network
+     * @throws IllegalStateException if the network is frozen
+     */
+    public boolean removeRoute(Route route)
+    {
+        this.checkNotFrozen();
+
+        int from = this.storage.find(route.from);
+        int to = this.storage.find(route.to);
+
+        if (from < 0 || to < 0 || !this.routeKeys.remove(routeKey(from, to)))
+        {
+            return false;
+        }
+
+        this.storage.disconnect(from, to);
+
+        this.components = null;
+        this.biconnectivity = null;
+        this.incremental = null;
+        this.distances = null;
+        if (this.connectivity == null)
+        {
+            this.connectivity = new DynamicConnectivity(this.storage);
+        }
+        else
+        {
+            this.connectivity.routeRemoved(from, to);
+        }
+
+        if (this.watches != null)
+        {
+            this.watches.rebuild(this.storage);
+        }
+
+        return true;
+    }
+
+    /**
+     * Freezes the network into compact storage, renumbering the cities so that
+     * neighbors get nearby identifiers and searches scan adjacency in order.
+     * City names and query results are unchanged. Routes can no longer be
+     * added or removed, and indexes are rebuilt for the new numbering when
+     * next needed.
+     *
+     * @param order      the order to number cities in
+     * @param compressed if neighbor lists are gap encoded, trading search
+     *                   speed for memory
+     * @return the frozen storage
+     */
+    public FrozenStorage freeze(VertexOrder order, boolean compressed)
+    {
+        FrozenStorage frozen = compressed ? CompressedStorage.freeze(this.storage, order)
+                : CompactStorage.freeze(this.storage, order);
+
+        this.storage = frozen;
+        this.numbering++;
+        this.components = null;
+        this.biconnectivity = null;
+        this.incremental = null;
+        this.connectivity = null;
+        this.distances = null;
+        if (this.watches != null)
+        {
+            this.watches.rebuild(frozen);
+        }
+
+        return frozen;
+    }
+
+    /**
+     * Starts a watch, whose listener then hears each change of its answer
+     * as routes are added and removed. Added routes update the watches in
+     * near constant time, without searching; a removal checks every watch
+     * again. Watches are started and stopped while nothing else uses the
+     * graph, like routes are added.
+     *
+     * @param watch the watch
+     * @return the current answer
+     */
+    public boolean watch(Watch watch)
+    {
+        Objects.requireNonNull(watch, "watch cannot be null");
+
+        if (this.watches == null)
+        {
+            this.watches = new Watches(this.storage);
+        }
+
+        return this.watches.add(watch);
+    }
+
+    /**
+     * Stops a watch.
+     *
+     * @param watch the watch
+     * @return if the watch was started
+     */
+    public boolean unwatch(Watch watch)
+    {
+        Objects.requireNonNull(watch, "watch cannot be null");
+
+        boolean removed = this.watches != null && this.watches.remove(watch);
+        this.dropEmptyWatches();
+
+        return removed;
+    }
+
+    /**
+     * Stops every watch of a listener.
+     *
+     * @param listener the listener
+     * @return the number of watches stopped
+     */
+    public int unwatch(Watch.Listener listener)
+    {
+        Objects.requireNonNull(listener, "listener cannot be null");
+
+        int removed = this.watches == null ? 0 : this.watches.remove(listener);
+        this.dropEmptyWatches();
+
+        return removed;
+    }
+
+    private void dropEmptyWatches()
+    {
+        if (this.watches != null && this.watches.size() == 0)
+        {
+            this.watches = null;
+        }
+    }
+
+    /**
+     * Determines if the network is frozen.
+     *
+     * @return if routes can no longer be added or removed
+     */
+    public boolean isFrozen()
+    {
+        return this.storage instanceof FrozenStorage;
+    }
+
+    private void checkNotFrozen()
+    {
+        if (this.isFrozen())
+        {
+            throw new IllegalStateException("network is frozen");
+        }
+    }
+
+    /**
+     * Gets the number of cities in the network.
+     *
+     * @return the number of cities
+     */
+    public int getCityCount()
+    {
+        return this.storage.size();
+    }
+
+    /**
+     * Gets the number of routes from a city.
+     *
+     * @param city the city
+     * @return the number of routes, or zero if the city is unknown
+     */
+    public int getDegree(City city)
+    {
+        int id = this.storage.find(city);
+
+        return id < 0 ? 0 : this.storage.degree(id);
+    }
+
+    /**
+     * Gets the size of the component of a city if it is known without
+     * searching, that is while component labels are current.
+     *
+     * @param city the city
+     * @return the number of cities in the component, zero if the city is
+     *         unknown, or -1 if the size is not known
+     */
+    public long getKnownComponentSize(City city)
+    {
+        int id = this.storage.find(city);
+        if (id < 0)
+        {
+            return 0;
+        }
+
+        long size = -1;
+        if (this.connectivity != null)
+        {
+            size = this.connectivity.getComponentSize(id);
+        }
+        else if (this.components != null)
+        {
+            size = this.components.getSize(this.components.getComponent(id));
+        }
+        else
+        {
+            IncrementalComponents current = this.incremental;
+            if (current != null)
+            {
+                size = current.getComponentSize(id);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Determines if jump counts are answered from current distance labels.
+     *
+     * @return if the distance labels are current
+     */
+    public boolean isDistanceIndexed()
+    {
+        return this.distances != null;
+    }
+
+    /**
+     * Gets the number of distinct routes in the network.
+     *
+     * @return the number of routes
+     */
+    public long getRouteCount()
+    {
+        return this.routeKeys.size();
+    }
+
+    /**
+     * Gets the number of routes that were added when already in the network.
+     *
+     * @return the number of duplicate routes
+     */
+    public long getDuplicateRouteCount()
+    {
+        return this.duplicateRouteCount;
+    }
+
+    /**
+     * Gets all known routes from the network.
+     *
+     * @return the routes
+     */
+    public Set<Route> getRoutes()
+    {
+        Set<Route> routes = new HashSet<>();
+
+        this.forEachRoute((from, to) -> routes.add(new Route(from, to)), false);
+
+        return routes;
+    }
+
+    /**
+     * Streams every known route to a consumer exactly once, without collecting
+     * the routes. Each route is given with the cities in the order used by
+     * {@link Route}.
+     * <p>
+     * Unsorted, routes are produced in storage order with no extra memory.
+     * Sorted, routes are produced by first city name and then second city name;
+     * this needs memory for the city names and the neighbors of one city, but
+     * never for the routes themselves.
+     *
+     * @param consumer receives each route
+     * @param sorted   if the routes should be sorted by city name
+     */
+    public void forEachRoute(BiConsumer<City, City> consumer, boolean sorted)
+    {
+        if (sorted)
+        {
+            this.forEachSortedRoute(consumer);
+        }
+        else
+        {
+            NeighborCursor cursor = this.storage.cursor();
+            for (int id = 0; id < this.storage.size(); id++)
+            {
+                City city = null;
+
+                cursor.of(id);
+                while (cursor.hasNext())
+                {
+                    int neighbor = cursor.next();
+                    if (id < neighbor)
+                    {
+                        if (city == null)
+                        {
+                            city = this.storage.city(id);
+                        }
+
+                        City other = this.storage.city(neighbor);
+                        if (city.name.compareTo(other.name) < 0)
+                        {
+                            consumer.accept(city, other);
+                        }
+                        else
+                        {
+                            consumer.accept(other, city);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void forEachSortedRoute(BiConsumer<City, City> consumer)
+    {
+        int size = this.storage.size();
+
+        String[] names = new String[size];
+        int[] order = new int[size];
+        for (int id = 0; id < size; id++)
+        {
+            names[id] = this.storage.city(id).name;
+            order[id] = id;
+        }
+
+        sortByName(order, size, names, new int[size]);
+
+        int[] neighbors = new int[16];
+        int[] scratch = new int[16];
+
+        NeighborCursor cursor = this.storage.cursor();
+        for (int id : order)
+        {
+            String name = names[id];
+
+            int count = 0;
+            cursor.of(id);
+            while (cursor.hasNext())
+            {
+                int neighbor = cursor.next();
+                if (name.compareTo(names[neighbor]) < 0)
+                {
+                    if (count == neighbors.length)
+                    {
+                        neighbors = Arrays.copyOf(neighbors, count * 2);
+                        scratch = new int[count * 2];
+                    }
+                    neighbors[count++] = neighbor;
+                }
+            }
+
+            if (count > 0)
+            {
+                sortByName(neighbors, count, names, scratch);
+
+                City city = new City(name);
+                for (int i = 0; i < count; i++)
+                {
+                    consumer.accept(city, new City(names[neighbors[i]]));
+                }
+            }
+        }
+    }
+
+    private static void sortByName(int[] ids, int length, String[] names, int[] scratch)
+    {
+        for (int width = 1; width < length; width *= 2)
+        {
+            for (int low = 0; low < length - width; low += 2 * width)
+            {
+                int middle = low + width;
+                int high = Math.min(low + 2 * width, length);
+
+                System.arraycopy(ids, low, scratch, low, high - low);
+
+                int left = low;
+                int right = middle;
+                for (int i = low; i < high; i++)
+                {
+                    if (right >= high || (left < middle && names[scratch[left]].compareTo(names[scratch[right]]) <= 0))
+                    {
+                        ids[i] = scratch[left++];
+                    }
+                    else
+                    {
+                        ids[i] = scratch[right++];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the cities one jump away from a city.
+     *
+     * @param city the city
+     * @return the neighboring cities
+     */
+    public List<City> getNeighbors(City city)
+    {
+        List<City> neighbors = new ArrayList<>();
+
+        int id = this.storage.find(city);
+        if (id >= 0)
+        {
+            NeighborCursor cursor = this.storage.cursor().of(id);
+            while (cursor.hasNext())
+            {
+                neighbors.add(this.storage.city(cursor.next()));
+            }
+        }
+
+        return neighbors;
+    }
+
+    /**
+     * Gets the teleportation neighborhood.
+     *
+     * @param originCity the origin of the neighborhood
+     * @param maxJumps   the maximum number of jumps allowed when defining the
+     *                   neighborhood
+     * @return all cities that require at most maxJumps jumps from the origin city
+     */
+    public Set<City> getNeighborhood(City originCity, int maxJumps)
+    {
+        return this.getNeighborhood(originCity, maxJumps, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the first cities of the teleportation neighborhood in order of
+     * increasing jumps. The search stops as soon as limit cities are found.
+     *
+     * @param originCity the origin of the neighborhood
+     * @param maxJumps   the maximum number of jumps allowed when defining the
+     *                   neighborhood
+     * @param limit      the maximum number of cities to return
+     * @return at most limit cities that require at most maxJumps jumps from
+     *         the origin city
+     */
+    public Set<City> getNeighborhood(City originCity, int maxJumps, int limit)
+    {
+        Set<City> neighborhood = new LinkedHashSet<>();
+
+        int origin = this.storage.find(originCity);
+        if (origin >= 0)
+        {
+            this.traverse(origin, maxJumps, limit, (city, from) -> neighborhood.add(this.storage.city(city)));
+        }
+
+        return neighborhood;
+    }
+
+    /**
+     * Gets the first cities within maxJumps of any of several origins, such
+     * as depots, in order of increasing jumps, with the origin nearest to
+     * each. A single search is seeded with every origin, so each city is
+     * visited once however many origins there are. Ties go to the origin
+     * listed first; the origins themselves are not included.
+     *
+     * @param originCities the origins of the neighborhood
+     * @param maxJumps     the maximum number of jumps allowed when defining
+     *                     the neighborhood
+     * @param limit        the maximum number of cities to return
+     * @return at most limit cities that require at most maxJumps jumps from
+     *         an origin, each mapped to its nearest origin
+     */
+    public Map<City, City> getNeighborhood(Collection<City> originCities, int maxJumps, int limit)
+    {
+        Objects.requireNonNull(originCities, "originCities cannot be null");
+
+        Map<City, City> neighborhood = new LinkedHashMap<>();
+
+        Traversal traversal = this.traversals.get();
+        traversal.ensureCapacity(originCities.size());
+
+        int count = 0;
+        for (City originCity : originCities)
+        {
+            int origin = this.storage.find(originCity);
+            if (origin >= 0)
+            {
+                traversal.queue[count] = origin;
+                traversal.sources[count++] = origin;
+            }
+        }
+
+        if (count > 0)
+        {
+            this.traverse(traversal, count, maxJumps, limit,
+                    (city, origin) -> neighborhood.put(this.storage.city(city), this.storage.city(origin)));
+        }
+
+        return neighborhood;
+    }
+
+    /**
+     * Gets the teleportation neighborhood as a bitmap of city identifiers, so
+     * results can be kept compactly and combined with each other.
+     *
+     * @param originCity the origin of the neighborhood
+     * @param maxJumps   the maximum number of jumps allowed when defining the
+     *                   neighborhood
+     * @return the identifiers of all cities that require at most maxJumps
+     *         jumps from the origin city, valid until the cities are
+     *         renumbered
+     * @see #getNumbering()
+     */
+    public IntBitmap getNeighborhoodIds(City originCity, int maxJumps)
+    {
+        IdCollector collector = new IdCollector();
+
+        int origin = this.storage.find(originCity);
+        if (origin >= 0)
+        {
+            this.traverse(origin, maxJumps, Integer.MAX_VALUE, collector);
+        }
+
+        return IntBitmap.of(collector.ids, collector.size);
+    }
+
+    /**
+     * Gets the city with an identifier.
+     *
+     * @param id the identifier
+     * @return the city
+     */
+    public City getCity(int id)
+    {
+        return this.storage.city(id);
+    }
+
+    /**
+     * Gets a number that changes whenever the cities are renumbered, after
+     * which identifiers from earlier results no longer name the same cities.
+     *
+     * @return the numbering
+     */
+    public int getNumbering()
+    {
+        return this.numbering;
+    }
+
+    /**
+     * Counts the cities of the teleportation neighborhood without looking up
+     * their names.
+     *
+     * @param originCity the origin of the neighborhood
+     * @param maxJumps   the maximum number of jumps allowed when defining the
+     *                   neighborhood
+     * @return the number of cities that require at most maxJumps jumps from
+     *         the origin city
+     */
+    public int countNeighborhood(City originCity, int maxJumps)
+    {
+        int origin = this.storage.find(originCity);
+
+        return origin < 0 ? 0 : this.traverse(origin, maxJumps, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Gets the planner deciding when indexes are built on demand.
+     *
+     * @return the planner
+     */
+    public QueryPlanner getPlanner()
+    {
+        return this.planner;
+    }
+
+    /**
+     * Explains how {@link #canTeleport(City, City)} would answer next.
+     *
+     * @return the plan
+     */
+    public QueryPlan planRouteSearch()
+    {
+        QueryPlan plan;
+
+        if (this.connectivity != null)
+        {
+            plan = new QueryPlan(Strategy.CONNECTIVITY_FOREST, "kept current as routes are added and removed");
+        }
+        else if (this.components != null)
+        {
+            plan = new QueryPlan(Strategy.COMPONENT_LABELS, "labels are current");
+        }
+        else if (this.incremental != null)
+        {
+            plan = new QueryPlan(Strategy.COMPONENT_LABELS,
+                    "last labels plus " + this.incremental.getDeltaSize() + " routes added since");
+        }
+        else
+        {
+            plan = this.planBuild(Index.COMPONENT_LABELS);
+        }
+
+        return plan;
+    }
+
+    /**
+     * Explains how {@link #canTeleport(City, City, int)} would answer next.
+     *
+     * @param fromCity the first city
+     * @param toCity   the second city
+     * @return the plan
+     */
+    public QueryPlan planBoundedRouteSearch(City fromCity, City toCity)
+    {
+        QueryPlan plan = new QueryPlan(Strategy.TRAVERSAL, "bidirectional search within the jump limit");
+
+        int from = this.storage.find(fromCity);
+        int to = this.storage.find(toCity);
+        IncrementalComponents current = this.incremental;
+        if (from < 0 || to < 0)
+        {
+            plan = new QueryPlan(Strategy.TRAVERSAL, "unknown city, nothing to search");
+        }
+        else if (this.distances != null)
+        {
+            plan = new QueryPlan(Strategy.DISTANCE_LABELS, "labels are current");
+        }
+        else if (this.connectivity != null && !this.connectivity.isConnected(from, to))
+        {
+            plan = new QueryPlan(Strategy.CONNECTIVITY_FOREST, "the cities are not connected");
+        }
+        else if (this.components != null && this.components.getComponent(from) != this.components.getComponent(to)
+                || this.components == null && current != null && !current.isConnected(from, to))
+        {
+            plan = new QueryPlan(Strategy.COMPONENT_LABELS, "the cities are not connected");
+        }
+
+        return plan;
+    }
+
+    /**
+     * Explains how {@link #isCityOnLoop(City)} would answer next.
+     *
+     * @param city the city to test
+     * @return the plan
+     */
+    public QueryPlan planLoopSearch(City city)
+    {
+        QueryPlan plan;
+
+        int id = this.storage.find(city);
+        if (this.biconnectivity != null)
+        {
+            plan = new QueryPlan(Strategy.LOOP_INDEX, "bridges are current");
+        }
+        else if (id < 0)
+        {
+            plan = new QueryPlan(Strategy.TRAVERSAL, "unknown city, nothing to search");
+        }
+        else if (this.connectivity != null && this.connectivity.hasNonTreeRoute(id))
+        {
+            plan = new QueryPlan(Strategy.CONNECTIVITY_FOREST, "a route outside the spanning forest meets the city");
+        }
+        else
+        {
+            plan = this.planBuild(Index.LOOP_INDEX);
+        }
+
+        return plan;
+    }
+
+    /**
+     * Explains how {@link #getDistance(City, City)} would answer next.
+     *
+     * @return the plan
+     */
+    public QueryPlan planDistanceSearch()
+    {
+        return this.distances != null ? new QueryPlan(Strategy.DISTANCE_LABELS, "labels are current")
+                : new QueryPlan(Strategy.TRAVERSAL, "breadth first search; index distances to build labels");
+    }
+
+    /**
+     * Explains how {@link #getComponents()} would answer next.
+     *
+     * @return the plan
+     */
+    public QueryPlan planComponentSearch()
+    {
+        QueryPlan plan;
+
+        if (this.components != null)
+        {
+            plan = new QueryPlan(Strategy.COMPONENT_LABELS, "labels are current");
+        }
+        else if (this.incremental != null)
+        {
+            plan = new QueryPlan(Strategy.COMPONENT_LABELS,
+                    "last labels plus " + this.incremental.getDeltaSize() + " routes added since");
+        }
+        else
+        {
+            plan = new QueryPlan(Strategy.BUILD_COMPONENT_LABELS, "labels are built on first use");
+        }
+
+        return plan;
+    }
+
+    /**
+     * Plans a search counting towards an index, which is built after the
+     * search if it reaches the threshold.
+     */
+    private QueryPlan planBuild(Index index)
+    {
+        return new QueryPlan(Strategy.TRAVERSAL, this.planner.describe(index, this.getBuildCost()));
+    }
+
+    /**
+     * Determines if queries requested an index that is not built yet.
+     *
+     * @return if {@link #buildRequestedIndexes()} has work to do
+     */
+    public boolean hasRequestedIndexes()
+    {
+        return this.planner.isRequested(Index.COMPONENT_LABELS) || this.planner.isRequested(Index.LOOP_INDEX);
+    }
+
+    /**
+     * Builds the indexes requested by queries that found them missing often
+     * enough. Like a change, this runs with no queries running, so that
+     * queries never pay for a build their estimated cost did not include.
+     */
+    public void buildRequestedIndexes()
+    {
+        if (this.planner.isRequested(Index.COMPONENT_LABELS))
+        {
+            this.getComponents();
+            this.planner.built(Index.COMPONENT_LABELS);
+        }
+
+        if (this.planner.isRequested(Index.LOOP_INDEX))
+        {
+            this.getBiconnectivity();
+            this.planner.built(Index.LOOP_INDEX);
+        }
+    }
+
+    /**
+     * Estimates the work of building an index over the whole network.
+     */
+    private long getBuildCost()
+    {
+        return this.storage.size() + 2 * this.routeKeys.size();
+    }
+
+    /**
+     * Gets the bridges of the network and the cities on loops, finding them
+     * if the network changed since they were last found. Once found, loop
+     * searches look cities up instead of searching the network.
+     *
+     * @return the bridges and loop cities
+     */
+    public Biconnectivity getBiconnectivity()
+    {
+        Biconnectivity bridges = this.biconnectivity;
+        if (bridges == null)
+        {
+            synchronized (this.buildLock)
+            {
+                bridges = this.biconnectivity;
+                if (bridges == null)
+                {
+                    bridges = Biconnectivity.build(this.storage);
+                    this.biconnectivity = bridges;
+                }
+            }
+        }
+
+        return bridges;
+    }
+
+    /**
+     * Gets the connected components of the network, labeling them if the
+     * network changed since they were last labeled. Once labeled, route
+     * searches compare labels instead of searching the network. Until a
+     * route is removed, the labels then follow added routes through a small
+     * delta and are rebuilt in the background, so route searches keep
+     * comparing labels while routes are added and later labelings only
+     * extend the last labels built.
+     *
+     * @return the components
+     */
+    public Components getComponents()
+    {
+        Components labels = this.components;
+        if (labels == null)
+        {
+            synchronized (this.buildLock)
+            {
+                labels = this.components;
+                if (labels == null)
+                {
+                    labels = this.buildComponents();
+                    this.components = labels;
+                }
+            }
+        }
+
+        return labels;
+    }
+
+    private Components buildComponents()
+    {
+        Components labels;
+
+        IncrementalComponents current = this.incremental;
+        if (current != null)
+        {
+            labels = current.getComponents(this.storage.size());
+        }
+        else
+        {
+            labels = Components.build(this.storage);
+            if (this.connectivity == null && !this.isFrozen())
+            {
+                this.incremental = new IncrementalComponents(labels);
+            }
+        }
+
+        return labels;
+    }
 
     /**
-     * Adds a new route to the network.
+     * Gets the connected component a city belongs to.
      *
-     * @param route the route to add
+     * @param city the city
+     * @return the component identifier, or -1 if the city is unknown
      */
-    public void addRoute(Route route)
+    public int getComponent(City city)
     {
-        Node fromNode = this.vertexMap.computeIfAbsent(route.from, this.cityToNode);
-        Node toNode = this.vertexMap.computeIfAbsent(route.to, this.cityToNode);
+        int id = this.storage.find(city);
 
-        fromNode.neighbors.add(toNode);
-        toNode.neighbors.add(fromNode);
+        return id < 0 ? -1 : this.getComponents().getComponent(id);
     }
 
     /**
-     * Gets all known routes from the network.
+     * Determines if a set of routes exist from one city to another.
      *
-     * @return the routes
+     * @param fromCity the origin city
+     * @param toCity   the destination city
+     * @return if it is possible to teleport from the origin city to the destination
+     *         city
      */
-    public Set<Route> getRoutes()
+    public boolean canTeleport(City fromCity, City toCity)
     {
-        Set<Route> routes = new HashSet<>();
+        int from = this.storage.find(fromCity);
+        int to = this.storage.find(toCity);
+        if (from < 0 || to < 0)
+        {
+            return false;
+        }
+
+        if (this.connectivity != null)
+        {
+            return from != to && this.connectivity.isConnected(from, to);
+        }
+
+        if (this.components != null)
+        {
+            return from != to && this.components.getComponent(from) == this.components.getComponent(to);
+        }
+
+        IncrementalComponents current = this.incremental;
+        if (current != null)
+        {
+            return from != to && current.isConnected(from, to);
+        }
+
+        // past the threshold this requests the labels, built after the search
+        this.planner.missed(Index.COMPONENT_LABELS, this.getBuildCost());
+
+        BitSet visited = new BitSet(this.storage.size());
+        visited.set(from);
 
-        for (Node node : this.vertexMap.values())
+        int[] queue = new int[16];
+        queue[0] = from;
+        int head = 0;
+        int tail = 1;
+
+        QueryContext context = QueryContext.current();
+        long routes = 0;
+
+        NeighborCursor cursor = this.storage.cursor();
+        while (head < tail && !context.isTruncated())
         {
-            for (Node neighbor : node.neighbors)
+            cursor.of(queue[head++]);
+            while (cursor.hasNext())
             {
-                routes.add(new Route(node.city, neighbor.city));
+                int neighbor = cursor.next();
+                routes++;
+
+                if (context.isExhausted(routes))
+                {
+                    break;
+                }
+
+                if (!visited.get(neighbor))
+                {
+                    if (neighbor == to)
+                    {
+                        context.visited(head, routes);
+                        this.planner.searched(Index.COMPONENT_LABELS, routes);
+                        return true;
+                    }
+
+                    visited.set(neighbor);
+
+                    if (tail == queue.length)
+                    {
+                        queue = Arrays.copyOf(queue, tail * 2);
+                    }
+                    queue[tail++] = neighbor;
+                }
             }
         }
 
-        return routes;
+        context.visited(head, routes);
+        this.planner.searched(Index.COMPONENT_LABELS, routes);
+        return false;
     }
 
     /**
-     * Gets the teleportation neighborhood.
+     * Determines if a set of at most maxJumps routes leads from one city to
+     * another. Searches expand from both cities, always from the side with the
+     * smaller frontier, and stop when the two sides meet, so each side covers
+     * roughly half the jumps.
      *
-     * @param originCity the origin of the neighborhood
-     * @param maxJumps   the maximum number of jumps allowed when defining the
-     *                   neighborhood
-     * @return all cities that require at most maxJumps jumps from the origin city
+     * @param fromCity the origin city
+     * @param toCity   the destination city
+     * @param maxJumps the maximum number of jumps
+     * @return if it is possible to teleport from the origin city to the
+     *         destination city in at most maxJumps jumps
      */
-    public Set<City> getNeighborhood(City originCity, int maxJumps)
+    public boolean canTeleport(City fromCity, City toCity, int maxJumps)
     {
-        Set<City> neighborhood = this.getNeighborhood(
-                new HashSet<>(),
-                this.vertexMap.computeIfAbsent(originCity, this.cityToNode),
-                0,
-                maxJumps);
+        if (maxJumps < 0)
+        {
+            throw new IllegalArgumentException("maxJumps cannot be negative");
+        }
+
+        int from = this.storage.find(fromCity);
+        int to = this.storage.find(toCity);
+        if (from < 0 || to < 0 || from == to || maxJumps == 0)
+        {
+            return false;
+        }
 
-        neighborhood.remove(originCity);
+        if (this.distances != null)
+        {
+            int distance = this.distances.getDistance(from, to);
+            return distance > 0 && distance <= maxJumps;
+        }
 
-        return neighborhood;
+        if (this.connectivity != null && !this.connectivity.isConnected(from, to))
+        {
+            return false;
+        }
+
+        if (this.components != null && this.components.getComponent(from) != this.components.getComponent(to))
+        {
+            return false;
+        }
+
+        IncrementalComponents current = this.incremental;
+        if (current != null && !current.isConnected(from, to))
+        {
+            return false;
+        }
+
+        Frontier forward = new Frontier(from);
+        Frontier backward = new Frontier(to);
+        NeighborCursor cursor = this.storage.cursor();
+
+        QueryContext context = QueryContext.current();
+
+        boolean met = false;
+        for (int jumps = 0; jumps < maxJumps && !met && !context.isTruncated() && !forward.isEmpty()
+                && !backward.isEmpty(); jumps++)
+        {
+            met = forward.size() <= backward.size() ? forward.expand(backward, cursor, context)
+                    : backward.expand(forward, cursor, context);
+        }
+
+        context.visited(forward.expanded + backward.expanded, forward.followed + backward.followed);
+        return met;
     }
 
-    private Set<City> getNeighborhood(Set<City> visited, Node node, int jumps, int maxJumps)
+    /**
+     * Builds distance labels for the network. While the labels are current,
+     * jump counts are answered by merging two labels instead of searching.
+     *
+     * @return the labels
+     */
+    public DistanceLabels indexDistances()
     {
-        visited.add(node.city);
+        this.distances = DistanceLabels.build(this.storage);
+
+        return this.distances;
+    }
 
-        for (Node neighbor : node.neighbors)
+    /**
+     * Saves the current distance labels to a file.
+     *
+     * @param path the file to write
+     * @return the labels
+     * @throws IOException           if unable to write the file
+     * @throws IllegalStateException if the labels are not current
+     */
+    public DistanceLabels saveDistances(Path path) throws IOException
+    {
+        if (this.distances == null)
         {
-            City city = neighbor.city;
-            if (!visited.contains(city)
-                    && jumps < maxJumps)
-            {
-                this.getNeighborhood(visited, neighbor, jumps + 1, maxJumps);
-            }
+            throw new IllegalStateException("distances are not indexed");
         }
 
-        return visited;
+        this.distances.write(path);
+
+        return this.distances;
     }
 
     /**
-     * Determines if a set of routes exist from one city to another.
+     * Loads distance labels saved for this network.
      *
-     * @param fromCity the origin city
-     * @param toCity   the destination city
-     * @return if it is possible to teleport from the origin city to the destination
-     *         city
+     * @param path the file to read
+     * @return the labels
+     * @throws IOException if unable to read the file, or if it holds labels for
+     *                     a different network
      */
-    public boolean canTeleport(City fromCity, City toCity)
+    public DistanceLabels loadDistances(Path path) throws IOException
     {
-        Node fromNode = this.vertexMap.computeIfAbsent(fromCity, this.cityToNode);
+        this.distances = DistanceLabels.read(path, this.storage);
 
-        return this.canTeleport(new HashSet<>(), fromNode, toCity);
+        return this.distances;
     }
 
-    private boolean canTeleport(Set<City> visited, Node fromNode, City toCity)
+    /**
+     * Gets the least number of jumps from one city to another.
+     *
+     * @param fromCity the origin city
+     * @param toCity   the destination city
+     * @return the number of jumps, or -1 if there is no way to teleport
+     *         between the cities
+     */
+    public int getDistance(City fromCity, City toCity)
     {
-        boolean canTeleport = false;
+        int from = this.storage.find(fromCity);
+        int to = this.storage.find(toCity);
+        if (from < 0 || to < 0)
+        {
+            return -1;
+        }
 
-        visited.add(fromNode.city);
+        if (this.distances != null)
+        {
+            return this.distances.getDistance(from, to);
+        }
 
-        for (Node neighbor : fromNode.neighbors)
+        if (from == to)
         {
-            City city = neighbor.city;
+            return 0;
+        }
+
+        BitSet visited = new BitSet(this.storage.size());
+        visited.set(from);
+
+        int[] queue = new int[16];
+        queue[0] = from;
+        int head = 0;
+        int tail = 1;
 
-            if (!visited.contains(city))
+        QueryContext context = QueryContext.current();
+        long routes = 0;
+
+        NeighborCursor cursor = this.storage.cursor();
+        for (int jumps = 1; head < tail && !context.isTruncated(); jumps++)
+        {
+            int levelEnd = tail;
+            while (head < levelEnd && !context.isTruncated())
             {
-                if (city.equals(toCity)
-                        || this.canTeleport(visited, neighbor, toCity))
+                cursor.of(queue[head++]);
+                while (cursor.hasNext())
                 {
-                    canTeleport = true;
-                    break;
+                    int neighbor = cursor.next();
+                    routes++;
+
+                    if (context.isExhausted(routes))
+                    {
+                        break;
+                    }
+
+                    if (!visited.get(neighbor))
+                    {
+                        if (neighbor == to)
+                        {
+                            context.visited(head, routes);
+                            return jumps;
+                        }
+
+                        visited.set(neighbor);
+
+                        if (tail == queue.length)
+                        {
+                            queue = Arrays.copyOf(queue, tail * 2);
+                        }
+                        queue[tail++] = neighbor;
+                    }
                 }
             }
         }
 
-        return canTeleport;
+        context.visited(head, routes);
+        return -1;
     }
 
     /**
@@ -161,36 +1278,436 @@ public class Graph
      */
     public boolean isCityOnLoop(City city)
     {
-        Node fromNode = this.vertexMap.computeIfAbsent(city, this.cityToNode);
+        int origin = this.storage.find(city);
+        if (origin < 0)
+        {
+            return false;
+        }
+
+        Biconnectivity bridges = this.biconnectivity;
+        if (bridges != null)
+        {
+            return bridges.isOnLoop(origin);
+        }
+
+        if (this.connectivity != null && this.connectivity.hasNonTreeRoute(origin))
+        {
+            return true;
+        }
+
+        this.planner.missed(Index.LOOP_INDEX, this.getBuildCost());
+
+        QueryContext context = QueryContext.current();
+        long routes = context.getRoutes();
+        boolean onLoop = this.findShortestLoop(origin) >= 0;
+        this.planner.searched(Index.LOOP_INDEX, context.getRoutes() - routes);
+
+        return onLoop;
+    }
+
+    /**
+     * Gets the shortest loop through a city: the fewest jumps to leave it and
+     * return without repeating any routes.
+     *
+     * @param city the city the loop passes through
+     * @return the cities of the loop in order, starting with the city and
+     *         with one jump between each and the next and from the last back
+     *         to the first, or an empty list if the city is on no loop
+     */
+    public List<City> getShortestLoop(City city)
+    {
+        List<City> loop = new ArrayList<>();
+
+        int origin = this.storage.find(city);
+        if (origin >= 0)
+        {
+            int position = this.findShortestLoop(origin);
+            if (position >= 0)
+            {
+                Traversal traversal = this.traversals.get();
+                int[] queue = traversal.queue;
+                int[] parents = traversal.parents;
+
+                // the loop closes with a route from the city queued at
+                // position to the one found in the close slot; both paths
+                // lead back to the origin through different first jumps
+                for (int i = position; i > 0; i = parents[i])
+                {
+                    loop.add(this.storage.city(queue[i]));
+                }
+                loop.add(city);
+                Collections.reverse(loop);
+
+                for (int i = traversal.close; i > 0; i = parents[i])
+                {
+                    loop.add(this.storage.city(queue[i]));
+                }
+            }
+        }
 
-        return this.isCityOnLoop(new HashSet<>(), fromNode, city);
+        return loop;
     }
 
-    private boolean isCityOnLoop(Set<Route> visited, Node fromNode, City toCity)
+    /**
+     * Finds the shortest loop through a city by a breadth first search that
+     * tags each city with the first jump of its path. A route joining cities
+     * of two different first jumps closes a loop, and the shortest such loop
+     * is found by finishing the level where the first one appears. Each city
+     * is visited at most once, using the thread's reusable buffers.
+     *
+     * @return the queue position of one city closing the loop, with the
+     *         other left in the close slot of the thread's traversal, or -1 if
+     *         there is no loop; for a route from the origin to itself the
+     *         origin's position, zero, is returned for both
+     */
+    private int findShortestLoop(int origin)
     {
-        boolean cityOnLoop = false;
+        Traversal traversal = this.traversals.get();
+        BitSet visited = traversal.visited;
+        int[] queue = traversal.queue;
+        int[] branches = traversal.sources;
+        int[] parents = traversal.parents;
+        if (traversal.positions.length < this.storage.size())
+        {
+            traversal.positions = new int[this.storage.size()];
+        }
+        int[] positions = traversal.positions;
+
+        visited.set(origin);
+        queue[0] = origin;
+        branches[0] = origin;
+        parents[0] = -1;
+        positions[origin] = 0;
+        int head = 0;
+        int tail = 1;
+        long routes = 0;
+
+        int best = Integer.MAX_VALUE;
+        int found = -1;
+
+        QueryContext context = QueryContext.current();
+
+        try
+        {
+            NeighborCursor cursor = this.storage.cursor();
+            for (int jumps = 0; head < tail && found < 0 && !context.isTruncated(); jumps++)
+            {
+                int levelEnd = tail;
+                while (head < levelEnd && !context.isTruncated())
+                {
+                    int position = head++;
+                    int city = queue[position];
+                    int branch = position == 0 ? -1 : branches[position];
+
+                    cursor.of(city);
+                    while (cursor.hasNext())
+                    {
+                        int neighbor = cursor.next();
+                        routes++;
 
-        City fromCity = fromNode.city;
+                        if (context.isExhausted(routes))
+                        {
+                            break;
+                        }
 
-        for (Node neighbor : fromNode.neighbors)
+                        if (!visited.get(neighbor))
+                        {
+                            visited.set(neighbor);
+
+                            if (tail == parents.length)
+                            {
+                                traversal.ensureCapacity(tail + 1);
+                                queue = traversal.queue;
+                                branches = traversal.sources;
+                                parents = traversal.parents;
+                            }
+                            queue[tail] = neighbor;
+                            branches[tail] = position == 0 ? neighbor : branch;
+                            parents[tail] = position;
+                            positions[neighbor] = tail++;
+                        }
+                        else if (neighbor == city ? position == 0
+                                : branch != -1 && branch != branches[positions[neighbor]]
+                                        && positions[neighbor] != 0)
+                        {
+                            // the other city is on this level or the next one
+                            int other = positions[neighbor];
+                            int length = neighbor == city ? 1 : 2 * jumps + (other < levelEnd ? 1 : 2);
+                            if (length < best)
+                            {
+                                best = length;
+                                found = position;
+                                traversal.close = other;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        finally
         {
-            City city = neighbor.city;
+            // cleared even if the search fails, so the next search on this
+            // thread starts with no cities visited
+            for (int i = 0; i < tail; i++)
+            {
+                visited.clear(queue[i]);
+            }
+        }
+
+        context.visited(head, routes);
+        return context.isTruncated() ? -1 : found;
+    }
+
+    /**
+     * Visits the cities within maxJumps of an origin, level by level, until
+     * limit cities have been visited. The visited bitmap and queue are reused
+     * by each thread and only the bits that were set are cleared afterwards,
+     * so a search costs what it touches rather than the size of the network.
+     *
+     * @return the number of cities visited, excluding the origin
+     */
+    private int traverse(int origin, int maxJumps, int limit, CityVisitor visitor)
+    {
+        Traversal traversal = this.traversals.get();
+        traversal.queue[0] = origin;
+        traversal.sources[0] = origin;
+
+        return this.traverse(traversal, 1, maxJumps, limit, visitor);
+    }
 
-            Route route = new Route(fromCity, city);
+    /**
+     * Visits the cities within maxJumps of the origins at the start of the
+     * queue of a traversal, crediting each city to the origin whose search
+     * reached it first. Each city is visited at most once however many
+     * origins there are.
+     *
+     * @return the number of cities visited, excluding the origins
+     */
+    private int traverse(Traversal traversal, int originCount, int maxJumps, int limit, CityVisitor visitor)
+    {
+        BitSet visited = traversal.visited;
+        int[] queue = traversal.queue;
+        int[] sources = traversal.sources;
 
-            if (!visited.contains(route))
+        int tail = 0;
+        for (int i = 0; i < originCount; i++)
+        {
+            if (!visited.get(queue[i]))
             {
-                visited.add(route);
+                visited.set(queue[i]);
+                queue[tail] = queue[i];
+                sources[tail++] = sources[i];
+            }
+        }
+
+        int head = 0;
+        int count = 0;
+        long routes = 0;
 
-                if (city.equals(toCity)
-                        || this.isCityOnLoop(visited, neighbor, toCity))
+        QueryContext context = QueryContext.current();
+
+        NeighborCursor cursor = this.storage.cursor();
+        for (int jumps = 0; jumps < maxJumps && head < tail && count < limit && !context.isTruncated(); jumps++)
+        {
+            int levelEnd = tail;
+            while (head < levelEnd && count < limit && !context.isTruncated())
+            {
+                int source = sources[head];
+                cursor.of(queue[head++]);
+                while (cursor.hasNext() && count < limit)
                 {
-                    cityOnLoop = true;
-                    break;
+                    int neighbor = cursor.next();
+                    routes++;
+
+                    if (context.isExhausted(routes))
+                    {
+                        break;
+                    }
+
+                    if (!visited.get(neighbor))
+                    {
+                        visited.set(neighbor);
+                        count++;
+
+                        if (visitor != null)
+                        {
+                            visitor.visit(neighbor, source);
+                        }
+
+                        if (tail == queue.length)
+                        {
+                            traversal.ensureCapacity(tail + 1);
+                            queue = traversal.queue;
+                            sources = traversal.sources;
+                        }
+                        queue[tail] = neighbor;
+                        sources[tail++] = source;
+                    }
                 }
             }
         }
 
-        return cityOnLoop;
+        for (int i = 0; i < tail; i++)
+        {
+            visited.clear(queue[i]);
+        }
+
+        context.visited(head, routes);
+        return count;
+    }
+
+    private static long routeKey(int from, int to)
+    {
+        int low = Math.min(from, to);
+        int high = Math.max(from, to);
+
+        return ((long) low << 32) | high;
+    }
+
+    /**
+     * Collects the identifiers of the cities a search reaches.
+     */
+    private static final class IdCollector implements CityVisitor
+    {
+        private int[] ids = new int[16];
+        private int size;
+
+        @Override
+        public void visit(int id, int origin)
+        {
+            if (this.size == this.ids.length)
+            {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            }
+            this.ids[this.size++] = id;
+        }
+    }
+
+    /**
+     * Receives the cities a neighborhood search reaches.
+     */
+    @FunctionalInterface
+    private interface CityVisitor
+    {
+        /**
+         * Visits a city.
+         *
+         * @param city   the identifier of the city
+         * @param origin the identifier of the origin whose search reached it
+         */
+        void visit(int city, int origin);
+    }
+
+    /**
+     * Scratch space for neighborhood searches, kept per thread. The origin of
+     * each queued city is kept alongside it.
+     */
+    private static final class Traversal
+    {
+        private final BitSet visited = new BitSet();
+        private int[] queue = new int[16];
+        private int[] sources = new int[16];
+        // used by loop searches only: the queue position each city was
+        // reached from, the position of each visited city, and the second
+        // city closing the last loop found
+        private int[] parents = new int[16];
+        private int[] positions = new int[0];
+        private int close;
+
+        /**
+         * Grows the queue, sources and parents together, keeping their
+         * contents, so that any search may use all three up to the same
+         * length.
+         */
+        void ensureCapacity(int capacity)
+        {
+            if (this.queue.length < capacity)
+            {
+                int length = Math.max(capacity, 2 * this.queue.length);
+                this.queue = Arrays.copyOf(this.queue, length);
+                this.sources = Arrays.copyOf(this.sources, length);
+                this.parents = Arrays.copyOf(this.parents, length);
+            }
+        }
+    }
+
+    /**
+     * One side of a bidirectional search: the cities reached so far and the
+     * cities reached by the last expansion.
+     */
+    private static final class Frontier
+    {
+        private final LongHashSet visited = new LongHashSet();
+        private int[] cities = new int[16];
+        private int size;
+        private int[] next = new int[16];
+        private long expanded;
+        private long followed;
+
+        Frontier(int origin)
+        {
+            this.visited.add(origin);
+            this.cities[0] = origin;
+            this.size = 1;
+        }
+
+        boolean isEmpty()
+        {
+            return this.size == 0;
+        }
+
+        int size()
+        {
+            return this.size;
+        }
+
+        /**
+         * Expands the frontier by one jump, stopping early if the query runs
+         * out of budget.
+         *
+         * @return if a newly reached city was already reached by the other side
+         */
+        boolean expand(Frontier other, NeighborCursor cursor, QueryContext context)
+        {
+            int count = 0;
+
+            for (int i = 0; i < this.size; i++)
+            {
+                cursor.of(this.cities[i]);
+                this.expanded++;
+
+                while (cursor.hasNext())
+                {
+                    int neighbor = cursor.next();
+                    this.followed++;
+
+                    if (context.isExhausted(this.followed + other.followed))
+                    {
+                        return false;
+                    }
+
+                    if (other.visited.contains(neighbor))
+                    {
+                        return true;
+                    }
+
+                    if (this.visited.add(neighbor))
+                    {
+                        if (count == this.next.length)
+                        {
+                            this.next = Arrays.copyOf(this.next, count * 2);
+                        }
+                        this.next[count++] = neighbor;
+                    }
+                }
+            }
+
+            int[] swap = this.cities;
+            this.cities = this.next;
+            this.next = swap;
+            this.size = count;
+
+            return false;
+        }
     }
 }
@@ -24,53 +24,177 @@
 package teleporter;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 import teleporter.data.City;
 import teleporter.data.Route;
+import teleporter.index.Biconnectivity;
+import teleporter.index.Components;
+import teleporter.index.DistanceLabels;
+import teleporter.index.ResultStore;
+import teleporter.metrics.CommandStats;
+import teleporter.metrics.FeedStats;
+import teleporter.metrics.IngestEvent;
+import teleporter.metrics.Metrics;
+import teleporter.metrics.ParseEvent;
+import teleporter.metrics.QueryContext;
+import teleporter.metrics.QueryEvent;
+import teleporter.metrics.SlowQueryLog;
+import teleporter.parser.BoundedRouteSearchLine;
+import teleporter.parser.CityCountLine;
 import teleporter.parser.CitySearchLine;
+import teleporter.parser.Command;
+import teleporter.parser.ComponentSearchLine;
+import teleporter.parser.DistanceIndexLine;
+import teleporter.parser.DistanceSearchLine;
+import teleporter.parser.ExplainLine;
+import teleporter.parser.FreezeLine;
 import teleporter.parser.Line;
 import teleporter.parser.LoopSearchLine;
+import teleporter.parser.MultiCitySearchLine;
 import teleporter.parser.NewRouteLine;
+import teleporter.parser.RemoveRouteLine;
+import teleporter.parser.ResultCombineLine;
+import teleporter.parser.ResultLine;
+import teleporter.parser.ResultStoreLine;
 import teleporter.parser.RouteSearchLine;
+import teleporter.parser.ShortestLoopLine;
+import teleporter.parser.ShowRouteLine;
 import teleporter.parser.StringParser;
+import teleporter.parser.WatchLine;
+import teleporter.storage.FrozenStorage;
+import teleporter.storage.StorageType;
+import teleporter.util.IntBitmap;
 
 /**
  * Provides the primary interface for the application.
  */
-public class Main
+public class Main implements Closeable
 {
+    private static final Logger LOG = Logger.getLogger(Main.class.getName());
 
     private static final String COLON = ": ";
     private static final String YES = "yes";
     private static final String NO = "no";
     private static final String EMPTY = "";
+    private static final String NONE = "none";
     private static final String QUIT = "QUIT";
+    private static final String TIMEOUT = "timeout";
+    private static final String PARTIAL = "(partial)";
+    private static final String UNKNOWN_RESULT = "unknown result";
+    private static final String NOT_WATCHED = "not watched";
+
+    private static final int OUTPUT_BUFFER = 1 << 16;
+    private static final long DEFAULT_RESULT_MEMORY = 64L << 20;
+    private static final PrintWriter STDOUT = new PrintWriter(
+            new BufferedWriter(new OutputStreamWriter(System.out), OUTPUT_BUFFER));
+    private static final PrintWriter NO_OUTPUT = new PrintWriter(Writer.nullWriter());
 
     private final StringParser parser = new StringParser();
-    private final Graph graph = new Graph();
+    private final Metrics metrics = new Metrics();
+    private final Graph graph;
+
+    private final long[] maxRoutes = new long[Command.values().length];
+    private final long[] maxNanos = new long[Command.values().length];
+
+    private SlowQueryLog slowQueryLog;
+    private FeedFollower follower;
+    private ResultStore results = new ResultStore(DEFAULT_RESULT_MEMORY);
+
+    /**
+     * Creates a new application instance with a graph stored on the heap.
+     */
+    public Main()
+    {
+        this(new Graph());
+    }
+
+    /**
+     * Creates a new application instance for the input graph.
+     *
+     * @param graph the graph to update and query
+     */
+    public Main(Graph graph)
+    {
+        Objects.requireNonNull(graph, "graph cannot be null");
+
+        this.graph = graph;
+    }
 
     /**
      * Primary entry point for interactive use.
+     * <p>
+     * Supported options:
+     * <ul>
+     * <li><code>--storage=heap|off-heap</code> selects where the graph is
+     * stored</li>
+     * <li>the options of {@link #configure(Options)}</li>
+     * <li>the options of {@link #follow(Options, FeedFollower.Access)}</li>
+     * </ul>
      *
-     * @param args not used
+     * @param args the command line options
      * @throws IOException if unable to process input
      */
     public static void main(String[] args) throws IOException
     {
-        Main main = new Main();
+        Options options = new Options(args);
+
+        StorageType storageType = options.getEnum("storage", StorageType.HEAP);
+
+        Main main = new Main(new Graph(storageType.create()));
+        main.configure(options);
+        main.getMetrics().register();
 
         try (InputStreamReader isr = new InputStreamReader(System.in);
                 BufferedReader reader = new BufferedReader(isr))
         {
+            // lines from standard input and from a followed feed take turns
+            main.follow(options, new FeedFollower.Access()
+            {
+                @Override
+                public void read(Callable<?> task) throws Exception
+                {
+                    synchronized (main)
+                    {
+                        task.call();
+                    }
+                }
+
+                @Override
+                public void write(Callable<?> task) throws Exception
+                {
+                    synchronized (main)
+                    {
+                        task.call();
+                    }
+                }
+            });
+
             String string = reader.readLine();
 
             while (string != null)
             {
-                String response = main.parse(string);
+                String response;
+                synchronized (main)
+                {
+                    response = main.parse(string);
+                }
 
                 if (response != null)
                 {
@@ -85,6 +209,205 @@ public class Main
                 string = reader.readLine();
             }
         }
+        finally
+        {
+            main.close();
+        }
+
+        main.logIngest();
+    }
+
+    /**
+     * Applies the query budget and slow query log options.
+     * <p>
+     * Supported options:
+     * <ul>
+     * <li><code>--max-routes=N</code> the number of routes the searches of a
+     * line may follow before returning a partial result</li>
+     * <li><code>--max-millis=N</code> the time the searches of a line may
+     * take before returning a partial result</li>
+     * <li><code>--max-routes-COMMAND=N</code> and
+     * <code>--max-millis-COMMAND=N</code> override the budget of one command,
+     * named in lower case with dashes, such as
+     * <code>--max-millis-city-search=50</code></li>
+     * <li><code>--slow-query-log=file</code> appends lines taking longer than
+     * the threshold to a file</li>
+     * <li><code>--slow-query-millis=N</code> the slow query threshold,
+     * 100 ms by default</li>
+     * <li><code>--result-memory=MB</code> the memory kept for named results,
+     * 64 MB by default</li>
+     * <li><code>--index-after-route-searches=N</code> and
+     * <code>--index-after-loop-searches=N</code> the number of searches an
+     * index must have saved before it is built, 16 by default, or zero to
+     * never build it on demand</li>
+     * </ul>
+     * Budgets of zero, the default, are unlimited.
+     *
+     * @param options the command line options
+     * @throws IOException if unable to open the slow query log
+     */
+    public void configure(Options options) throws IOException
+    {
+        Objects.requireNonNull(options, "options cannot be null");
+
+        String maxRoutes = options.get("max-routes", "0");
+        String maxMillis = options.get("max-millis", "0");
+        for (Command command : Command.values())
+        {
+            String name = command.name().toLowerCase(Locale.ROOT).replace('_', '-');
+
+            this.setBudget(command, Long.parseLong(options.get("max-routes-" + name, maxRoutes)),
+                    Long.parseLong(options.get("max-millis-" + name, maxMillis)));
+        }
+
+        String slowQueryPath = options.get("slow-query-log", null);
+        if (slowQueryPath != null)
+        {
+            long threshold = Long.parseLong(options.get("slow-query-millis", "100"));
+            this.slowQueryLog = new SlowQueryLog(Paths.get(slowQueryPath), threshold);
+        }
+
+        String resultMemory = options.get("result-memory", null);
+        if (resultMemory != null)
+        {
+            this.results = new ResultStore(Long.parseLong(resultMemory) << 20);
+        }
+
+        QueryPlanner planner = this.graph.getPlanner();
+        planner.setThreshold(QueryPlanner.Index.COMPONENT_LABELS, Long.parseLong(options.get(
+                "index-after-route-searches", String.valueOf(QueryPlanner.DEFAULT_THRESHOLD))));
+        planner.setThreshold(QueryPlanner.Index.LOOP_INDEX, Long.parseLong(options.get(
+                "index-after-loop-searches", String.valueOf(QueryPlanner.DEFAULT_THRESHOLD))));
+    }
+
+    /**
+     * Sets the budget of the searches run for one command. A search that runs
+     * out of budget stops and the line gets a partial result: listings and
+     * counts are followed by <code>(partial)</code>, and questions that could
+     * not be answered yes get <code>timeout</code> instead of no.
+     *
+     * @param command   the command
+     * @param maxRoutes the number of routes the searches of a line may follow,
+     *                  or zero for no limit
+     * @param maxMillis the time the searches of a line may take, or zero for
+     *                  no limit
+     */
+    public void setBudget(Command command, long maxRoutes, long maxMillis)
+    {
+        Objects.requireNonNull(command, "command cannot be null");
+
+        if (maxRoutes < 0 || maxMillis < 0)
+        {
+            throw new IllegalArgumentException("budgets cannot be negative");
+        }
+
+        this.maxRoutes[command.ordinal()] = maxRoutes;
+        this.maxNanos[command.ordinal()] = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+    }
+
+    /**
+     * Closes the slow query log, if any, after writing its remaining entries.
+     *
+     * @throws IOException if unable to close the log
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.follower != null)
+        {
+            this.follower.close();
+        }
+
+        if (this.slowQueryLog != null)
+        {
+            this.slowQueryLog.close();
+        }
+    }
+
+    /**
+     * Starts following a feed of route lines if asked to, applying the lines
+     * appended to it while other lines are handled.
+     * <p>
+     * Supported options:
+     * <ul>
+     * <li><code>--follow=file</code> the feed to follow</li>
+     * <li><code>--follow-checkpoint=file</code> where the applied offset and
+     * the routes are saved, by default the feed name followed by
+     * <code>.checkpoint</code></li>
+     * <li><code>--follow-batch=N</code> the most lines applied at once,
+     * 1024 by default</li>
+     * <li><code>--follow-checkpoint-millis=N</code> the least time between
+     * checkpoints, 10 seconds by default</li>
+     * </ul>
+     *
+     * @param options the command line options
+     * @param access  runs work on the graph under its locks
+     * @throws IOException if unable to read the checkpoint
+     */
+    public void follow(Options options, FeedFollower.Access access) throws IOException
+    {
+        Objects.requireNonNull(options, "options cannot be null");
+        Objects.requireNonNull(access, "access cannot be null");
+
+        String feed = options.get("follow", null);
+        if (feed != null)
+        {
+            Path checkpoint = Paths.get(options.get("follow-checkpoint", feed + ".checkpoint"));
+            int batchSize = Integer.parseInt(options.get("follow-batch", "1024"));
+            long checkpointMillis = Long.parseLong(options.get("follow-checkpoint-millis", "10000"));
+
+            this.follower = new FeedFollower(Paths.get(feed), checkpoint, this, this.graph, access, batchSize,
+                    checkpointMillis);
+            this.follower.start();
+        }
+    }
+
+    /**
+     * Applies lines that add or remove routes, skipping any other line. Like
+     * any change, ingesting runs with nothing else using the graph.
+     *
+     * @param strings the lines
+     * @return the number of lines applied
+     */
+    public int ingest(List<String> strings)
+    {
+        Objects.requireNonNull(strings, "strings cannot be null");
+
+        int applied = 0;
+        for (String string : strings)
+        {
+            Line line = this.parseLine(string);
+            if (line != null && (line.command == Command.NEW_ROUTE || line.command == Command.REMOVE_ROUTE))
+            {
+                this.execute(string, line, NO_OUTPUT, null, System.nanoTime());
+                applied++;
+            }
+            else
+            {
+                LOG.fine(() -> "skipped feed line: " + string);
+            }
+        }
+
+        return applied;
+    }
+
+    /**
+     * Logs the number of new and duplicate routes received so far.
+     */
+    public void logIngest()
+    {
+        LOG.info("ingested " + this.graph.getRouteCount() + " new routes and "
+                + this.graph.getDuplicateRouteCount() + " duplicate routes");
+    }
+
+    /**
+     * Gets the statistics of the commands handled so far.
+     *
+     * @return the statistics
+     */
+    public Metrics getMetrics()
+    {
+        return this.metrics;
     }
 
     /**
@@ -94,11 +417,128 @@ public class Main
      * @return the response from the graph (may be null) *
      */
     public String parse(String string)
+    {
+        return this.parse(string, STDOUT);
+    }
+
+    /**
+     * Parses a string and updates the graph accordingly. Lines are parsed one
+     * at a time with nothing else using the graph, so indexes requested by
+     * earlier queries are built first.
+     *
+     * @param string the string to parse
+     * @param out    receives listings too large for a single response, such as
+     *               the routes shown by a show request
+     * @return the response from the graph (may be null)
+     */
+    public String parse(String string, PrintWriter out)
+    {
+        Objects.requireNonNull(string, "string cannot be null");
+        Objects.requireNonNull(out, "out cannot be null");
+
+        this.graph.buildRequestedIndexes();
+
+        long start = System.nanoTime();
+        Line line = this.parseLine(string);
+
+        return this.execute(string, line, out, new PrintingListener(out), start);
+    }
+
+    /**
+     * Parses a string without applying it, so callers can decide where and
+     * when to run it. Parsing is safe from several threads at once.
+     *
+     * @param string the string to parse
+     * @return the line representation or null if unable to parse
+     */
+    public Line parseLine(String string)
     {
         Objects.requireNonNull(string, "string cannot be null");
 
+        ParseEvent parseEvent = new ParseEvent();
+        parseEvent.begin();
+
         Line line = this.parser.parse(string);
 
+        parseEvent.end();
+        if (parseEvent.shouldCommit())
+        {
+            parseEvent.line = string;
+            parseEvent.command = line == null ? null : line.command.name();
+            parseEvent.commit();
+        }
+
+        return line;
+    }
+
+    /**
+     * Applies a parsed line to the graph. Queries may be executed from several
+     * threads at once as long as no line changing the graph runs at the same
+     * time.
+     *
+     * @param string the string the line was parsed from
+     * @param line   the parsed line, or null if unable to parse the string
+     * @param out    receives listings too large for a single response
+     * @return the response from the graph (may be null)
+     */
+    public String execute(String string, Line line, PrintWriter out)
+    {
+        Objects.requireNonNull(string, "string cannot be null");
+        Objects.requireNonNull(out, "out cannot be null");
+
+        return this.execute(string, line, out, new PrintingListener(out), System.nanoTime());
+    }
+
+    /**
+     * Applies a parsed line to the graph, sending the changes of the watches
+     * it starts to a listener instead of printing them.
+     *
+     * @param string  the string the line was parsed from
+     * @param line    the parsed line, or null if unable to parse the string
+     * @param out     receives listings too large for a single response
+     * @param watcher receives the changes of the watches the line starts,
+     *                and identifies the watches the line stops
+     * @return the response from the graph (may be null)
+     * @see #describe(Watch, boolean)
+     */
+    public String execute(String string, Line line, PrintWriter out, Watch.Listener watcher)
+    {
+        Objects.requireNonNull(string, "string cannot be null");
+        Objects.requireNonNull(out, "out cannot be null");
+        Objects.requireNonNull(watcher, "watcher cannot be null");
+
+        return this.execute(string, line, out, watcher, System.nanoTime());
+    }
+
+    /**
+     * Describes a change of a watch answer the way it is printed.
+     *
+     * @param watch  the watch
+     * @param answer the new answer
+     * @return the description
+     */
+    public static String describe(Watch watch, boolean answer)
+    {
+        Objects.requireNonNull(watch, "watch cannot be null");
+
+        String query = watch.isLoop() ? "loop possible from " + watch.from.name
+                : "can I teleport from " + watch.from.name + " to " + watch.to.name;
+
+        return "watch " + query + COLON + (answer ? YES : NO);
+    }
+
+    private String execute(String string, Line line, PrintWriter out, Watch.Listener watcher, long start)
+    {
+        QueryContext context = QueryContext.begin();
+
+        if (line != null)
+        {
+            context.limit(this.maxRoutes[line.command.ordinal()], this.maxNanos[line.command.ordinal()]);
+        }
+
+        QueryEvent queryEvent = new QueryEvent();
+        queryEvent.begin();
+
         String response = null;
 
         if (line != null)
@@ -106,25 +546,105 @@ public class Main
             switch (line.command)
             {
             case SHOW_ROUTES:
-                this.handleShowRoute();
+                this.handleShowRoute(line, out);
+                break;
+
+            case STATS:
+                this.handleStats(out);
                 break;
 
             case NEW_ROUTE:
                 this.handleAddRoute(line);
                 break;
 
+            case REMOVE_ROUTE:
+                this.handleRemoveRoute(line);
+                break;
+
             case CITY_SEARCH:
                 response = string + COLON + this.handleCitySearchRequest(line);
                 break;
 
+            case MULTI_CITY_SEARCH:
+                response = string + COLON + this.handleMultiCitySearchRequest(line);
+                break;
+
+            case CITY_COUNT:
+                response = string + COLON + this.handleCityCountRequest(line);
+                break;
+
             case ROUTE_SEARCH:
                 response = string + COLON + this.handleRouteSearchRequest(line);
                 break;
 
+            case BOUNDED_ROUTE_SEARCH:
+                response = string + COLON + this.handleBoundedRouteSearchRequest(line);
+                break;
+
             case LOOP_SEARCH:
                 response = string + COLON + this.handleLoopSearchRequest(line);
                 break;
 
+            case SHORTEST_LOOP:
+                response = string + COLON + this.handleShortestLoopRequest(line);
+                break;
+
+            case CRITICAL_REPORT:
+                response = string + COLON + this.handleCriticalReport(out);
+                break;
+
+            case LOOP_REPORT:
+                response = string + COLON + this.handleLoopReport(out);
+                break;
+
+            case DISTANCE_SEARCH:
+                response = string + COLON + this.handleDistanceSearchRequest(line);
+                break;
+
+            case DISTANCE_INDEX:
+            case DISTANCE_SAVE:
+            case DISTANCE_LOAD:
+                response = string + COLON + this.handleDistanceIndexRequest(line);
+                break;
+
+            case FREEZE:
+                response = string + COLON + this.handleFreezeRequest(line);
+                break;
+
+            case RESULT_STORE:
+            case RESULT_COMBINE:
+                response = string + COLON + this.handleResultStoreRequest(line);
+                break;
+
+            case RESULT_SHOW:
+                response = string + COLON + this.handleResultShowRequest(line);
+                break;
+
+            case RESULT_DROP:
+                response = string + COLON + this.handleResultDropRequest(line);
+                break;
+
+            case RESULT_LIST:
+                this.handleResultList(out);
+                break;
+
+            case COMPONENT_SUMMARY:
+                response = string + COLON + this.handleComponentSummaryRequest();
+                break;
+
+            case COMPONENT_SEARCH:
+                response = string + COLON + this.handleComponentSearchRequest(line);
+                break;
+
+            case EXPLAIN:
+                response = string + COLON + this.handleExplainRequest(line);
+                break;
+
+            case WATCH:
+            case UNWATCH:
+                response = string + COLON + this.handleWatchRequest(line, watcher);
+                break;
+
             case QUIT:
                 response = QUIT;
                 break;
@@ -133,6 +653,25 @@ public class Main
                 response = "unhandled line: " + line;
                 break;
             }
+
+            long elapsed = System.nanoTime() - start;
+            this.metrics.get(line.command).record(elapsed, context.getCities(), context.getRoutes(),
+                    context.isTruncated());
+
+            if (line.command != Command.NEW_ROUTE && line.command != Command.REMOVE_ROUTE)
+            {
+                queryEvent.end();
+                if (queryEvent.shouldCommit())
+                {
+                    describe(queryEvent, line, context);
+                    queryEvent.commit();
+                }
+            }
+
+            if (this.slowQueryLog != null)
+            {
+                this.slowQueryLog.record(elapsed, line.command, context.getCities(), context.getRoutes(), string);
+            }
         }
         else
         {
@@ -142,68 +681,269 @@ public class Main
         return response;
     }
 
-    private void handleShowRoute()
+    private void handleShowRoute(Line line, PrintWriter out)
     {
-        Set<Route> routes = this.graph.getRoutes();
+        boolean sorted = line instanceof ShowRouteLine && ((ShowRouteLine) line).sorted;
 
-        for (Route route : routes)
-        {
-            System.out.println(route.from.name + " - " + route.to.name);
-        }
+        this.graph.forEachRoute((from, to) -> {
+            out.print(from.name);
+            out.print(" - ");
+            out.println(to.name);
+        }, sorted);
+
+        out.flush();
     }
 
-    private void handleAddRoute(Line line)
+    private void handleStats(PrintWriter out)
     {
-        if (line instanceof NewRouteLine)
+        out.println("routes: " + this.graph.getRouteCount() + " new, " + this.graph.getDuplicateRouteCount()
+                + " duplicate");
+
+        if (this.follower != null)
         {
-            NewRouteLine newRouteLine = (NewRouteLine) line;
+            FeedStats feed = this.follower.getStats();
+            out.println("feed: " + feed.getAppliedLines() + " lines applied, " + feed.getSkippedLines()
+                    + " skipped, lag " + feed.getLagBytes() + " bytes and " + feed.getLagMillis() + " ms");
+        }
 
-            this.graph.addRoute(newRouteLine.route);
+        for (Command command : Command.values())
+        {
+            CommandStats stats = this.metrics.get(command);
+            if (stats.getCount() > 0)
+            {
+                out.printf("%s: %d lines, %.1f/s, mean %.1f us, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, "
+                        + "max %.1f us, %d cities and %d routes visited, %d truncated%n", command, stats.getCount(),
+                        stats.getRate(), stats.getMeanMicros(), stats.getP50Micros(), stats.getP99Micros(),
+                        stats.getP999Micros(), stats.getMaxMicros(), stats.getCitiesVisited(),
+                        stats.getRoutesVisited(), stats.getTruncatedCount());
+            }
         }
+
+        out.flush();
     }
 
-    private String handleCitySearchRequest(Line line)
+    private void handleAddRoute(Line line)
     {
-        String citiesString = EMPTY;
-
-        if (line instanceof CitySearchLine)
+        if (line instanceof NewRouteLine)
         {
-            CitySearchLine citySearchLine = (CitySearchLine) line;
+            NewRouteLine newRouteLine = (NewRouteLine) line;
 
-            Set<City> cities = this.graph.getNeighborhood(citySearchLine.originCity, citySearchLine.maxJumps);
+            IngestEvent event = new IngestEvent();
+            event.begin();
 
-            StringBuilder b = new StringBuilder();
-            for (City city : cities)
+            boolean added = false;
+            try
             {
-                if (b.length() > 0)
-                {
-                    b.append(", ");
-                }
-
-                b.append(city.name);
+                added = this.graph.addRoute(newRouteLine.route);
+            }
+            catch (IllegalStateException ex)
+            {
+                LOG.warning("route ignored: " + ex.getMessage());
             }
 
-            citiesString = b.toString();
+            event.end();
+            if (event.shouldCommit())
+            {
+                describe(event, line, newRouteLine.route, added);
+                event.commit();
+            }
         }
-
-        return citiesString;
     }
 
-    private String handleRouteSearchRequest(Line line)
+    private void handleRemoveRoute(Line line)
     {
-        String result = EMPTY;
-
-        if (line instanceof RouteSearchLine)
+        if (line instanceof RemoveRouteLine)
         {
-            RouteSearchLine routeSearchLine = (RouteSearchLine) line;
+            RemoveRouteLine removeRouteLine = (RemoveRouteLine) line;
 
-            if (this.graph.canTeleport(routeSearchLine.from, routeSearchLine.to))
+            IngestEvent event = new IngestEvent();
+            event.begin();
+
+            boolean removed = false;
+            try
             {
-                result = YES;
+                removed = this.graph.removeRoute(removeRouteLine.route);
             }
-            else
+            catch (IllegalStateException ex)
             {
-                result = NO;
+                LOG.warning("route ignored: " + ex.getMessage());
+            }
+
+            event.end();
+            if (event.shouldCommit())
+            {
+                describe(event, line, removeRouteLine.route, removed);
+                event.commit();
+            }
+        }
+    }
+
+    private static void describe(IngestEvent event, Line line, Route route, boolean changed)
+    {
+        event.command = line.command.name();
+        event.from = route.from.name;
+        event.to = route.to.name;
+        event.changed = changed;
+    }
+
+    private static void describe(QueryEvent event, Line line, QueryContext context)
+    {
+        event.command = line.command.name();
+        event.citiesVisited = context.getCities();
+        event.routesVisited = context.getRoutes();
+
+        if (line instanceof CitySearchLine)
+        {
+            event.city = ((CitySearchLine) line).originCity.name;
+            event.maxJumps = ((CitySearchLine) line).maxJumps;
+        }
+        else if (line instanceof MultiCitySearchLine)
+        {
+            event.city = ((MultiCitySearchLine) line).originCities.get(0).name;
+            event.maxJumps = ((MultiCitySearchLine) line).maxJumps;
+        }
+        else if (line instanceof CityCountLine)
+        {
+            event.city = ((CityCountLine) line).originCity.name;
+            event.maxJumps = ((CityCountLine) line).maxJumps;
+        }
+        else if (line instanceof RouteSearchLine)
+        {
+            event.city = ((RouteSearchLine) line).from.name;
+            event.destination = ((RouteSearchLine) line).to.name;
+        }
+        else if (line instanceof BoundedRouteSearchLine)
+        {
+            event.city = ((BoundedRouteSearchLine) line).from.name;
+            event.destination = ((BoundedRouteSearchLine) line).to.name;
+            event.maxJumps = ((BoundedRouteSearchLine) line).maxJumps;
+        }
+        else if (line instanceof DistanceSearchLine)
+        {
+            event.city = ((DistanceSearchLine) line).from.name;
+            event.destination = ((DistanceSearchLine) line).to.name;
+        }
+        else if (line instanceof LoopSearchLine)
+        {
+            event.city = ((LoopSearchLine) line).city.name;
+        }
+        else if (line instanceof ShortestLoopLine)
+        {
+            event.city = ((ShortestLoopLine) line).city.name;
+        }
+        else if (line instanceof ComponentSearchLine)
+        {
+            event.city = ((ComponentSearchLine) line).city.name;
+        }
+    }
+
+    private String handleCitySearchRequest(Line line)
+    {
+        String citiesString = EMPTY;
+
+        if (line instanceof CitySearchLine)
+        {
+            CitySearchLine citySearchLine = (CitySearchLine) line;
+
+            Set<City> cities = this.graph.getNeighborhood(citySearchLine.originCity, citySearchLine.maxJumps,
+                    citySearchLine.limit);
+
+            StringBuilder b = new StringBuilder();
+            for (City city : cities)
+            {
+                if (b.length() > 0)
+                {
+                    b.append(", ");
+                }
+
+                b.append(city.name);
+            }
+
+            citiesString = partial(b.toString());
+        }
+
+        return citiesString;
+    }
+
+    private String handleMultiCitySearchRequest(Line line)
+    {
+        String citiesString = EMPTY;
+
+        if (line instanceof MultiCitySearchLine)
+        {
+            MultiCitySearchLine searchLine = (MultiCitySearchLine) line;
+
+            Map<City, City> cities = this.graph.getNeighborhood(searchLine.originCities, searchLine.maxJumps,
+                    searchLine.limit);
+
+            StringBuilder b = new StringBuilder();
+            for (Map.Entry<City, City> entry : cities.entrySet())
+            {
+                if (b.length() > 0)
+                {
+                    b.append(", ");
+                }
+
+                b.append(entry.getKey().name).append(" (").append(entry.getValue().name).append(')');
+            }
+
+            citiesString = partial(b.toString());
+        }
+
+        return citiesString;
+    }
+
+    private String handleCityCountRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof CityCountLine)
+        {
+            CityCountLine cityCountLine = (CityCountLine) line;
+
+            result = partial(
+                    String.valueOf(this.graph.countNeighborhood(cityCountLine.originCity, cityCountLine.maxJumps)));
+        }
+
+        return result;
+    }
+
+    private String handleRouteSearchRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof RouteSearchLine)
+        {
+            RouteSearchLine routeSearchLine = (RouteSearchLine) line;
+
+            if (this.graph.canTeleport(routeSearchLine.from, routeSearchLine.to))
+            {
+                result = YES;
+            }
+            else
+            {
+                result = noOrTimeout();
+            }
+        }
+
+        return result;
+    }
+
+    private String handleBoundedRouteSearchRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof BoundedRouteSearchLine)
+        {
+            BoundedRouteSearchLine boundedLine = (BoundedRouteSearchLine) line;
+
+            if (this.graph.canTeleport(boundedLine.from, boundedLine.to, boundedLine.maxJumps))
+            {
+                result = YES;
+            }
+            else
+            {
+                result = noOrTimeout();
             }
         }
 
@@ -224,10 +964,456 @@ public class Main
             }
             else
             {
-                result = NO;
+                result = noOrTimeout();
+            }
+        }
+
+        return result;
+    }
+
+    private String handleExplainRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof ExplainLine)
+        {
+            Line query = ((ExplainLine) line).query;
+
+            QueryPlan plan;
+            switch (query.command)
+            {
+            case ROUTE_SEARCH:
+                plan = this.graph.planRouteSearch();
+                break;
+
+            case BOUNDED_ROUTE_SEARCH:
+                BoundedRouteSearchLine boundedLine = (BoundedRouteSearchLine) query;
+                plan = this.graph.planBoundedRouteSearch(boundedLine.from, boundedLine.to);
+                break;
+
+            case LOOP_SEARCH:
+                plan = this.graph.planLoopSearch(((LoopSearchLine) query).city);
+                break;
+
+            case DISTANCE_SEARCH:
+                plan = this.graph.planDistanceSearch();
+                break;
+
+            case COMPONENT_SEARCH:
+            case COMPONENT_SUMMARY:
+                plan = this.graph.planComponentSearch();
+                break;
+
+            case CITY_SEARCH:
+            case MULTI_CITY_SEARCH:
+            case CITY_COUNT:
+            case SHORTEST_LOOP:
+            case RESULT_STORE:
+                plan = new QueryPlan(QueryPlan.Strategy.TRAVERSAL, "no index answers this query");
+                break;
+
+            default:
+                plan = null;
+                break;
+            }
+
+            result = plan != null ? plan.toString() : "not a search";
+        }
+
+        return result;
+    }
+
+    private String handleWatchRequest(Line line, Watch.Listener watcher)
+    {
+        String result = EMPTY;
+
+        if (line instanceof WatchLine)
+        {
+            WatchLine watchLine = (WatchLine) line;
+
+            Watch watch;
+            if (watchLine.query instanceof LoopSearchLine)
+            {
+                watch = Watch.loop(((LoopSearchLine) watchLine.query).city, watcher);
+            }
+            else
+            {
+                RouteSearchLine routeLine = (RouteSearchLine) watchLine.query;
+                watch = Watch.route(routeLine.from, routeLine.to, watcher);
+            }
+
+            if (line.command == Command.WATCH)
+            {
+                result = this.graph.watch(watch) ? YES : NO;
+            }
+            else
+            {
+                result = this.graph.unwatch(watch) ? YES : NOT_WATCHED;
+            }
+        }
+
+        return result;
+    }
+
+    private String handleShortestLoopRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof ShortestLoopLine)
+        {
+            List<City> loop = this.graph.getShortestLoop(((ShortestLoopLine) line).city);
+
+            if (loop.isEmpty())
+            {
+                result = QueryContext.current().isTruncated() ? TIMEOUT : NONE;
+            }
+            else
+            {
+                StringBuilder b = new StringBuilder();
+                b.append(loop.size()).append(loop.size() == 1 ? " jump: " : " jumps: ");
+                for (int i = 0; i < loop.size(); i++)
+                {
+                    if (i > 0)
+                    {
+                        b.append(", ");
+                    }
+
+                    b.append(loop.get(i).name);
+                }
+
+                result = b.toString();
+            }
+        }
+
+        return result;
+    }
+
+    private String handleLoopReport(PrintWriter out)
+    {
+        Biconnectivity bridges = this.graph.getBiconnectivity();
+
+        bridges.forEachLoopCity((city) -> out.println(this.graph.getCity(city).name));
+        out.flush();
+
+        return bridges.getLoopCityCount() + " cities on loops, " + bridges.getBridgeCount() + " bridges";
+    }
+
+    private String handleCriticalReport(PrintWriter out)
+    {
+        Biconnectivity bridges = this.graph.getBiconnectivity();
+
+        for (int i = 0; i < bridges.getArticulationCount(); i++)
+        {
+            out.println("city " + this.graph.getCity(bridges.getArticulation(i)).name + " splits off "
+                    + bridges.getArticulationSplit(i));
+        }
+        for (int i = 0; i < bridges.getBridgeCount(); i++)
+        {
+            out.println("route " + this.graph.getCity(bridges.getBridgeFrom(i)).name + " - "
+                    + this.graph.getCity(bridges.getBridgeTo(i)).name + " splits off " + bridges.getBridgeSplit(i));
+        }
+        out.flush();
+
+        return bridges.getArticulationCount() + " critical cities, " + bridges.getBridgeCount() + " bridges";
+    }
+
+    private String handleDistanceSearchRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof DistanceSearchLine)
+        {
+            DistanceSearchLine distanceSearchLine = (DistanceSearchLine) line;
+
+            int distance = this.graph.getDistance(distanceSearchLine.from, distanceSearchLine.to);
+            if (distance >= 0)
+            {
+                result = String.valueOf(distance);
+            }
+            else
+            {
+                result = QueryContext.current().isTruncated() ? TIMEOUT : NONE;
+            }
+        }
+
+        return result;
+    }
+
+    private String handleDistanceIndexRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof DistanceIndexLine)
+        {
+            DistanceIndexLine distanceIndexLine = (DistanceIndexLine) line;
+
+            long start = System.nanoTime();
+            try
+            {
+                DistanceLabels labels;
+                switch (line.command)
+                {
+                case DISTANCE_SAVE:
+                    labels = this.graph.saveDistances(Paths.get(distanceIndexLine.file));
+                    break;
+
+                case DISTANCE_LOAD:
+                    labels = this.graph.loadDistances(Paths.get(distanceIndexLine.file));
+                    break;
+
+                default:
+                    labels = this.graph.indexDistances();
+                    break;
+                }
+
+                result = labels.getCityCount() + " cities, " + labels.getEntryCount() + " label entries, "
+                        + labels.getSizeInBytes() + " bytes in " + (System.nanoTime() - start) / 1_000_000 + " ms";
+            }
+            catch (IOException | IllegalStateException ex)
+            {
+                LOG.warning("distance index request failed: " + ex.getMessage());
+                result = "failed: " + ex.getMessage();
             }
         }
 
         return result;
     }
+
+    private String handleFreezeRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof FreezeLine)
+        {
+            FreezeLine freezeLine = (FreezeLine) line;
+
+            long start = System.nanoTime();
+            FrozenStorage storage = this.graph.freeze(freezeLine.order, freezeLine.compressed);
+
+            result = String.format("%d cities, %d bytes, %.1f bits per route entry in %d ms", storage.size(),
+                    storage.getSizeInBytes(), 8.0 * storage.getSizeInBytes() / Math.max(1, storage.getEntryCount()),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+
+        return result;
+    }
+
+    private String handleResultStoreRequest(Line line)
+    {
+        String result = EMPTY;
+
+        int numbering = this.graph.getNumbering();
+        IntBitmap cities = null;
+        if (line instanceof ResultStoreLine)
+        {
+            ResultStoreLine storeLine = (ResultStoreLine) line;
+
+            cities = this.graph.getNeighborhoodIds(storeLine.originCity, storeLine.maxJumps);
+        }
+        else if (line instanceof ResultCombineLine)
+        {
+            ResultCombineLine combineLine = (ResultCombineLine) line;
+
+            IntBitmap left = this.results.get(combineLine.left, numbering);
+            IntBitmap right = this.results.get(combineLine.right, numbering);
+            if (left == null || right == null)
+            {
+                result = UNKNOWN_RESULT + COLON + (left == null ? combineLine.left : combineLine.right);
+            }
+            else
+            {
+                switch (combineLine.operation)
+                {
+                case INTERSECTION:
+                    cities = IntBitmap.and(left, right);
+                    break;
+
+                case UNION:
+                    cities = IntBitmap.or(left, right);
+                    break;
+
+                case DIFFERENCE:
+                    cities = IntBitmap.andNot(left, right);
+                    break;
+
+                default:
+                    throw new IllegalStateException("unknown operation: " + combineLine.operation);
+                }
+            }
+        }
+
+        if (cities != null)
+        {
+            String name = line instanceof ResultStoreLine ? ((ResultStoreLine) line).name
+                    : ((ResultCombineLine) line).name;
+
+            try
+            {
+                List<String> evicted = this.results.put(name, cities, numbering);
+
+                result = partial(cities.size() + " cities");
+                if (!evicted.isEmpty())
+                {
+                    result += ", evicted " + String.join(", ", evicted);
+                }
+            }
+            catch (IllegalArgumentException ex)
+            {
+                result = "failed: " + ex.getMessage();
+            }
+        }
+
+        return result;
+    }
+
+    private String handleResultShowRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof ResultLine)
+        {
+            IntBitmap cities = this.results.get(((ResultLine) line).name, this.graph.getNumbering());
+            if (cities == null)
+            {
+                result = UNKNOWN_RESULT;
+            }
+            else
+            {
+                StringBuilder b = new StringBuilder();
+                IntBitmap.Cursor cursor = new IntBitmap.Cursor().of(cities);
+                while (cursor.hasNext())
+                {
+                    if (b.length() > 0)
+                    {
+                        b.append(", ");
+                    }
+
+                    b.append(this.graph.getCity(cursor.next()).name);
+                }
+
+                result = b.toString();
+            }
+        }
+
+        return result;
+    }
+
+    private String handleResultDropRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof ResultLine)
+        {
+            result = this.results.remove(((ResultLine) line).name) ? YES : UNKNOWN_RESULT;
+        }
+
+        return result;
+    }
+
+    private void handleResultList(PrintWriter out)
+    {
+        for (String description : this.results.describe(this.graph.getNumbering()))
+        {
+            out.println(description);
+        }
+        out.println(this.results.getSizeInBytes() + " of " + this.results.getMaxBytes() + " bytes used");
+        out.flush();
+    }
+
+    private static String partial(String result)
+    {
+        String partial = result;
+
+        if (QueryContext.current().isTruncated())
+        {
+            partial = result.isEmpty() ? PARTIAL : result + " " + PARTIAL;
+        }
+
+        return partial;
+    }
+
+    private static String noOrTimeout()
+    {
+        return QueryContext.current().isTruncated() ? TIMEOUT : NO;
+    }
+
+    private String handleComponentSummaryRequest()
+    {
+        Components components = this.graph.getComponents();
+
+        StringBuilder b = new StringBuilder();
+        b.append(components.getCount()).append(" components, largest ").append(components.getLargestSize());
+
+        String separator = "; ";
+        long[] histogram = components.getSizeHistogram();
+        for (int i = 0; i < histogram.length; i++)
+        {
+            if (histogram[i] > 0)
+            {
+                int low = 1 << i;
+                int high = (int) Math.min(Integer.MAX_VALUE, (2L << i) - 1);
+
+                b.append(separator);
+                separator = ", ";
+                b.append(low == high ? String.valueOf(low) : low + "-" + high);
+                b.append(" cities: ").append(histogram[i]);
+            }
+        }
+
+        return b.toString();
+    }
+
+    private String handleComponentSearchRequest(Line line)
+    {
+        String result = EMPTY;
+
+        if (line instanceof ComponentSearchLine)
+        {
+            ComponentSearchLine componentSearchLine = (ComponentSearchLine) line;
+
+            int component = this.graph.getComponent(componentSearchLine.city);
+            if (component < 0)
+            {
+                result = NONE;
+            }
+            else
+            {
+                result = component + " (" + this.graph.getComponents().getSize(component) + " cities)";
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Prints the changes of watches to a writer.
+     */
+    private static final class PrintingListener implements Watch.Listener
+    {
+        private final PrintWriter out;
+
+        PrintingListener(PrintWriter out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        public void changed(Watch watch, boolean answer)
+        {
+            this.out.println(describe(watch, answer));
+            this.out.flush();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(this.out);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof PrintingListener && ((PrintingListener) obj).out == this.out;
+        }
+    }
 }
@@ -0,0 +1,102 @@
+/**
+ * Options.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Parses command line options of the form <code>--name=value</code>. An option
+ * given without a value is treated as <code>true</code>.
+ */
+public class Options
+{
+    private static final String PREFIX = "--";
+
+    private final Map<String, String> values = new HashMap<>();
+
+    /**
+     * Creates a new set of options from command line arguments.
+     *
+     * @param args the command line arguments
+     */
+    public Options(String... args)
+    {
+        Objects.requireNonNull(args, "args cannot be null");
+
+        for (String arg : args)
+        {
+            if (!arg.startsWith(PREFIX))
+            {
+                throw new IllegalArgumentException("unrecognized argument: " + arg);
+            }
+
+            int index = arg.indexOf('=');
+            if (index == -1)
+            {
+                this.values.put(arg.substring(PREFIX.length()), Boolean.TRUE.toString());
+            }
+            else
+            {
+                this.values.put(arg.substring(PREFIX.length(), index), arg.substring(index + 1));
+            }
+        }
+    }
+
+    /**
+     * Gets the value of an option.
+     *
+     * @param name         the option name
+     * @param defaultValue the value to use if the option is not given
+     * @return the value
+     */
+    public String get(String name, String defaultValue)
+    {
+        return this.values.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * Gets the value of an enum option. Values are case insensitive and may use
+     * dashes in place of underscores.
+     *
+     * @param <E>          the enum type
+     * @param name         the option name
+     * @param defaultValue the value to use if the option is not given
+     * @return the value
+     */
+    public <E extends Enum<E>> E getEnum(String name, E defaultValue)
+    {
+        String value = this.values.get(name);
+
+        E result = defaultValue;
+        if (value != null)
+        {
+            String constant = value.trim().toUpperCase().replace('-', '_');
+            result = Enum.valueOf(defaultValue.getDeclaringClass(), constant);
+        }
+
+        return result;
+    }
+}
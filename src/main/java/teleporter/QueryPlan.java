@@ -0,0 +1,79 @@
+/**
+ * QueryPlan.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Describes how the graph answers a query: by searching the network, from an
+ * index that is already built, or by building an index first.
+ */
+public final class QueryPlan
+{
+    /**
+     * Provides an enum for the ways a query can be answered.
+     */
+    public enum Strategy
+    {
+        /** Search the network. */
+        TRAVERSAL,
+        /** Look up the spanning forest kept current as routes change. */
+        CONNECTIVITY_FOREST,
+        /** Compare component labels. */
+        COMPONENT_LABELS,
+        /** Label the components, then compare labels. */
+        BUILD_COMPONENT_LABELS,
+        /** Look the city up in the loop index. */
+        LOOP_INDEX,
+        /** Merge distance labels. */
+        DISTANCE_LABELS
+    }
+
+    /** How the query is answered. */
+    public final Strategy strategy;
+    /** Why the strategy was chosen. */
+    public final String reason;
+
+    /**
+     * Creates a new plan.
+     *
+     * @param strategy how the query is answered
+     * @param reason   why the strategy was chosen
+     */
+    public QueryPlan(Strategy strategy, String reason)
+    {
+        Objects.requireNonNull(strategy, "strategy cannot be null");
+        Objects.requireNonNull(reason, "reason cannot be null");
+
+        this.strategy = strategy;
+        this.reason = reason;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.strategy.name().toLowerCase(Locale.ROOT).replace('_', ' ') + " (" + this.reason + ")";
+    }
+}
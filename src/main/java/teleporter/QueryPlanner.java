@@ -0,0 +1,218 @@
+/**
+ * QueryPlanner.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides when the graph builds an index instead of searching the network.
+ * <p>
+ * Each index that can be built on demand counts the queries that needed it
+ * but found it missing, and the routes their searches followed instead. It is
+ * built once at least a threshold of such queries arrived and their searches
+ * followed as many routes as building the index would: from then on the
+ * searches would cost more than the build, and until then building could cost
+ * more than it saves. Counting starts over each time the index is built, so
+ * an index dropped by frequent changes is only rebuilt once searching pays
+ * for it again.
+ * <p>
+ * Queries never build an index themselves: the first query past the threshold
+ * requests it and still searches, and the index is built with no queries
+ * running, like a change. Queries may record their work from several threads
+ * at once.
+ */
+public final class QueryPlanner
+{
+    /** The default number of queries before an index is considered. */
+    public static final long DEFAULT_THRESHOLD = 16;
+
+    /**
+     * Provides an enum for the indexes built on demand.
+     */
+    public enum Index
+    {
+        /** Component labels, answering route searches. */
+        COMPONENT_LABELS,
+        /** Bridges and loop cities, answering loop searches. */
+        LOOP_INDEX
+    }
+
+    private final long[] thresholds = new long[Index.values().length];
+    private final AtomicLongArray queries = new AtomicLongArray(Index.values().length);
+    private final AtomicLongArray routes = new AtomicLongArray(Index.values().length);
+    private final AtomicIntegerArray requested = new AtomicIntegerArray(Index.values().length);
+
+    /**
+     * Creates a planner with the default threshold for every index.
+     */
+    public QueryPlanner()
+    {
+        for (Index index : Index.values())
+        {
+            this.thresholds[index.ordinal()] = DEFAULT_THRESHOLD;
+        }
+    }
+
+    /**
+     * Sets the number of queries that must find an index missing before it
+     * is built.
+     *
+     * @param index     the index
+     * @param threshold the number of queries, or zero to never build the
+     *                  index on demand
+     */
+    public void setThreshold(Index index, long threshold)
+    {
+        Objects.requireNonNull(index, "index cannot be null");
+
+        if (threshold < 0)
+        {
+            throw new IllegalArgumentException("threshold cannot be negative");
+        }
+
+        this.thresholds[index.ordinal()] = threshold;
+    }
+
+    /**
+     * Gets the number of queries that must find an index missing before it
+     * is built.
+     *
+     * @param index the index
+     * @return the number of queries, or zero if never built on demand
+     */
+    public long getThreshold(Index index)
+    {
+        Objects.requireNonNull(index, "index cannot be null");
+
+        return this.thresholds[index.ordinal()];
+    }
+
+    /**
+     * Counts a query that found an index missing, and requests the index if
+     * it should be built. The query still searches: the index is built later
+     * with no queries running, and only the first query past the threshold
+     * requests it.
+     *
+     * @param index     the index
+     * @param buildCost the number of cities and route entries the build
+     *                  would visit
+     * @return if this query requested the index
+     */
+    boolean missed(Index index, long buildCost)
+    {
+        long count = this.queries.incrementAndGet(index.ordinal());
+
+        return this.isDue(index, count, buildCost) && this.requested.compareAndSet(index.ordinal(), 0, 1);
+    }
+
+    /**
+     * Records the routes a query followed by searching instead of using an
+     * index.
+     *
+     * @param index  the index
+     * @param routes the number of routes followed
+     */
+    void searched(Index index, long routes)
+    {
+        this.routes.addAndGet(index.ordinal(), routes);
+    }
+
+    /**
+     * Determines if a query requested an index that is not built yet.
+     *
+     * @param index the index
+     * @return if the index is requested
+     */
+    boolean isRequested(Index index)
+    {
+        return this.requested.get(index.ordinal()) != 0;
+    }
+
+    /**
+     * Starts counting over once an index is built.
+     *
+     * @param index the index
+     */
+    void built(Index index)
+    {
+        this.queries.set(index.ordinal(), 0);
+        this.routes.set(index.ordinal(), 0);
+        this.requested.set(index.ordinal(), 0);
+    }
+
+    /**
+     * Determines if the next query finding an index missing would request
+     * it, counting that query as {@link #missed(Index, long)} does.
+     *
+     * @param index     the index
+     * @param buildCost the number of cities and route entries the build
+     *                  would visit
+     * @return if the index would be requested
+     */
+    boolean wouldBuild(Index index, long buildCost)
+    {
+        return !this.isRequested(index) && this.isDue(index, this.queries.get(index.ordinal()) + 1, buildCost);
+    }
+
+    /**
+     * Describes the progress of an index towards being built.
+     *
+     * @param index     the index
+     * @param buildCost the number of cities and route entries the build
+     *                  would visit
+     * @return the description
+     */
+    String describe(Index index, long buildCost)
+    {
+        long threshold = this.thresholds[index.ordinal()];
+
+        String description;
+        if (threshold == 0)
+        {
+            description = "not built on demand";
+        }
+        else if (this.isRequested(index))
+        {
+            description = "the index is requested and built once no queries are running";
+        }
+        else
+        {
+            description = (this.queries.get(index.ordinal()) + 1) + " searches of " + threshold
+                    + " needed counting this one, " + this.routes.get(index.ordinal()) + " routes followed of "
+                    + buildCost + (this.wouldBuild(index, buildCost) ? " needed; the index is built after this search"
+                            : " needed to build the index");
+        }
+
+        return description;
+    }
+
+    private boolean isDue(Index index, long count, long buildCost)
+    {
+        long threshold = this.thresholds[index.ordinal()];
+
+        return threshold > 0 && count >= threshold && this.routes.get(index.ordinal()) >= buildCost;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Watch.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter;
+
+import java.util.Objects;
+
+import teleporter.data.City;
+
+/**
+ * Represents a standing query whose listener hears each change of its answer:
+ * either whether one city can teleport to another, or whether a city is on a
+ * loop. Two watches are equal if they ask the same question for the same
+ * listener.
+ *
+ * @see Graph#watch(Watch)
+ */
+public final class Watch
+{
+    /**
+     * Receives the new answer of a watch each time it changes.
+     */
+    @FunctionalInterface
+    public interface Listener
+    {
+        /**
+         * Called with the new answer, on the thread changing the graph. The
+         * graph must not be changed or queried from within the call.
+         *
+         * @param watch  the watch
+         * @param answer the new answer
+         */
+        void changed(Watch watch, boolean answer);
+    }
+
+    /** The origin city, or the city on a loop. */
+    public final City from;
+    /** The destination city, or null for a loop watch. */
+    public final City to;
+    /** Receives the changes of the answer. */
+    public final Listener listener;
+
+    private Watch(City from, City to, Listener listener)
+    {
+        this.from = from;
+        this.to = to;
+        this.listener = listener;
+    }
+
+    /**
+     * Creates a watch on whether one city can teleport to another.
+     *
+     * @param from     the origin city
+     * @param to       the destination city
+     * @param listener receives the changes of the answer
+     * @return the watch
+     */
+    public static Watch route(City from, City to, Listener listener)
+    {
+        Objects.requireNonNull(from, "from cannot be null");
+        Objects.requireNonNull(to, "to cannot be null");
+        Objects.requireNonNull(listener, "listener cannot be null");
+
+        return new Watch(from, to, listener);
+    }
+
+    /**
+     * Creates a watch on whether a city is on a loop.
+     *
+     * @param city     the city
+     * @param listener receives the changes of the answer
+     * @return the watch
+     */
+    public static Watch loop(City city, Listener listener)
+    {
+        Objects.requireNonNull(city, "city cannot be null");
+        Objects.requireNonNull(listener, "listener cannot be null");
+
+        return new Watch(city, null, listener);
+    }
+
+    /**
+     * Determines if this watches whether a city is on a loop.
+     *
+     * @return if this is a loop watch
+     */
+    public boolean isLoop()
+    {
+        return this.to == null;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(this.from, this.to, this.listener);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+
+        if (!(obj instanceof Watch))
+        {
+            return false;
+        }
+
+        Watch other = (Watch) obj;
+
+        return this.from.equals(other.from) && Objects.equals(this.to, other.to)
+                && this.listener.equals(other.listener);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Watch [from=" + this.from + ", to=" + this.to + "]";
+    }
+}
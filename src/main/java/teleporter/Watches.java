@@ -0,0 +1,353 @@
+/**
+ * Watches.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import teleporter.data.City;
+import teleporter.data.Route;
+import teleporter.index.IncrementalBridges;
+import teleporter.storage.GraphStorage;
+
+/**
+ * Holds the watches of a graph and answers them from an index kept current as
+ * routes are added.
+ * <p>
+ * A route watch still answering no waits in the lists of the components of
+ * both its cities. When two components merge, only the watches listed under
+ * the smaller one are checked: those whose other city is in the larger one
+ * change to yes, and the rest move to the larger list. A loop watch waits
+ * under its city until the index reports the city joining a loop. Watches on
+ * cities not yet in the network wait under the city until a route adds it.
+ * <p>
+ * Routes cannot be removed from the index, so a removal rebuilds it and
+ * checks every watch again.
+ */
+final class Watches implements IncrementalBridges.Listener
+{
+    private final Map<Watch, Entry> entries = new HashMap<>();
+    private final Map<City, List<Entry>> unknown = new HashMap<>();
+    private final Map<Integer, List<Entry>> components = new HashMap<>();
+    private final Map<Integer, List<Entry>> loops = new HashMap<>();
+
+    private GraphStorage storage;
+    private IncrementalBridges index;
+
+    /**
+     * Creates watches for a network, building the index.
+     *
+     * @param storage the network
+     */
+    Watches(GraphStorage storage)
+    {
+        this.storage = storage;
+        this.index = new IncrementalBridges(storage, this);
+    }
+
+    /**
+     * Starts a watch.
+     *
+     * @param watch the watch
+     * @return the current answer
+     */
+    boolean add(Watch watch)
+    {
+        Entry entry = this.entries.get(watch);
+        if (entry == null)
+        {
+            entry = new Entry(watch);
+            this.entries.put(watch, entry);
+            this.subscribe(entry);
+        }
+
+        return entry.answer;
+    }
+
+    /**
+     * Stops a watch.
+     *
+     * @param watch the watch
+     * @return if the watch was started
+     */
+    boolean remove(Watch watch)
+    {
+        Entry entry = this.entries.remove(watch);
+        if (entry != null)
+        {
+            this.unsubscribe(entry);
+        }
+
+        return entry != null;
+    }
+
+    /**
+     * Stops every watch of a listener.
+     *
+     * @param listener the listener
+     * @return the number of watches stopped
+     */
+    int remove(Watch.Listener listener)
+    {
+        int count = 0;
+
+        Iterator<Entry> it = this.entries.values().iterator();
+        while (it.hasNext())
+        {
+            Entry entry = it.next();
+            if (entry.watch.listener.equals(listener))
+            {
+                this.unsubscribe(entry);
+                it.remove();
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the number of watches.
+     *
+     * @return the number of watches
+     */
+    int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Updates the watches for an added route, notifying those whose answer
+     * changes.
+     *
+     * @param route the route
+     * @param from  the identifier of the first city
+     * @param to    the identifier of the second city
+     */
+    void routeAdded(Route route, int from, int to)
+    {
+        if (!this.unknown.isEmpty())
+        {
+            this.resolve(route.from);
+            this.resolve(route.to);
+        }
+
+        this.index.routeAdded(from, to, this.storage.size());
+    }
+
+    /**
+     * Rebuilds the index after a route is removed or the network is
+     * renumbered, notifying the watches whose answer changed.
+     *
+     * @param network the network, which may be a new storage
+     */
+    void rebuild(GraphStorage network)
+    {
+        this.storage = network;
+        this.index = new IncrementalBridges(network, this);
+        this.unknown.clear();
+        this.components.clear();
+        this.loops.clear();
+
+        for (Entry entry : this.entries.values())
+        {
+            boolean answer = entry.answer;
+            this.subscribe(entry);
+            if (entry.answer != answer)
+            {
+                entry.watch.listener.changed(entry.watch, entry.answer);
+            }
+        }
+    }
+
+    @Override
+    public void componentsMerged(int merged, int into)
+    {
+        List<Entry> waiting = this.components.remove(merged);
+        if (waiting != null)
+        {
+            for (Entry entry : waiting)
+            {
+                if (entry.answer)
+                {
+                    // changed when the other list merged, or stopped
+                    continue;
+                }
+
+                if (this.index.isConnected(entry.from, entry.to))
+                {
+                    this.changed(entry);
+                }
+                else
+                {
+                    this.components.computeIfAbsent(into, (key) -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void loopFormed(int city)
+    {
+        List<Entry> waiting = this.loops.remove(city);
+        if (waiting != null)
+        {
+            for (Entry entry : waiting)
+            {
+                if (!entry.answer)
+                {
+                    this.changed(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers a watch and, while the answer is no, queues it where the change
+     * to yes will be reported.
+     */
+    private void subscribe(Entry entry)
+    {
+        Watch watch = entry.watch;
+        entry.from = this.storage.find(watch.from);
+        entry.to = watch.isLoop() ? entry.from : this.storage.find(watch.to);
+
+        if (entry.from < 0 || entry.to < 0)
+        {
+            entry.answer = false;
+            if (entry.from < 0)
+            {
+                this.unknown.computeIfAbsent(watch.from, (key) -> new ArrayList<>()).add(entry);
+            }
+
+            if (entry.to < 0 && !watch.isLoop())
+            {
+                this.unknown.computeIfAbsent(watch.to, (key) -> new ArrayList<>()).add(entry);
+            }
+        }
+        else if (watch.isLoop())
+        {
+            entry.answer = this.index.isOnLoop(entry.from);
+            if (!entry.answer)
+            {
+                this.loops.computeIfAbsent(entry.from, (key) -> new ArrayList<>()).add(entry);
+            }
+        }
+        else if (entry.from != entry.to)
+        {
+            entry.answer = this.index.isConnected(entry.from, entry.to);
+            if (!entry.answer)
+            {
+                this.components.computeIfAbsent(this.index.getComponent(entry.from), (key) -> new ArrayList<>())
+                        .add(entry);
+                this.components.computeIfAbsent(this.index.getComponent(entry.to), (key) -> new ArrayList<>())
+                        .add(entry);
+            }
+        }
+        else
+        {
+            // a city never teleports to itself
+            entry.answer = false;
+        }
+    }
+
+    /**
+     * Takes a watch still answering no out of the lists it waits in.
+     */
+    private void unsubscribe(Entry entry)
+    {
+        Watch watch = entry.watch;
+        if (!entry.answer && (entry.from < 0 || entry.to < 0))
+        {
+            unlist(this.unknown, watch.from, entry);
+            unlist(this.unknown, watch.to, entry);
+        }
+        else if (!entry.answer && watch.isLoop())
+        {
+            unlist(this.loops, entry.from, entry);
+        }
+        else if (!entry.answer && entry.from != entry.to)
+        {
+            unlist(this.components, this.index.getComponent(entry.from), entry);
+            unlist(this.components, this.index.getComponent(entry.to), entry);
+        }
+
+        // any copy left in a list is skipped from now on
+        entry.answer = true;
+    }
+
+    private static <K> void unlist(Map<K, List<Entry>> lists, K key, Entry entry)
+    {
+        List<Entry> list = lists.get(key);
+        if (list != null)
+        {
+            list.removeIf((listed) -> listed == entry);
+            if (list.isEmpty())
+            {
+                lists.remove(key);
+            }
+        }
+    }
+
+    private void resolve(City city)
+    {
+        List<Entry> waiting = this.unknown.remove(city);
+        if (waiting != null)
+        {
+            for (Entry entry : waiting)
+            {
+                // a route watch on two new cities is listed under both
+                if (entry.from < 0 || entry.to < 0)
+                {
+                    this.subscribe(entry);
+                }
+            }
+        }
+    }
+
+    private void changed(Entry entry)
+    {
+        entry.answer = true;
+        entry.watch.listener.changed(entry.watch, true);
+    }
+
+    /**
+     * Holds the state of one watch.
+     */
+    private static final class Entry
+    {
+        final Watch watch;
+        int from;
+        int to;
+        boolean answer;
+
+        Entry(Watch watch)
+        {
+            this.watch = watch;
+        }
+    }
+}
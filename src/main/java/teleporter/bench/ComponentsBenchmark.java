@@ -0,0 +1,96 @@
+/**
+ * ComponentsBenchmark.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.bench;
+
+import java.util.concurrent.ForkJoinPool;
+
+import teleporter.Options;
+import teleporter.data.City;
+import teleporter.index.Components;
+import teleporter.storage.GraphStorage;
+import teleporter.storage.StorageType;
+
+/**
+ * Measures how component labeling scales with the number of threads.
+ *
+ * <pre>
+ * gradlew run -PmainClass=teleporter.bench.ComponentsBenchmark -PappArgs=--storage=off-heap,--cities=20000000,--routes=100000000
+ * </pre>
+ */
+public final class ComponentsBenchmark
+{
+    private ComponentsBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     * <p>
+     * Supported options: <code>--storage</code>, <code>--cities</code>,
+     * <code>--routes</code>, <code>--runs</code> and <code>--seed</code>.
+     *
+     * @param args the command line options
+     */
+    public static void main(String[] args)
+    {
+        Options options = new Options(args);
+
+        StorageType storageType = options.getEnum("storage", StorageType.OFF_HEAP);
+        int cities = Integer.parseInt(options.get("cities", "1000000"));
+        long routes = Long.parseLong(options.get("routes", "5000000"));
+        int runs = Integer.parseInt(options.get("runs", "3"));
+        long seed = Long.parseLong(options.get("seed", "1"));
+
+        GraphStorage storage = storageType.create();
+        for (int i = 0; i < cities; i++)
+        {
+            storage.intern(new City(RandomNetworks.name(i)));
+        }
+
+        long start = System.nanoTime();
+        RandomNetworks.uniform(cities, routes, seed, storage::connect);
+        System.out.printf("loaded %d cities and %d routes in %d ms%n", cities, routes,
+                (System.nanoTime() - start) / 1_000_000);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2)
+        {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+
+            long best = Long.MAX_VALUE;
+            Components components = null;
+            for (int run = 0; run < runs; run++)
+            {
+                start = System.nanoTime();
+                components = Components.build(storage, pool);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            pool.shutdown();
+
+            System.out.printf("%2d threads: %d ms, %d components, largest %d%n", threads, best / 1_000_000,
+                    components.getCount(), components.getLargestSize());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * DistanceLabelsBenchmark.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.bench;
+
+import java.util.Random;
+
+import teleporter.Graph;
+import teleporter.Options;
+import teleporter.data.City;
+import teleporter.data.Route;
+import teleporter.index.DistanceLabels;
+import teleporter.storage.StorageType;
+
+/**
+ * Measures building and querying distance labels on a power-law network,
+ * comparing label lookups with breadth first searches.
+ *
+ * <pre>
+ * gradlew run -PmainClass=teleporter.bench.DistanceLabelsBenchmark -PappArgs=--cities=1000000,--routes-per-city=2
+ * </pre>
+ */
+public final class DistanceLabelsBenchmark
+{
+    private DistanceLabelsBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     * <p>
+     * Supported options: <code>--storage</code>, <code>--cities</code>,
+     * <code>--routes-per-city</code>, <code>--queries</code>,
+     * <code>--search-queries</code> and <code>--seed</code>.
+     *
+     * @param args the command line options
+     */
+    public static void main(String[] args)
+    {
+        Options options = new Options(args);
+
+        StorageType storageType = options.getEnum("storage", StorageType.HEAP);
+        int cities = Integer.parseInt(options.get("cities", "1000000"));
+        int routesPerCity = Integer.parseInt(options.get("routes-per-city", "2"));
+        int queries = Integer.parseInt(options.get("queries", "1000000"));
+        int searchQueries = Integer.parseInt(options.get("search-queries", "1000"));
+        long seed = Long.parseLong(options.get("seed", "1"));
+
+        City[] names = new City[cities];
+        for (int i = 0; i < cities; i++)
+        {
+            names[i] = new City(RandomNetworks.name(i));
+        }
+
+        Graph graph = new Graph(storageType.create());
+        RandomNetworks.powerLaw(cities, routesPerCity, seed,
+                (from, to) -> graph.addRoute(new Route(names[from], names[to])));
+        System.out.printf("loaded %d cities and %d routes%n", cities, graph.getRouteCount());
+
+        Random random = new Random(seed);
+        long checksum = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < searchQueries; i++)
+        {
+            checksum += graph.getDistance(names[random.nextInt(cities)], names[random.nextInt(cities)]);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("search: %.2f us per query, checksum %d%n", elapsed / 1000.0 / searchQueries, checksum);
+
+        start = System.nanoTime();
+        DistanceLabels labels = graph.indexDistances();
+        elapsed = System.nanoTime() - start;
+        System.out.printf("built labels in %d ms: %d entries, %.1f per city, %d bytes%n", elapsed / 1_000_000,
+                labels.getEntryCount(), (double) labels.getEntryCount() / labels.getCityCount(),
+                labels.getSizeInBytes());
+
+        random = new Random(seed);
+        checksum = 0;
+        for (int i = 0; i < searchQueries; i++)
+        {
+            checksum += graph.getDistance(names[random.nextInt(cities)], names[random.nextInt(cities)]);
+        }
+        System.out.printf("labels: checksum %d%n", checksum);
+
+        // query identifiers directly so the timing excludes city lookups
+        int size = labels.getCityCount();
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++)
+        {
+            checksum += labels.getDistance(random.nextInt(size), random.nextInt(size));
+        }
+        elapsed = System.nanoTime() - start;
+        System.out.printf("labels: %.3f us per query%n", elapsed / 1000.0 / queries);
+    }
+}
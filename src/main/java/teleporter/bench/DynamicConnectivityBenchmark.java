@@ -0,0 +1,231 @@
+/**
+ * DynamicConnectivityBenchmark.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.bench;
+
+import java.util.Random;
+
+import teleporter.Graph;
+import teleporter.Options;
+import teleporter.data.City;
+import teleporter.data.Route;
+import teleporter.index.Components;
+import teleporter.storage.GraphStorage;
+import teleporter.storage.StorageType;
+import teleporter.util.LongHashSet;
+
+/**
+ * Measures connectivity queries under a mixed workload of route insertions,
+ * removals and queries, maintaining connectivity incrementally against
+ * relabeling components after every change.
+ *
+ * <pre>
+ * gradlew run -PmainClass=teleporter.bench.DynamicConnectivityBenchmark -PappArgs=--cities=200000,--operations=1000000
+ * </pre>
+ */
+public final class DynamicConnectivityBenchmark
+{
+    private DynamicConnectivityBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     * <p>
+     * Supported options: <code>--storage</code>, <code>--cities</code>,
+     * <code>--routes-per-city</code>, <code>--operations</code>,
+     * <code>--rebuild-operations</code>, <code>--inserts</code>,
+     * <code>--removals</code> (percentages of operations, the rest are
+     * queries) and <code>--seed</code>.
+     *
+     * @param args the command line options
+     */
+    public static void main(String[] args)
+    {
+        Options options = new Options(args);
+
+        StorageType storageType = options.getEnum("storage", StorageType.HEAP);
+        int cities = Integer.parseInt(options.get("cities", "200000"));
+        int routesPerCity = Integer.parseInt(options.get("routes-per-city", "2"));
+        int operations = Integer.parseInt(options.get("operations", "1000000"));
+        int rebuildOperations = Integer.parseInt(options.get("rebuild-operations", "1000"));
+        int inserts = Integer.parseInt(options.get("inserts", "20"));
+        int removals = Integer.parseInt(options.get("removals", "20"));
+        long seed = Long.parseLong(options.get("seed", "1"));
+
+        City[] names = new City[cities];
+        for (int i = 0; i < cities; i++)
+        {
+            names[i] = new City(RandomNetworks.name(i));
+        }
+
+        Graph graph = new Graph(storageType.create());
+        GraphStorage storage = storageType.create();
+        Routes routes = new Routes();
+        LongHashSet keys = new LongHashSet();
+
+        RandomNetworks.powerLaw(cities, routesPerCity, seed, (from, to) ->
+        {
+            if (graph.addRoute(new Route(names[from], names[to])))
+            {
+                storage.connect(storage.intern(names[from]), storage.intern(names[to]));
+                routes.add(from, to);
+                keys.add(key(from, to));
+            }
+        });
+        System.out.printf("loaded %d cities and %d routes%n", cities, graph.getRouteCount());
+
+        // The first removal labels the network, keep it out of the timings.
+        long first = routes.remove(0);
+        graph.removeRoute(new Route(names[(int) (first >>> 32)], names[(int) first]));
+        storage.disconnect(storage.find(names[(int) (first >>> 32)]), storage.find(names[(int) first]));
+        keys.remove(key((int) (first >>> 32), (int) first));
+        Routes replay = routes.copy();
+
+        Random random = new Random(seed);
+        int connected = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++)
+        {
+            int kind = random.nextInt(100);
+            if (kind < inserts)
+            {
+                int from = random.nextInt(cities);
+                int to = random.nextInt(cities);
+                if (from != to && graph.addRoute(new Route(names[from], names[to])))
+                {
+                    routes.add(from, to);
+                }
+            }
+            else if (kind < inserts + removals && routes.size() > 0)
+            {
+                long route = routes.remove(random.nextInt(routes.size()));
+                graph.removeRoute(new Route(names[(int) (route >>> 32)], names[(int) route]));
+            }
+            else if (graph.canTeleport(names[random.nextInt(cities)], names[random.nextInt(cities)]))
+            {
+                connected++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("incremental: %d operations in %d ms, %.2f us per operation, %d connected%n", operations,
+                elapsed / 1_000_000, elapsed / 1000.0 / operations, connected);
+
+        // Relabeling is replayed on a plain storage for fewer operations, it
+        // labels the whole network on the first query after each change.
+        random = new Random(seed);
+        Components components = null;
+        connected = 0;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rebuildOperations; i++)
+        {
+            int kind = random.nextInt(100);
+            if (kind < inserts)
+            {
+                int from = random.nextInt(cities);
+                int to = random.nextInt(cities);
+                if (from != to && keys.add(key(from, to)))
+                {
+                    storage.connect(storage.find(names[from]), storage.find(names[to]));
+                    replay.add(from, to);
+                    components = null;
+                }
+            }
+            else if (kind < inserts + removals && replay.size() > 0)
+            {
+                long route = replay.remove(random.nextInt(replay.size()));
+                storage.disconnect(storage.find(names[(int) (route >>> 32)]), storage.find(names[(int) route]));
+                keys.remove(key((int) (route >>> 32), (int) route));
+                components = null;
+            }
+            else
+            {
+                if (components == null)
+                {
+                    components = Components.build(storage);
+                }
+
+                int from = storage.find(names[random.nextInt(cities)]);
+                int to = storage.find(names[random.nextInt(cities)]);
+                if (components.getComponent(from) == components.getComponent(to))
+                {
+                    connected++;
+                }
+            }
+        }
+        elapsed = System.nanoTime() - start;
+        System.out.printf("relabeling: %d operations in %d ms, %.2f us per operation, %d connected%n",
+                rebuildOperations, elapsed / 1_000_000, elapsed / 1000.0 / rebuildOperations, connected);
+    }
+
+    private static long key(int from, int to)
+    {
+        return (long) Math.min(from, to) << 32 | Math.max(from, to);
+    }
+
+    /**
+     * A list of routes between numbered cities with constant time removal of
+     * any element.
+     */
+    private static final class Routes
+    {
+        private long[] routes = new long[1024];
+        private int size;
+
+        void add(int from, int to)
+        {
+            if (this.size == this.routes.length)
+            {
+                long[] grown = new long[this.size * 2];
+                System.arraycopy(this.routes, 0, grown, 0, this.size);
+                this.routes = grown;
+            }
+
+            this.routes[this.size++] = (long) from << 32 | to;
+        }
+
+        long remove(int index)
+        {
+            long route = this.routes[index];
+            this.routes[index] = this.routes[--this.size];
+
+            return route;
+        }
+
+        Routes copy()
+        {
+            Routes copy = new Routes();
+            copy.routes = this.routes.clone();
+            copy.size = this.size;
+
+            return copy;
+        }
+
+        int size()
+        {
+            return this.size;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * RandomNetworks.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.bench;
+
+import java.util.Random;
+
+/**
+ * Generates random teleportation networks for benchmarking.
+ */
+public final class RandomNetworks
+{
+    /**
+     * Receives the routes of a generated network.
+     */
+    @FunctionalInterface
+    public interface RouteSink
+    {
+        /**
+         * Accepts a route between two numbered cities.
+         *
+         * @param from the number of the first city
+         * @param to   the number of the second city
+         */
+        void route(int from, int to);
+    }
+
+    private RandomNetworks()
+    {
+    }
+
+    /**
+     * Generates a power-law network by preferential attachment: each new city
+     * connects to cities chosen with probability proportional to their degree,
+     * producing a few large hubs and many small cities.
+     *
+     * @param cities         the number of cities
+     * @param routesPerCity  the number of routes added with each new city
+     * @param seed           the random seed
+     * @param sink           receives the generated routes
+     */
+    public static void powerLaw(int cities, int routesPerCity, long seed, RouteSink sink)
+    {
+        Random random = new Random(seed);
+
+        int[] endpoints = new int[2 * cities * routesPerCity];
+        int count = 0;
+
+        for (int city = 1; city < cities; city++)
+        {
+            for (int i = 0; i < routesPerCity; i++)
+            {
+                int target = count == 0 ? 0 : endpoints[random.nextInt(count)];
+                if (target != city)
+                {
+                    sink.route(city, target);
+
+                    endpoints[count++] = city;
+                    endpoints[count++] = target;
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates a network with routes between uniformly chosen cities.
+     *
+     * @param cities the number of cities
+     * @param routes the number of routes
+     * @param seed   the random seed
+     * @param sink   receives the generated routes
+     */
+    public static void uniform(int cities, long routes, long seed, RouteSink sink)
+    {
+        Random random = new Random(seed);
+
+        for (long i = 0; i < routes; i++)
+        {
+            int from = random.nextInt(cities);
+            int to = random.nextInt(cities);
+            if (from != to)
+            {
+                sink.route(from, to);
+            }
+        }
+    }
+
+    /**
+     * Gets a name for a numbered city. Names only use letters so they can be
+     * used in queries.
+     *
+     * @param city the city number
+     * @return the name
+     */
+    public static String name(int city)
+    {
+        StringBuilder b = new StringBuilder("City ");
+
+        int n = city;
+        do
+        {
+            b.append((char) ('a' + n % 26));
+            n /= 26;
+        }
+        while (n > 0);
+
+        return b.toString();
+    }
+}
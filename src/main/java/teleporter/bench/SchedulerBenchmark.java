@@ -0,0 +1,181 @@
+/**
+ * SchedulerBenchmark.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import teleporter.Graph;
+import teleporter.Options;
+import teleporter.data.City;
+import teleporter.data.Route;
+import teleporter.metrics.LatencyHistogram;
+import teleporter.server.Server;
+import teleporter.shard.ShardClient;
+
+/**
+ * Measures the latency of cheap route searches while other clients keep the
+ * server busy with large neighborhood counts, first with separate cheap and
+ * expensive pools and then with every query sharing one pool of the same
+ * total size.
+ *
+ * <pre>
+ * gradlew run -PmainClass=teleporter.bench.SchedulerBenchmark -PappArgs=--cities=200000,--seconds=10
+ * </pre>
+ */
+public final class SchedulerBenchmark
+{
+    private SchedulerBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     * <p>
+     * Supported options: <code>--cities</code>, <code>--routes-per-city</code>,
+     * <code>--cheap-clients</code>, <code>--expensive-clients</code>,
+     * <code>--jumps</code>, <code>--seconds</code> and <code>--seed</code>.
+     *
+     * @param args the command line options
+     * @throws Exception if the benchmark fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Options options = new Options(args);
+
+        int cities = Integer.parseInt(options.get("cities", "200000"));
+        int routesPerCity = Integer.parseInt(options.get("routes-per-city", "2"));
+        int processors = Runtime.getRuntime().availableProcessors();
+        int cheapClients = Integer.parseInt(options.get("cheap-clients", String.valueOf(processors)));
+        int expensiveClients = Integer.parseInt(options.get("expensive-clients", String.valueOf(2 * processors)));
+        int jumps = Integer.parseInt(options.get("jumps", "6"));
+        int seconds = Integer.parseInt(options.get("seconds", "10"));
+        long seed = Long.parseLong(options.get("seed", "1"));
+
+        City[] names = new City[cities];
+        for (int i = 0; i < cities; i++)
+        {
+            names[i] = new City(RandomNetworks.name(i));
+        }
+
+        Graph graph = new Graph();
+        RandomNetworks.powerLaw(cities, routesPerCity, seed,
+                (from, to) -> graph.addRoute(new Route(names[from], names[to])));
+        graph.getComponents();
+        System.out.printf("loaded %d cities and %d routes%n", cities, graph.getRouteCount());
+
+        int cheapThreads = processors;
+        int expensiveThreads = Math.max(1, processors / 4);
+
+        run("split", graph, names, new Options("--cheap-threads=" + cheapThreads,
+                "--expensive-threads=" + expensiveThreads), cheapClients, expensiveClients, jumps, seconds, seed);
+        run("shared", graph, names, new Options("--cheap-threads=" + (cheapThreads + expensiveThreads),
+                "--expensive-threads=1", "--cheap-cost=" + Long.MAX_VALUE), cheapClients, expensiveClients, jumps,
+                seconds, seed);
+    }
+
+    private static void run(String name, Graph graph, City[] names, Options options, int cheapClients,
+            int expensiveClients, int jumps, int seconds, long seed) throws Exception
+    {
+        Server server = new Server(graph, 0, options);
+        Thread acceptor = new Thread(server::run, "teleporter-benchmark-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        LatencyHistogram cheap = new LatencyHistogram();
+        AtomicLong expensive = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < expensiveClients; i++)
+        {
+            // the first cities of a power-law network are its hubs
+            String request = "count cities from " + names[i % 8].name + " in " + jumps + " jumps";
+            threads.add(client(server, end, (client) ->
+            {
+                client.request(request);
+                expensive.incrementAndGet();
+            }));
+        }
+
+        for (int i = 0; i < cheapClients; i++)
+        {
+            Random random = new Random(seed + i);
+            threads.add(client(server, end, (client) ->
+            {
+                String request = "can I teleport from " + names[random.nextInt(names.length)].name + " to "
+                        + names[random.nextInt(names.length)].name;
+
+                long start = System.nanoTime();
+                client.request(request);
+                cheap.record(System.nanoTime() - start);
+            }));
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        server.shutdown();
+
+        System.out.printf("%s: %d cheap queries, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us; "
+                + "%d expensive queries%n", name, cheap.getCount(), cheap.getValueAtPercentile(50) / 1000.0,
+                cheap.getValueAtPercentile(99) / 1000.0, cheap.getValueAtPercentile(99.9) / 1000.0,
+                cheap.getMax() / 1000.0, expensive.get());
+    }
+
+    private static Thread client(Server server, long end, Request request) throws IOException
+    {
+        ShardClient client = ShardClient.connect(server.getPort());
+
+        Thread thread = new Thread(() ->
+        {
+            try (ShardClient c = client)
+            {
+                while (System.nanoTime() < end)
+                {
+                    request.run(c);
+                }
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        thread.start();
+
+        return thread;
+    }
+
+    private interface Request
+    {
+        void run(ShardClient client) throws IOException;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * StorageBenchmark.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.bench;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import teleporter.Graph;
+import teleporter.Options;
+import teleporter.data.City;
+import teleporter.data.Route;
+import teleporter.storage.StorageType;
+
+/**
+ * Compares garbage collection cost and memory use of the graph storage
+ * implementations. Run each storage type in its own JVM so the measurements
+ * do not interfere, for example:
+ *
+ * <pre>
+ * gradlew run -PmainClass=teleporter.bench.StorageBenchmark -PappArgs=--storage=off-heap,--cities=2000000
+ * </pre>
+ */
+public final class StorageBenchmark
+{
+    private StorageBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     * <p>
+     * Supported options: <code>--storage</code>, <code>--cities</code>,
+     * <code>--degree</code> (routes per city), <code>--queries</code> and
+     * <code>--seed</code>.
+     *
+     * @param args the command line options
+     * @throws IOException if unable to read process statistics
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Options options = new Options(args);
+
+        StorageType storageType = options.getEnum("storage", StorageType.HEAP);
+        int cities = Integer.parseInt(options.get("cities", "1000000"));
+        int degree = Integer.parseInt(options.get("degree", "4"));
+        int queries = Integer.parseInt(options.get("queries", "1000"));
+        long seed = Long.parseLong(options.get("seed", "1"));
+
+        Graph graph = new Graph(storageType.create());
+
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long start = System.nanoTime();
+
+        RandomNetworks.powerLaw(cities, degree, seed, (from, to) -> graph.addRoute(
+                new Route(new City(RandomNetworks.name(from)), new City(RandomNetworks.name(to)))));
+
+        report(storageType + " load", start, gcCount, gcTime);
+
+        gcCount = gcCount();
+        gcTime = gcTime();
+        start = System.nanoTime();
+
+        Random random = new Random(seed);
+        long found = 0;
+        for (int i = 0; i < queries; i++)
+        {
+            City city = new City(RandomNetworks.name(random.nextInt(cities)));
+            found += graph.getNeighborhood(city, 2).size();
+        }
+
+        report(storageType + " query", start, gcCount, gcTime);
+        System.out.println("  cities found:     " + found);
+
+        start = System.nanoTime();
+        System.gc();
+        System.out.printf("  full gc:          %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("  heap used:        %d MB%n", (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+        System.out.printf("  direct memory:    %d MB%n", directMemory() >> 20);
+        System.out.println("  resident set:     " + residentSet());
+    }
+
+    private static void report(String phase, long start, long gcCount, long gcTime)
+    {
+        System.out.println(phase);
+        System.out.printf("  elapsed:          %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("  gc collections:   %d%n", gcCount() - gcCount);
+        System.out.printf("  gc time:          %d ms%n", gcTime() - gcTime);
+    }
+
+    private static long gcCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+
+        return count;
+    }
+
+    private static long gcTime()
+    {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+
+        return time;
+    }
+
+    private static long directMemory()
+    {
+        long used = 0;
+        for (BufferPoolMXBean bean : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+        {
+            if ("direct".equals(bean.getName()))
+            {
+                used += bean.getMemoryUsed();
+            }
+        }
+
+        return used;
+    }
+
+    private static String residentSet() throws IOException
+    {
+        Path status = Paths.get("/proc/self/status");
+
+        String result = "unavailable";
+        if (Files.isReadable(status))
+        {
+            for (String line : Files.readAllLines(status, StandardCharsets.UTF_8))
+            {
+                if (line.startsWith("VmRSS:"))
+                {
+                    result = line.substring("VmRSS:".length()).trim();
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * VertexOrderBenchmark.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.bench;
+
+import java.util.Random;
+
+import teleporter.Graph;
+import teleporter.Options;
+import teleporter.data.City;
+import teleporter.data.Route;
+import teleporter.metrics.QueryContext;
+import teleporter.storage.FrozenStorage;
+import teleporter.storage.NeighborCursor;
+import teleporter.storage.StorageType;
+import teleporter.storage.VertexOrder;
+
+/**
+ * Measures breadth first search throughput on a power-law network before and
+ * after freezing it with each city order, with or without compression. Run
+ * each configuration in its own JVM, under
+ * <code>perf stat -e LLC-loads,LLC-load-misses</code> to count last level
+ * cache misses, for example:
+ *
+ * <pre>
+ * gradlew run -PmainClass=teleporter.bench.VertexOrderBenchmark -PappArgs=--cities=2000000,--freeze=false
+ * gradlew run -PmainClass=teleporter.bench.VertexOrderBenchmark -PappArgs=--cities=2000000,--order=rcm
+ * gradlew run -PmainClass=teleporter.bench.VertexOrderBenchmark -PappArgs=--order=rcm,--compressed=true
+ * </pre>
+ */
+public final class VertexOrderBenchmark
+{
+    private VertexOrderBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     * <p>
+     * Supported options: <code>--storage</code>, <code>--freeze</code>,
+     * <code>--order</code>, <code>--compressed</code>, <code>--cities</code>,
+     * <code>--routes-per-city</code>, <code>--jumps</code>,
+     * <code>--queries</code> and <code>--seed</code>.
+     *
+     * @param args the command line options
+     */
+    public static void main(String[] args)
+    {
+        Options options = new Options(args);
+
+        StorageType storageType = options.getEnum("storage", StorageType.HEAP);
+        boolean freeze = Boolean.parseBoolean(options.get("freeze", "true"));
+        VertexOrder order = options.getEnum("order", VertexOrder.BFS);
+        boolean compressed = Boolean.parseBoolean(options.get("compressed", "false"));
+        int cities = Integer.parseInt(options.get("cities", "1000000"));
+        int routesPerCity = Integer.parseInt(options.get("routes-per-city", "2"));
+        int jumps = Integer.parseInt(options.get("jumps", "1000"));
+        int queries = Integer.parseInt(options.get("queries", "20"));
+        long seed = Long.parseLong(options.get("seed", "1"));
+
+        City[] names = new City[cities];
+        for (int i = 0; i < cities; i++)
+        {
+            names[i] = new City(RandomNetworks.name(i));
+        }
+
+        Graph graph = new Graph(storageType.create());
+        RandomNetworks.powerLaw(cities, routesPerCity, seed,
+                (from, to) -> graph.addRoute(new Route(names[from], names[to])));
+        System.out.printf("loaded %d cities and %d routes%n", cities, graph.getRouteCount());
+
+        if (freeze)
+        {
+            long start = System.nanoTime();
+            FrozenStorage storage = graph.freeze(order, compressed);
+            System.out.printf("froze%s in %s order in %d ms, %d bytes, %.2f bits per route entry, "
+                    + "mean log2 neighbor distance %.2f%n", compressed ? " compressed" : "", order,
+                    (System.nanoTime() - start) / 1_000_000, storage.getSizeInBytes(),
+                    8.0 * storage.getSizeInBytes() / Math.max(1, storage.getEntryCount()), meanLogDistance(storage));
+        }
+
+        Random random = new Random(seed);
+
+        // warm up so the measured searches run compiled
+        for (int i = 0; i < Math.max(1, queries / 4); i++)
+        {
+            graph.countNeighborhood(names[random.nextInt(cities)], jumps);
+        }
+
+        long checksum = 0;
+        long routes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++)
+        {
+            QueryContext context = QueryContext.begin();
+            checksum += graph.countNeighborhood(names[random.nextInt(cities)], jumps);
+            routes += context.getRoutes();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%s: %.1f ms per search, %.1f million routes/s, checksum %d%n",
+                freeze ? order.name().toLowerCase() : storageType.name().toLowerCase(),
+                elapsed / 1e6 / queries, routes * 1e3 / elapsed, checksum);
+    }
+
+    private static double meanLogDistance(FrozenStorage storage)
+    {
+        double sum = 0;
+        long count = 0;
+
+        NeighborCursor cursor = storage.cursor();
+        for (int id = 0; id < storage.size(); id++)
+        {
+            cursor.of(id);
+            while (cursor.hasNext())
+            {
+                sum += Math.log(1 + Math.abs(cursor.next() - id)) / Math.log(2);
+                count++;
+            }
+        }
+
+        return count == 0 ? 0 : sum / count;
+    }
+}
@@ -23,35 +23,169 @@
  */
 package teleporter.data;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.Set;
+
+import teleporter.util.IntBitmap;
 
 /**
  * Creates a new node for a graph.
+ * <p>
+ * Neighbors are kept by identifier in a representation chosen by degree. Most
+ * cities have a handful of routes, which are kept in a small unsorted array;
+ * once a city has more than {@value #MAX_ARRAY_DEGREE} routes, its neighbors
+ * move to a compressed bitmap, which stays compact and iterates quickly even
+ * for hubs with millions of routes. A hub that loses most of its routes moves
+ * back to an array.
  */
 public class Node
 {
+    /** The most neighbors kept in an array. */
+    public static final int MAX_ARRAY_DEGREE = 128;
+
+    private static final int[] NO_NEIGHBORS = new int[0];
+
+    /** The node identifier. */
+    public final int id;
     /** The node data. */
     public final City city;
-    /** The set of adjacent nodes. */
-    public final Set<Node> neighbors = new HashSet<>();
+
+    private int[] array = NO_NEIGHBORS;
+    private int degree;
+    private IntBitmap bitmap;
 
     /**
      * Creates a new node with the input data.
      *
+     * @param id   the identifier
      * @param city the data
      */
-    public Node(City city)
+    public Node(int id, City city)
     {
         Objects.requireNonNull(city, "city cannot be null");
 
+        if (id < 0)
+        {
+            throw new IllegalArgumentException("id cannot be negative");
+        }
+
+        this.id = id;
         this.city = city;
     }
 
+    /**
+     * Adds a neighbor. The caller must not add a neighbor twice.
+     *
+     * @param neighbor the identifier of the neighbor
+     */
+    public void addNeighbor(int neighbor)
+    {
+        if (this.bitmap != null)
+        {
+            this.bitmap.add(neighbor);
+        }
+        else if (this.degree == MAX_ARRAY_DEGREE)
+        {
+            this.bitmap = new IntBitmap();
+            for (int i = 0; i < this.degree; i++)
+            {
+                this.bitmap.add(this.array[i]);
+            }
+            this.bitmap.add(neighbor);
+            this.array = NO_NEIGHBORS;
+        }
+        else
+        {
+            if (this.degree == this.array.length)
+            {
+                this.array = Arrays.copyOf(this.array, Math.min(MAX_ARRAY_DEGREE, Math.max(2, 2 * this.degree)));
+            }
+            this.array[this.degree] = neighbor;
+        }
+
+        this.degree++;
+    }
+
+    /**
+     * Removes a neighbor.
+     *
+     * @param neighbor the identifier of the neighbor
+     * @return if the neighbor was present
+     */
+    public boolean removeNeighbor(int neighbor)
+    {
+        boolean removed = false;
+
+        if (this.bitmap != null)
+        {
+            removed = this.bitmap.remove(neighbor);
+            if (removed && this.degree - 1 <= MAX_ARRAY_DEGREE / 2)
+            {
+                this.array = new int[MAX_ARRAY_DEGREE];
+                IntBitmap.Cursor cursor = new IntBitmap.Cursor().of(this.bitmap);
+                for (int i = 0; cursor.hasNext(); i++)
+                {
+                    this.array[i] = cursor.next();
+                }
+                this.bitmap = null;
+            }
+        }
+        else
+        {
+            for (int i = 0; i < this.degree && !removed; i++)
+            {
+                if (this.array[i] == neighbor)
+                {
+                    this.array[i] = this.array[this.degree - 1];
+                    removed = true;
+                }
+            }
+        }
+
+        if (removed)
+        {
+            this.degree--;
+        }
+
+        return removed;
+    }
+
+    /**
+     * Gets the number of neighbors.
+     *
+     * @return the number of neighbors
+     */
+    public int getDegree()
+    {
+        return this.degree;
+    }
+
+    /**
+     * Gets the array holding the neighbors of a low degree node. Only the
+     * first {@link #getDegree()} entries are neighbors; the array must not be
+     * modified.
+     *
+     * @return the array, or null if the neighbors are in a bitmap
+     */
+    public int[] getNeighborArray()
+    {
+        return this.bitmap == null ? this.array : null;
+    }
+
+    /**
+     * Gets the bitmap holding the neighbors of a high degree node. The bitmap
+     * must not be modified.
+     *
+     * @return the bitmap, or null if the neighbors are in an array
+     */
+    public IntBitmap getNeighborBitmap()
+    {
+        return this.bitmap;
+    }
+
     @Override
     public String toString()
     {
-        return "Node [city=" + this.city + "]";
+        return "Node [id=" + this.id + ", city=" + this.city + "]";
     }
 }
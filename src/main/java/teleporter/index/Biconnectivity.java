@@ -0,0 +1,419 @@
+/**
+ * Biconnectivity.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import teleporter.storage.GraphStorage;
+import teleporter.storage.NeighborCursor;
+
+/**
+ * Finds the routes and cities whose loss would disconnect a network: the
+ * bridges, routes on no loop, and the articulation cities, cities whose
+ * removal leaves their component in several pieces. Each comes with the
+ * number of cities it would split off: those cut off from the largest piece
+ * left behind. The cities on a loop, those with at least one route that is
+ * not a bridge, follow from the bridges.
+ * <p>
+ * Everything is found by a single iterative depth first search in time
+ * linear in the number of cities and routes. Each city's neighbors are
+ * copied once, when the search first reaches it, onto a shared stack of
+ * primitive arrays that shrinks again as the search backs out, so the search
+ * neither recurses nor keeps a cursor per level. Apart from the discovery
+ * order, its state is kept per level of the search path rather than per
+ * city.
+ * <p>
+ * The result describes the graph as it was when it was built; the storage
+ * must not change while building.
+ */
+public final class Biconnectivity
+{
+    private final BitSet onLoop;
+    private final int loopCityCount;
+    private final int[] cuts;
+    private final int[] cutSplits;
+    private final int[] bridges;
+    private final int[] bridgeSplits;
+
+    private Biconnectivity(BitSet onLoop, int[] cuts, int[] cutSplits, int[] bridges, int[] bridgeSplits)
+    {
+        this.onLoop = onLoop;
+        this.loopCityCount = onLoop.cardinality();
+        this.cuts = cuts;
+        this.cutSplits = cutSplits;
+        this.bridges = bridges;
+        this.bridgeSplits = bridgeSplits;
+    }
+
+    /**
+     * Finds the bridges and articulation cities of a graph.
+     *
+     * @param storage the graph storage
+     * @return the bridges, articulation cities and cities on loops
+     */
+    public static Biconnectivity build(GraphStorage storage)
+    {
+        Objects.requireNonNull(storage, "storage cannot be null");
+
+        int size = storage.size();
+        NeighborCursor cursor = storage.cursor();
+
+        // order of discovery, from one
+        int[] order = new int[size];
+        BitSet onLoop = new BitSet(size);
+        int time = 0;
+
+        // the search path; each level has the range of its unread neighbors,
+        // the earliest city its subtree reaches by at most one route that is
+        // not a tree route, its subtree size, and the total and largest size
+        // of the child subtrees that its removal would cut off
+        int[] path = new int[16];
+        int[] next = new int[16];
+        int[] end = new int[16];
+        int[] low = new int[16];
+        int[] subtree = new int[16];
+        int[] cutTotal = new int[16];
+        int[] cutLargest = new int[16];
+        int[] neighbors = new int[16];
+
+        // articulation cities with their cut totals and largest pieces, and
+        // bridges as pairs of cities with the size of the lower side, until
+        // their component is finished and the splits are known
+        int[] cuts = new int[16];
+        int[] cutSplits = new int[16];
+        int[] cutPieces = new int[16];
+        int cutCount = 0;
+        int[] bridges = new int[16];
+        int[] bridgeSplits = new int[8];
+        int bridgeCount = 0;
+
+        for (int root = 0; root < size; root++)
+        {
+            if (order[root] != 0)
+            {
+                continue;
+            }
+
+            int firstCut = cutCount;
+            int firstBridge = bridgeCount;
+            int rootChildren = 0;
+
+            order[root] = ++time;
+            path[0] = root;
+            low[0] = time;
+            subtree[0] = 1;
+            cutTotal[0] = 0;
+            cutLargest[0] = 0;
+            next[0] = 0;
+            int top = 0;
+            for (cursor.of(root); cursor.hasNext(); top++)
+            {
+                if (top == neighbors.length)
+                {
+                    neighbors = Arrays.copyOf(neighbors, top * 2);
+                }
+                neighbors[top] = cursor.next();
+            }
+            end[0] = top;
+            int depth = 1;
+
+            while (depth > 0)
+            {
+                int level = depth - 1;
+                int city = path[level];
+
+                if (next[level] < end[level])
+                {
+                    int neighbor = neighbors[next[level]++];
+
+                    if (neighbor == city)
+                    {
+                        onLoop.set(city);
+                    }
+                    else if (order[neighbor] == 0)
+                    {
+                        order[neighbor] = ++time;
+
+                        if (depth == path.length)
+                        {
+                            path = Arrays.copyOf(path, depth * 2);
+                            next = Arrays.copyOf(next, depth * 2);
+                            end = Arrays.copyOf(end, depth * 2);
+                            low = Arrays.copyOf(low, depth * 2);
+                            subtree = Arrays.copyOf(subtree, depth * 2);
+                            cutTotal = Arrays.copyOf(cutTotal, depth * 2);
+                            cutLargest = Arrays.copyOf(cutLargest, depth * 2);
+                        }
+
+                        if (level == 0)
+                        {
+                            rootChildren++;
+                        }
+
+                        top = end[level];
+                        path[depth] = neighbor;
+                        low[depth] = time;
+                        subtree[depth] = 1;
+                        cutTotal[depth] = 0;
+                        cutLargest[depth] = 0;
+                        next[depth] = top;
+                        for (cursor.of(neighbor); cursor.hasNext(); top++)
+                        {
+                            if (top == neighbors.length)
+                            {
+                                neighbors = Arrays.copyOf(neighbors, top * 2);
+                            }
+                            neighbors[top] = cursor.next();
+                        }
+                        end[depth++] = top;
+                    }
+                    else if (level == 0 || neighbor != path[level - 1])
+                    {
+                        // a route back up the path; the tree routes it spans
+                        // are then not bridges, which marks both its cities
+                        low[level] = Math.min(low[level], order[neighbor]);
+                    }
+                }
+                else
+                {
+                    if (level == 0 ? rootChildren > 1 : cutTotal[level] > 0)
+                    {
+                        if (cutCount == cuts.length)
+                        {
+                            cuts = Arrays.copyOf(cuts, cutCount * 2);
+                            cutSplits = Arrays.copyOf(cutSplits, cutCount * 2);
+                            cutPieces = Arrays.copyOf(cutPieces, cutCount * 2);
+                        }
+                        cuts[cutCount] = city;
+                        cutSplits[cutCount] = cutTotal[level];
+                        cutPieces[cutCount++] = cutLargest[level];
+                    }
+
+                    depth--;
+                    if (depth > 0)
+                    {
+                        int parent = depth - 1;
+                        low[parent] = Math.min(low[parent], low[level]);
+                        subtree[parent] += subtree[level];
+
+                        if (low[level] > order[path[parent]])
+                        {
+                            if (2 * bridgeCount == bridges.length)
+                            {
+                                bridges = Arrays.copyOf(bridges, bridgeCount * 4);
+                                bridgeSplits = Arrays.copyOf(bridgeSplits, bridgeCount * 2);
+                            }
+                            bridges[2 * bridgeCount] = path[parent];
+                            bridges[2 * bridgeCount + 1] = city;
+                            bridgeSplits[bridgeCount++] = subtree[level];
+                        }
+                        else
+                        {
+                            onLoop.set(path[parent]);
+                            onLoop.set(city);
+                        }
+
+                        if (low[level] >= order[path[parent]])
+                        {
+                            cutTotal[parent] += subtree[level];
+                            cutLargest[parent] = Math.max(cutLargest[parent], subtree[level]);
+                        }
+                    }
+                }
+            }
+
+            // the component is finished, so the piece left behind by each
+            // cut, the one holding the root, is now known
+            int component = subtree[0];
+            for (int i = firstCut; i < cutCount; i++)
+            {
+                int rest = component - 1 - cutSplits[i];
+                cutSplits[i] = component - 1 - Math.max(rest, cutPieces[i]);
+            }
+            for (int i = firstBridge; i < bridgeCount; i++)
+            {
+                bridgeSplits[i] = Math.min(bridgeSplits[i], component - bridgeSplits[i]);
+            }
+        }
+
+        int[] cutOrder = sortBySplit(cutSplits, cutCount);
+        int[] sortedCuts = new int[cutCount];
+        int[] sortedCutSplits = new int[cutCount];
+        for (int i = 0; i < cutCount; i++)
+        {
+            sortedCuts[i] = cuts[cutOrder[i]];
+            sortedCutSplits[i] = cutSplits[cutOrder[i]];
+        }
+
+        int[] bridgeOrder = sortBySplit(bridgeSplits, bridgeCount);
+        int[] sortedBridges = new int[2 * bridgeCount];
+        int[] sortedBridgeSplits = new int[bridgeCount];
+        for (int i = 0; i < bridgeCount; i++)
+        {
+            sortedBridges[2 * i] = bridges[2 * bridgeOrder[i]];
+            sortedBridges[2 * i + 1] = bridges[2 * bridgeOrder[i] + 1];
+            sortedBridgeSplits[i] = bridgeSplits[bridgeOrder[i]];
+        }
+
+        return new Biconnectivity(onLoop, sortedCuts, sortedCutSplits, sortedBridges, sortedBridgeSplits);
+    }
+
+    /**
+     * Determines if a city is on a loop.
+     *
+     * @param city the city identifier
+     * @return if the city has a route that is not a bridge
+     */
+    public boolean isOnLoop(int city)
+    {
+        return this.onLoop.get(city);
+    }
+
+    /**
+     * Visits the cities on loops in identifier order.
+     *
+     * @param visitor receives each city identifier
+     */
+    public void forEachLoopCity(IntConsumer visitor)
+    {
+        Objects.requireNonNull(visitor, "visitor cannot be null");
+
+        for (int city = this.onLoop.nextSetBit(0); city >= 0; city = this.onLoop.nextSetBit(city + 1))
+        {
+            visitor.accept(city);
+        }
+    }
+
+    /**
+     * Gets the number of cities on loops.
+     *
+     * @return the number of cities
+     */
+    public int getLoopCityCount()
+    {
+        return this.loopCityCount;
+    }
+
+    /**
+     * Gets the number of articulation cities.
+     *
+     * @return the number of cities whose removal disconnects their component
+     */
+    public int getArticulationCount()
+    {
+        return this.cuts.length;
+    }
+
+    /**
+     * Gets an articulation city. Articulation cities are ordered by
+     * decreasing split size.
+     *
+     * @param index the index, from zero
+     * @return the city identifier
+     */
+    public int getArticulation(int index)
+    {
+        return this.cuts[index];
+    }
+
+    /**
+     * Gets the number of cities an articulation city would split off.
+     *
+     * @param index the index, from zero
+     * @return the number of cities cut off from the largest piece left
+     *         behind, not counting the articulation city itself
+     */
+    public int getArticulationSplit(int index)
+    {
+        return this.cutSplits[index];
+    }
+
+    /**
+     * Gets the number of bridges.
+     *
+     * @return the number of routes on no loop
+     */
+    public int getBridgeCount()
+    {
+        return this.bridgeSplits.length;
+    }
+
+    /**
+     * Gets the city on one side of a bridge. Bridges are ordered by
+     * decreasing split size.
+     *
+     * @param index the index, from zero
+     * @return the city identifier
+     */
+    public int getBridgeFrom(int index)
+    {
+        return this.bridges[2 * index];
+    }
+
+    /**
+     * Gets the city on the other side of a bridge.
+     *
+     * @param index the index, from zero
+     * @return the city identifier
+     */
+    public int getBridgeTo(int index)
+    {
+        return this.bridges[2 * index + 1];
+    }
+
+    /**
+     * Gets the number of cities a bridge would split off.
+     *
+     * @param index the index, from zero
+     * @return the number of cities on the smaller side of the bridge
+     */
+    public int getBridgeSplit(int index)
+    {
+        return this.bridgeSplits[index];
+    }
+
+    /**
+     * Orders entries by decreasing split, then by position.
+     */
+    private static int[] sortBySplit(int[] splits, int count)
+    {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            keys[i] = ((long) (Integer.MAX_VALUE - splits[i]) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            order[i] = (int) keys[i];
+        }
+
+        return order;
+    }
+}
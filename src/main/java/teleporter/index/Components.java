@@ -0,0 +1,368 @@
+/**
+ * Components.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.index;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import teleporter.storage.GraphStorage;
+import teleporter.storage.NeighborCursor;
+
+/**
+ * Labels every city with the connected component it belongs to.
+ * <p>
+ * Labels are computed by a parallel, lock free union-find: ranges of cities
+ * are processed by fork/join tasks, each uniting every city with its higher
+ * numbered neighbors. Roots are always linked from the higher identifier to
+ * the lower one, so concurrent unions cannot form a cycle. Component
+ * identifiers are then assigned densely in order of their lowest city.
+ * <p>
+ * The labels describe the graph as it was when they were built; the storage
+ * must not change while building.
+ */
+public final class Components
+{
+    private static final int SPLIT_THRESHOLD = 4096;
+
+    private final int[] labels;
+    private final int[] sizes;
+
+    private Components(int[] labels, int[] sizes)
+    {
+        this.labels = labels;
+        this.sizes = sizes;
+    }
+
+    /**
+     * Labels the components of a graph using the common fork/join pool.
+     *
+     * @param storage the graph storage
+     * @return the components
+     */
+    public static Components build(GraphStorage storage)
+    {
+        return build(storage, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Labels the components of a graph.
+     *
+     * @param storage the graph storage
+     * @param pool    the pool running the labeling tasks
+     * @return the components
+     */
+    public static Components build(GraphStorage storage, ForkJoinPool pool)
+    {
+        Objects.requireNonNull(storage, "storage cannot be null");
+        Objects.requireNonNull(pool, "pool cannot be null");
+
+        int size = storage.size();
+
+        AtomicIntegerArray parents = new AtomicIntegerArray(size);
+        for (int id = 0; id < size; id++)
+        {
+            parents.set(id, id);
+        }
+
+        pool.invoke(new UnionTask(storage, parents, 0, size));
+
+        int[] labels = new int[size];
+        int count = 0;
+        for (int id = 0; id < size; id++)
+        {
+            int root = find(parents, id);
+            if (root == id)
+            {
+                labels[id] = count++;
+            }
+            else
+            {
+                // roots have lower identifiers than their members, so the
+                // root's label is already assigned
+                labels[id] = labels[root];
+            }
+        }
+
+        int[] sizes = new int[count];
+        for (int id = 0; id < size; id++)
+        {
+            sizes[labels[id]]++;
+        }
+
+        return new Components(labels, sizes);
+    }
+
+    /**
+     * Labels the components of a graph that grew from the one labeled by
+     * earlier components by adding cities and routes only. The earlier
+     * components are united along the new routes, so the work is linear in
+     * the number of cities and new routes rather than in the whole network.
+     *
+     * @param base      the earlier components
+     * @param cityCount the number of cities now, at least as many as before
+     * @param routes    the new routes as pairs of city identifiers
+     * @param count     the number of new routes
+     * @return the components
+     */
+    public static Components extend(Components base, int cityCount, int[] routes, int count)
+    {
+        Objects.requireNonNull(base, "base cannot be null");
+        Objects.requireNonNull(routes, "routes cannot be null");
+
+        int known = base.labels.length;
+        if (cityCount < known)
+        {
+            throw new IllegalArgumentException("cityCount cannot be less than the labeled cities");
+        }
+
+        // earlier components keep their labels and each new city starts out
+        // as a component of its own, labeled after them
+        int[] parents = new int[base.sizes.length + cityCount - known];
+        for (int i = 0; i < parents.length; i++)
+        {
+            parents[i] = i;
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            int rootA = find(parents, extendedLabel(base, routes[2 * i]));
+            int rootB = find(parents, extendedLabel(base, routes[2 * i + 1]));
+            parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+
+        int[] relabels = new int[parents.length];
+        Arrays.fill(relabels, -1);
+        int[] labels = new int[cityCount];
+        int components = 0;
+        for (int id = 0; id < cityCount; id++)
+        {
+            int root = find(parents, extendedLabel(base, id));
+            if (relabels[root] == -1)
+            {
+                relabels[root] = components++;
+            }
+            labels[id] = relabels[root];
+        }
+
+        int[] sizes = new int[components];
+        for (int id = 0; id < cityCount; id++)
+        {
+            sizes[labels[id]]++;
+        }
+
+        return new Components(labels, sizes);
+    }
+
+    /**
+     * Gets the label of a city in a labeling extended to cities added since
+     * it was built: the component of a labeled city, and for each later city
+     * a label of its own following the components.
+     *
+     * @param base the components
+     * @param city the city identifier
+     * @return the extended label
+     */
+    static int extendedLabel(Components base, int city)
+    {
+        return city < base.labels.length ? base.labels[city] : base.sizes.length + city - base.labels.length;
+    }
+
+    /**
+     * Gets the number of labeled cities.
+     *
+     * @return the number of cities
+     */
+    public int getCityCount()
+    {
+        return this.labels.length;
+    }
+
+    /**
+     * Gets the number of components.
+     *
+     * @return the number of components
+     */
+    public int getCount()
+    {
+        return this.sizes.length;
+    }
+
+    /**
+     * Gets the component of a city.
+     *
+     * @param city the city identifier
+     * @return the component identifier
+     */
+    public int getComponent(int city)
+    {
+        return this.labels[city];
+    }
+
+    /**
+     * Gets the number of cities in a component.
+     *
+     * @param component the component identifier
+     * @return the number of cities
+     */
+    public int getSize(int component)
+    {
+        return this.sizes[component];
+    }
+
+    /**
+     * Gets the number of cities in the largest component.
+     *
+     * @return the number of cities, or zero if there are no cities
+     */
+    public int getLargestSize()
+    {
+        int largest = 0;
+        for (int size : this.sizes)
+        {
+            largest = Math.max(largest, size);
+        }
+
+        return largest;
+    }
+
+    /**
+     * Gets a histogram of component sizes. Entry <i>k</i> counts the components
+     * with at least 2<sup>k</sup> and fewer than 2<sup>k+1</sup> cities.
+     *
+     * @return the histogram
+     */
+    public long[] getSizeHistogram()
+    {
+        long[] histogram = new long[32 - Integer.numberOfLeadingZeros(Math.max(1, this.getLargestSize()))];
+        for (int size : this.sizes)
+        {
+            histogram[31 - Integer.numberOfLeadingZeros(size)]++;
+        }
+
+        return histogram;
+    }
+
+    private static int find(AtomicIntegerArray parents, int id)
+    {
+        int node = id;
+        int parent = parents.get(node);
+
+        while (parent != node)
+        {
+            int grandparent = parents.get(parent);
+            if (grandparent != parent)
+            {
+                parents.compareAndSet(node, parent, grandparent);
+            }
+
+            node = parent;
+            parent = parents.get(node);
+        }
+
+        return node;
+    }
+
+    private static int find(int[] parents, int id)
+    {
+        int node = id;
+        while (parents[node] != node)
+        {
+            parents[node] = parents[parents[node]];
+            node = parents[node];
+        }
+
+        return node;
+    }
+
+    private static void union(AtomicIntegerArray parents, int a, int b)
+    {
+        while (true)
+        {
+            int rootA = find(parents, a);
+            int rootB = find(parents, b);
+
+            if (rootA == rootB)
+            {
+                return;
+            }
+
+            int high = Math.max(rootA, rootB);
+            int low = Math.min(rootA, rootB);
+
+            if (parents.compareAndSet(high, high, low))
+            {
+                return;
+            }
+        }
+    }
+
+    private static final class UnionTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient GraphStorage storage;
+        private final transient AtomicIntegerArray parents;
+        private final int from;
+        private final int to;
+
+        UnionTask(GraphStorage storage, AtomicIntegerArray parents, int from, int to)
+        {
+            this.storage = storage;
+            this.parents = parents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from > SPLIT_THRESHOLD)
+            {
+                int middle = (this.from + this.to) >>> 1;
+
+                invokeAll(new UnionTask(this.storage, this.parents, this.from, middle),
+                        new UnionTask(this.storage, this.parents, middle, this.to));
+            }
+            else
+            {
+                NeighborCursor cursor = this.storage.cursor();
+                for (int id = this.from; id < this.to; id++)
+                {
+                    cursor.of(id);
+                    while (cursor.hasNext())
+                    {
+                        int neighbor = cursor.next();
+                        if (neighbor > id)
+                        {
+                            union(this.parents, id, neighbor);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/**
+ * DistanceLabels.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+import teleporter.storage.GraphStorage;
+import teleporter.storage.NeighborCursor;
+
+/**
+ * Answers exact jump counts between cities from precomputed distance labels.
+ * <p>
+ * Labels are built by pruned landmark labeling: cities are visited in order
+ * of decreasing degree, and a breadth first search from each city records
+ * its distance in the label of every city it reaches, except where the labels
+ * built so far already give that distance. Every pair of connected cities
+ * then shares a hub on one of their shortest paths, and a distance query is a
+ * merge of two short labels sorted by hub rank. On networks with a few highly
+ * connected hubs most searches are pruned early and labels stay small.
+ * <p>
+ * All labels are stored in three flat arrays: the offset of each city's
+ * label, and the rank and distance of every entry. The labels describe the
+ * graph as it was when they were built and can be saved to a file, which is
+ * only loaded back for a graph with the same cities and routes.
+ */
+public final class DistanceLabels
+{
+    private static final int MAGIC = 0x54504c31;
+    private static final int MAX_DISTANCE = 0xfffe;
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final int[] offsets;
+    private final int[] hubs;
+    private final short[] distances;
+    private final long fingerprint;
+
+    private DistanceLabels(int[] offsets, int[] hubs, short[] distances, long fingerprint)
+    {
+        this.offsets = offsets;
+        this.hubs = hubs;
+        this.distances = distances;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Builds the distance labels of a graph.
+     *
+     * @param storage the graph storage
+     * @return the labels
+     * @throws IllegalStateException if two cities are more than 65534 jumps
+     *                               apart or the labels outgrow an array
+     */
+    public static DistanceLabels build(GraphStorage storage)
+    {
+        Objects.requireNonNull(storage, "storage cannot be null");
+
+        int size = storage.size();
+        int[] order = orderByDegree(storage);
+
+        int[] ranks = new int[size];
+        for (int rank = 0; rank < size; rank++)
+        {
+            ranks[order[rank]] = rank;
+        }
+
+        // labels grow per city while building, entries packed as hub rank
+        // and distance so a label is a single array
+        long[][] labels = new long[size][];
+        int[] lengths = new int[size];
+
+        int[] rootDistances = new int[size];
+        Arrays.fill(rootDistances, INFINITY);
+        int[] distances = new int[size];
+        Arrays.fill(distances, INFINITY);
+        int[] queue = new int[size];
+
+        NeighborCursor cursor = storage.cursor();
+        long entries = 0;
+
+        for (int rank = 0; rank < size; rank++)
+        {
+            int root = order[rank];
+
+            for (int i = 0; i < lengths[root]; i++)
+            {
+                long entry = labels[root][i];
+                rootDistances[hub(entry)] = distance(entry);
+            }
+
+            distances[root] = 0;
+            queue[0] = root;
+            int head = 0;
+            int tail = 1;
+
+            while (head < tail)
+            {
+                int city = queue[head++];
+                int distance = distances[city];
+
+                if (isCovered(labels[city], lengths[city], rootDistances, distance))
+                {
+                    continue;
+                }
+
+                if (distance > MAX_DISTANCE)
+                {
+                    throw new IllegalStateException("cities more than " + MAX_DISTANCE + " jumps apart");
+                }
+
+                append(labels, lengths, city, (long) rank << 32 | distance);
+                entries++;
+
+                cursor.of(city);
+                while (cursor.hasNext())
+                {
+                    int neighbor = cursor.next();
+
+                    // higher ranked cities already cover their own paths
+                    if (distances[neighbor] == INFINITY && ranks[neighbor] > rank)
+                    {
+                        distances[neighbor] = distance + 1;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+
+            for (int i = 0; i < tail; i++)
+            {
+                distances[queue[i]] = INFINITY;
+            }
+
+            for (int i = 0; i < lengths[root]; i++)
+            {
+                rootDistances[hub(labels[root][i])] = INFINITY;
+            }
+        }
+
+        if (entries > Integer.MAX_VALUE - 8)
+        {
+            throw new IllegalStateException("too many label entries: " + entries);
+        }
+
+        int[] offsets = new int[size + 1];
+        int[] hubs = new int[(int) entries];
+        short[] packed = new short[(int) entries];
+
+        int offset = 0;
+        for (int city = 0; city < size; city++)
+        {
+            offsets[city] = offset;
+            for (int i = 0; i < lengths[city]; i++)
+            {
+                hubs[offset] = hub(labels[city][i]);
+                packed[offset] = (short) distance(labels[city][i]);
+                offset++;
+            }
+
+            labels[city] = null;
+        }
+        offsets[size] = offset;
+
+        return new DistanceLabels(offsets, hubs, packed, fingerprint(storage));
+    }
+
+    /**
+     * Reads labels saved by {@link #write(Path)}.
+     *
+     * @param path    the file to read
+     * @param storage the graph the labels were built for
+     * @return the labels
+     * @throws IOException if unable to read the file, or if it does not hold
+     *                     labels for this graph
+     */
+    public static DistanceLabels read(Path path, GraphStorage storage) throws IOException
+    {
+        Objects.requireNonNull(path, "path cannot be null");
+        Objects.requireNonNull(storage, "storage cannot be null");
+
+        try (InputStream is = Files.newInputStream(path);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(is)))
+        {
+            if (in.readInt() != MAGIC)
+            {
+                throw new IOException("not a distance label file: " + path);
+            }
+
+            int size = in.readInt();
+            long fingerprint = in.readLong();
+            if (size != storage.size() || fingerprint != fingerprint(storage))
+            {
+                throw new IOException("distance labels were built for a different network: " + path);
+            }
+
+            int[] offsets = new int[size + 1];
+            for (int i = 0; i <= size; i++)
+            {
+                offsets[i] = in.readInt();
+            }
+
+            int entries = offsets[size];
+            int[] hubs = new int[entries];
+            for (int i = 0; i < entries; i++)
+            {
+                hubs[i] = in.readInt();
+            }
+
+            short[] distances = new short[entries];
+            for (int i = 0; i < entries; i++)
+            {
+                distances[i] = in.readShort();
+            }
+
+            return new DistanceLabels(offsets, hubs, distances, fingerprint);
+        }
+    }
+
+    /**
+     * Saves the labels to a file.
+     *
+     * @param path the file to write
+     * @throws IOException if unable to write the file
+     */
+    public void write(Path path) throws IOException
+    {
+        Objects.requireNonNull(path, "path cannot be null");
+
+        try (OutputStream os = Files.newOutputStream(path);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(this.offsets.length - 1);
+            out.writeLong(this.fingerprint);
+
+            for (int offset : this.offsets)
+            {
+                out.writeInt(offset);
+            }
+
+            for (int hub : this.hubs)
+            {
+                out.writeInt(hub);
+            }
+
+            for (short distance : this.distances)
+            {
+                out.writeShort(distance);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of jumps on a shortest path between two cities.
+     *
+     * @param from the first city
+     * @param to   the second city
+     * @return the number of jumps, or -1 if the cities are not connected
+     */
+    public int getDistance(int from, int to)
+    {
+        if (from == to)
+        {
+            return 0;
+        }
+
+        int i = this.offsets[from];
+        int iEnd = this.offsets[from + 1];
+        int j = this.offsets[to];
+        int jEnd = this.offsets[to + 1];
+
+        int best = INFINITY;
+        while (i < iEnd && j < jEnd)
+        {
+            int fromHub = this.hubs[i];
+            int toHub = this.hubs[j];
+
+            if (fromHub == toHub)
+            {
+                best = Math.min(best, (this.distances[i] & 0xffff) + (this.distances[j] & 0xffff));
+                i++;
+                j++;
+            }
+            else if (fromHub < toHub)
+            {
+                i++;
+            }
+            else
+            {
+                j++;
+            }
+        }
+
+        return best == INFINITY ? -1 : best;
+    }
+
+    /**
+     * Gets the number of labeled cities.
+     *
+     * @return the number of cities
+     */
+    public int getCityCount()
+    {
+        return this.offsets.length - 1;
+    }
+
+    /**
+     * Gets the total number of label entries.
+     *
+     * @return the number of entries
+     */
+    public long getEntryCount()
+    {
+        return this.hubs.length;
+    }
+
+    /**
+     * Gets the memory held by the label arrays.
+     *
+     * @return the size in bytes
+     */
+    public long getSizeInBytes()
+    {
+        return 4L * this.offsets.length + 4L * this.hubs.length + 2L * this.distances.length;
+    }
+
+    private static int[] orderByDegree(GraphStorage storage)
+    {
+        int size = storage.size();
+
+        int maxDegree = 0;
+        for (int city = 0; city < size; city++)
+        {
+            maxDegree = Math.max(maxDegree, storage.degree(city));
+        }
+
+        // counting sort, highest degree first and ties in identifier order
+        int[] starts = new int[maxDegree + 2];
+        for (int city = 0; city < size; city++)
+        {
+            starts[maxDegree - storage.degree(city) + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++)
+        {
+            starts[i] += starts[i - 1];
+        }
+
+        int[] order = new int[size];
+        for (int city = 0; city < size; city++)
+        {
+            order[starts[maxDegree - storage.degree(city)]++] = city;
+        }
+
+        return order;
+    }
+
+    private static boolean isCovered(long[] label, int length, int[] rootDistances, int distance)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            int rootDistance = rootDistances[hub(label[i])];
+            if (rootDistance != INFINITY && rootDistance + distance(label[i]) <= distance)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void append(long[][] labels, int[] lengths, int city, long entry)
+    {
+        long[] label = labels[city];
+        if (label == null)
+        {
+            label = new long[4];
+            labels[city] = label;
+        }
+        else if (lengths[city] == label.length)
+        {
+            label = Arrays.copyOf(label, label.length * 2);
+            labels[city] = label;
+        }
+
+        label[lengths[city]++] = entry;
+    }
+
+    private static int hub(long entry)
+    {
+        return (int) (entry >>> 32);
+    }
+
+    private static int distance(long entry)
+    {
+        return (int) entry;
+    }
+
+    /**
+     * Hashes the cities and routes of a graph so saved labels are only loaded
+     * for the network they describe. City names are hashed in identifier
+     * order; routes are combined by sum so their order does not matter.
+     */
+    private static long fingerprint(GraphStorage storage)
+    {
+        NeighborCursor cursor = storage.cursor();
+
+        long cities = storage.size();
+        long routes = 0;
+        for (int city = 0; city < storage.size(); city++)
+        {
+            cities = mix(cities * 31 + storage.city(city).name.hashCode());
+
+            cursor.of(city);
+            while (cursor.hasNext())
+            {
+                int neighbor = cursor.next();
+                if (city < neighbor)
+                {
+                    routes += mix((long) city << 32 | neighbor);
+                }
+            }
+        }
+
+        return mix(cities ^ routes);
+    }
+
+    private static long mix(long value)
+    {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+}
@@ -0,0 +1,405 @@
+/**
+ * DynamicConnectivity.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.index;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import teleporter.storage.GraphStorage;
+import teleporter.storage.NeighborCursor;
+import teleporter.util.LongHashSet;
+
+/**
+ * Maintains connected component labels while routes are added and removed.
+ * <p>
+ * A spanning forest of the network is kept as a set of tree routes. Adding a
+ * route between two components makes it a tree route and relabels the smaller
+ * component. Removing a route that is not a tree route cannot disconnect
+ * anything. Removing a tree route splits its tree in two; both halves are
+ * explored over tree routes in lockstep until the smaller one is exhausted,
+ * and the routes leaving that half are scanned for a replacement tree route.
+ * If there is none, the smaller half becomes a new component. Work is
+ * therefore proportional to the smaller side of every merge and split rather
+ * than to the network.
+ * <p>
+ * The storage must be updated before each notification.
+ */
+public class DynamicConnectivity
+{
+    private final GraphStorage storage;
+    private final LongHashSet treeRoutes = new LongHashSet();
+    private final NeighborCursor cursor;
+
+    private final Frontier fromSide = new Frontier();
+    private final Frontier toSide = new Frontier();
+
+    private int[] labels;
+    private int[] marks;
+    private int known;
+    private int[] sizes = new int[16];
+    private int[] freeLabels = new int[16];
+    private int freeCount;
+    private int labelCount;
+    private int mark;
+    private int[] queue = new int[16];
+
+    /**
+     * Builds labels and a spanning forest for the current network.
+     *
+     * @param storage the graph storage
+     */
+    public DynamicConnectivity(GraphStorage storage)
+    {
+        Objects.requireNonNull(storage, "storage cannot be null");
+
+        this.storage = storage;
+        this.cursor = storage.cursor();
+
+        int size = storage.size();
+        this.labels = new int[Math.max(16, size)];
+        this.marks = new int[this.labels.length];
+        this.known = size;
+        Arrays.fill(this.labels, 0, size, -1);
+
+        for (int id = 0; id < size; id++)
+        {
+            if (this.labels[id] == -1)
+            {
+                int label = this.newLabel();
+                this.labels[id] = label;
+
+                int[] q = this.queue;
+                q[0] = id;
+                int head = 0;
+                int tail = 1;
+
+                while (head < tail)
+                {
+                    int city = q[head++];
+
+                    this.cursor.of(city);
+                    while (this.cursor.hasNext())
+                    {
+                        int neighbor = this.cursor.next();
+                        if (this.labels[neighbor] == -1)
+                        {
+                            this.labels[neighbor] = label;
+                            this.treeRoutes.add(key(city, neighbor));
+
+                            if (tail == q.length)
+                            {
+                                q = Arrays.copyOf(q, tail * 2);
+                            }
+                            q[tail++] = neighbor;
+                        }
+                    }
+                }
+
+                this.queue = q;
+                this.sizes[label] = tail;
+            }
+        }
+    }
+
+    /**
+     * Determines if two cities are connected.
+     *
+     * @param from the identifier of the first city
+     * @param to   the identifier of the second city
+     * @return if the cities are in the same component
+     */
+    public boolean isConnected(int from, int to)
+    {
+        this.ensureCapacity(this.storage.size());
+
+        return this.labels[from] == this.labels[to];
+    }
+
+    /**
+     * Gets the number of cities in the component of a city.
+     *
+     * @param city the city identifier
+     * @return the number of cities
+     */
+    public int getComponentSize(int city)
+    {
+        this.ensureCapacity(this.storage.size());
+
+        return this.sizes[this.labels[city]];
+    }
+
+    /**
+     * Determines if a city has a route outside of the spanning forest. Such a
+     * route closes a loop through the city, so a city with one is on a loop.
+     * A city without one may still be on a loop of tree routes closed
+     * elsewhere.
+     *
+     * @param city the city identifier
+     * @return if the city has a non-tree route
+     */
+    public boolean hasNonTreeRoute(int city)
+    {
+        NeighborCursor cursor = this.storage.cursor().of(city);
+        while (cursor.hasNext())
+        {
+            if (!this.treeRoutes.contains(key(city, cursor.next())))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Updates the labels after a route was added.
+     *
+     * @param from the identifier of the first city
+     * @param to   the identifier of the second city
+     */
+    public void routeAdded(int from, int to)
+    {
+        this.ensureCapacity(this.storage.size());
+
+        int fromLabel = this.labels[from];
+        int toLabel = this.labels[to];
+
+        if (fromLabel != toLabel)
+        {
+            this.treeRoutes.add(key(from, to));
+
+            if (this.sizes[fromLabel] < this.sizes[toLabel])
+            {
+                this.relabel(from, fromLabel, toLabel);
+            }
+            else
+            {
+                this.relabel(to, toLabel, fromLabel);
+            }
+        }
+    }
+
+    /**
+     * Updates the labels after a route was removed.
+     *
+     * @param from the identifier of the first city
+     * @param to   the identifier of the second city
+     */
+    public void routeRemoved(int from, int to)
+    {
+        this.ensureCapacity(this.storage.size());
+
+        if (!this.treeRoutes.remove(key(from, to)))
+        {
+            return;
+        }
+
+        this.fromSide.start(from, this.nextMark());
+        this.toSide.start(to, this.nextMark());
+
+        // explore both trees one city at a time until one is exhausted
+        while (!this.fromSide.isExhausted() && !this.toSide.isExhausted())
+        {
+            this.fromSide.expand();
+            this.toSide.expand();
+        }
+
+        Frontier smaller = this.fromSide.isExhausted() ? this.fromSide : this.toSide;
+
+        for (int i = 0; i < smaller.tail; i++)
+        {
+            int city = smaller.cities[i];
+
+            this.cursor.of(city);
+            while (this.cursor.hasNext())
+            {
+                int neighbor = this.cursor.next();
+                if (this.marks[neighbor] != smaller.mark)
+                {
+                    this.treeRoutes.add(key(city, neighbor));
+                    return;
+                }
+            }
+        }
+
+        int oldLabel = this.labels[from];
+        int newLabel = this.newLabel();
+        for (int i = 0; i < smaller.tail; i++)
+        {
+            this.labels[smaller.cities[i]] = newLabel;
+        }
+
+        this.sizes[newLabel] = smaller.tail;
+        this.sizes[oldLabel] -= smaller.tail;
+    }
+
+    private void relabel(int start, int oldLabel, int newLabel)
+    {
+        int[] q = this.queue;
+        q[0] = start;
+        this.labels[start] = newLabel;
+        int head = 0;
+        int tail = 1;
+
+        while (head < tail)
+        {
+            int city = q[head++];
+
+            this.cursor.of(city);
+            while (this.cursor.hasNext())
+            {
+                int neighbor = this.cursor.next();
+                if (this.labels[neighbor] == oldLabel)
+                {
+                    this.labels[neighbor] = newLabel;
+
+                    if (tail == q.length)
+                    {
+                        q = Arrays.copyOf(q, tail * 2);
+                    }
+                    q[tail++] = neighbor;
+                }
+            }
+        }
+
+        this.queue = q;
+        this.sizes[newLabel] += this.sizes[oldLabel];
+        this.freeLabel(oldLabel);
+    }
+
+    private int newLabel()
+    {
+        int label;
+        if (this.freeCount > 0)
+        {
+            label = this.freeLabels[--this.freeCount];
+        }
+        else
+        {
+            label = this.labelCount++;
+            if (label == this.sizes.length)
+            {
+                this.sizes = Arrays.copyOf(this.sizes, label * 2);
+            }
+        }
+
+        this.sizes[label] = 0;
+
+        return label;
+    }
+
+    private void freeLabel(int label)
+    {
+        if (this.freeCount == this.freeLabels.length)
+        {
+            this.freeLabels = Arrays.copyOf(this.freeLabels, this.freeCount * 2);
+        }
+
+        this.freeLabels[this.freeCount++] = label;
+    }
+
+    private int nextMark()
+    {
+        if (++this.mark == Integer.MAX_VALUE)
+        {
+            Arrays.fill(this.marks, 0);
+            this.mark = 1;
+        }
+
+        return this.mark;
+    }
+
+    private void ensureCapacity(int size)
+    {
+        if (size > this.labels.length)
+        {
+            int capacity = Math.max(size, this.labels.length * 2);
+            this.labels = Arrays.copyOf(this.labels, capacity);
+            this.marks = Arrays.copyOf(this.marks, capacity);
+        }
+
+        // cities added since the last update start as their own component
+        for (int id = this.known; id < size; id++)
+        {
+            int label = this.newLabel();
+            this.labels[id] = label;
+            this.sizes[label] = 1;
+        }
+
+        this.known = Math.max(this.known, size);
+    }
+
+    private static long key(int from, int to)
+    {
+        return ((long) Math.min(from, to) << 32) | Math.max(from, to);
+    }
+
+    /**
+     * Explores one side of a split tree over tree routes only.
+     */
+    private final class Frontier
+    {
+        private int[] cities = new int[16];
+        private int head;
+        private int tail;
+        private int mark;
+
+        void start(int city, int frontierMark)
+        {
+            this.cities[0] = city;
+            this.head = 0;
+            this.tail = 1;
+            this.mark = frontierMark;
+
+            DynamicConnectivity.this.marks[city] = frontierMark;
+        }
+
+        boolean isExhausted()
+        {
+            return this.head == this.tail;
+        }
+
+        void expand()
+        {
+            int city = this.cities[this.head++];
+
+            NeighborCursor neighbors = DynamicConnectivity.this.cursor.of(city);
+            while (neighbors.hasNext())
+            {
+                int neighbor = neighbors.next();
+                if (DynamicConnectivity.this.marks[neighbor] != this.mark
+                        && DynamicConnectivity.this.treeRoutes.contains(key(city, neighbor)))
+                {
+                    DynamicConnectivity.this.marks[neighbor] = this.mark;
+
+                    if (this.tail == this.cities.length)
+                    {
+                        this.cities = Arrays.copyOf(this.cities, this.tail * 2);
+                    }
+                    this.cities[this.tail++] = neighbor;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/**
+ * IncrementalBridges.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+import teleporter.storage.GraphStorage;
+import teleporter.storage.NeighborCursor;
+
+/**
+ * Keeps the connected components and the cities on loops current while
+ * routes are added, reporting each change as it happens.
+ * <p>
+ * A spanning forest is kept with two union-finds: one over the components,
+ * and one over the groups of cities that no single route removal can
+ * separate. A route joining two components hangs the smaller tree from the
+ * larger, turning the smaller tree around first, which moves each city
+ * O(log n) times overall. A route within a component closes a loop along the
+ * tree path between its cities, and every group on that path merges into
+ * one. A city is on a loop once its group holds more than one city, or it
+ * has a route to itself. Each route therefore costs near constant time plus
+ * the tree path it folds up, and a path is never folded twice.
+ * <p>
+ * Routes are added by one thread at a time with no queries running, as for
+ * the graph itself. Routes cannot be removed: the index must be rebuilt.
+ */
+public class IncrementalBridges
+{
+    /**
+     * Receives the changes caused by an added route.
+     */
+    public interface Listener
+    {
+        /**
+         * Called when two components merge.
+         *
+         * @param merged the former representative of the component merged
+         *               away
+         * @param into   the representative of the merged component
+         */
+        void componentsMerged(int merged, int into);
+
+        /**
+         * Called when a city joins a loop for the first time.
+         *
+         * @param city the city
+         */
+        void loopFormed(int city);
+    }
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final Listener listener;
+
+    // the parent of each group in the spanning forest, as any of its cities
+    private int[] tree;
+    private int[] groups;
+    private int[] components;
+    private int[] sizes;
+    private int[] visits;
+    private final BitSet onLoop = new BitSet();
+    private int visit;
+    private int cityCount;
+
+    private int[] pathA = new int[MIN_CAPACITY];
+    private int[] pathB = new int[MIN_CAPACITY];
+
+    /**
+     * Builds the index for the current network.
+     *
+     * @param storage  the network
+     * @param listener receives the changes caused by routes added later
+     */
+    public IncrementalBridges(GraphStorage storage, Listener listener)
+    {
+        Objects.requireNonNull(storage, "storage cannot be null");
+        Objects.requireNonNull(listener, "listener cannot be null");
+
+        int capacity = Math.max(MIN_CAPACITY, storage.size());
+        this.tree = new int[capacity];
+        this.groups = new int[capacity];
+        this.components = new int[capacity];
+        this.sizes = new int[capacity];
+        this.visits = new int[capacity];
+        this.grow(storage.size());
+
+        NeighborCursor cursor = storage.cursor();
+        for (int city = 0; city < storage.size(); city++)
+        {
+            cursor.of(city);
+            while (cursor.hasNext())
+            {
+                int neighbor = cursor.next();
+                if (neighbor >= city)
+                {
+                    this.add(city, neighbor, null);
+                }
+            }
+        }
+
+        this.listener = listener;
+    }
+
+    /**
+     * Records an added route and reports the changes it causes.
+     *
+     * @param from      the identifier of one city
+     * @param to        the identifier of the other city
+     * @param cityCount the number of cities in the network
+     */
+    public void routeAdded(int from, int to, int cityCount)
+    {
+        this.grow(cityCount);
+        this.add(from, to, this.listener);
+    }
+
+    /**
+     * Determines if two cities are connected.
+     *
+     * @param from the identifier of the first city
+     * @param to   the identifier of the second city
+     * @return if the cities are in the same component
+     */
+    public boolean isConnected(int from, int to)
+    {
+        return this.getComponent(from) == this.getComponent(to);
+    }
+
+    /**
+     * Gets the representative of the component of a city. It stays the same
+     * until the component merges into a larger one. A city without routes
+     * yet is its own representative.
+     *
+     * @param city the identifier of the city
+     * @return the identifier of the representative
+     */
+    public int getComponent(int city)
+    {
+        return city < this.cityCount ? this.findComponent(city) : city;
+    }
+
+    /**
+     * Determines if a city is on a loop.
+     *
+     * @param city the identifier of the city
+     * @return if the city is on a loop
+     */
+    public boolean isOnLoop(int city)
+    {
+        return city < this.cityCount && this.onLoop.get(this.findGroup(city));
+    }
+
+    private void grow(int count)
+    {
+        if (count > this.tree.length)
+        {
+            int capacity = Math.max(count, this.tree.length * 2);
+            this.tree = Arrays.copyOf(this.tree, capacity);
+            this.groups = Arrays.copyOf(this.groups, capacity);
+            this.components = Arrays.copyOf(this.components, capacity);
+            this.sizes = Arrays.copyOf(this.sizes, capacity);
+            this.visits = Arrays.copyOf(this.visits, capacity);
+        }
+
+        for (int city = this.cityCount; city < count; city++)
+        {
+            this.tree[city] = -1;
+            this.groups[city] = city;
+            this.components[city] = city;
+            this.sizes[city] = 1;
+        }
+        this.cityCount = Math.max(this.cityCount, count);
+    }
+
+    private void add(int from, int to, Listener changes)
+    {
+        int a = this.findGroup(from);
+        int b = this.findGroup(to);
+        if (a == b)
+        {
+            if (from == to && !this.onLoop.get(a))
+            {
+                this.onLoop.set(a);
+                if (changes != null)
+                {
+                    changes.loopFormed(from);
+                }
+            }
+
+            return;
+        }
+
+        int componentA = this.findComponent(a);
+        int componentB = this.findComponent(b);
+        if (componentA != componentB)
+        {
+            if (this.sizes[componentA] > this.sizes[componentB])
+            {
+                int swap = a;
+                a = b;
+                b = swap;
+                swap = componentA;
+                componentA = componentB;
+                componentB = swap;
+            }
+
+            this.evert(a);
+            this.tree[a] = b;
+            this.components[a] = componentB;
+            this.sizes[componentB] += this.sizes[a];
+
+            if (changes != null)
+            {
+                changes.componentsMerged(componentA, componentB);
+            }
+        }
+        else
+        {
+            this.fold(a, b, changes);
+        }
+    }
+
+    /**
+     * Makes a group the root of its tree by reversing the path to the old
+     * root.
+     */
+    private void evert(int group)
+    {
+        int root = group;
+        int child = -1;
+        int size = this.sizes[this.findComponent(group)];
+
+        int current = group;
+        while (current != -1)
+        {
+            int parent = this.tree[current] < 0 ? -1 : this.findGroup(this.tree[current]);
+            this.tree[current] = child;
+            this.components[current] = root;
+            child = current;
+            current = parent;
+        }
+
+        this.sizes[root] = size;
+    }
+
+    /**
+     * Merges the groups on the tree path between two groups of the same
+     * component into one.
+     */
+    private void fold(int a, int b, Listener changes)
+    {
+        if (++this.visit == Integer.MAX_VALUE)
+        {
+            Arrays.fill(this.visits, 0);
+            this.visit = 1;
+        }
+
+        int lengthA = 0;
+        int lengthB = 0;
+        int ancestor = -1;
+
+        while (ancestor < 0)
+        {
+            if (a >= 0)
+            {
+                a = this.findGroup(a);
+                this.pathA = push(this.pathA, lengthA++, a);
+                if (this.visits[a] == this.visit)
+                {
+                    ancestor = a;
+                    break;
+                }
+
+                this.visits[a] = this.visit;
+                a = this.tree[a];
+            }
+
+            if (b >= 0)
+            {
+                b = this.findGroup(b);
+                this.pathB = push(this.pathB, lengthB++, b);
+                if (this.visits[b] == this.visit)
+                {
+                    ancestor = b;
+                    break;
+                }
+
+                this.visits[b] = this.visit;
+                b = this.tree[b];
+            }
+        }
+
+        this.merge(this.pathA, lengthA, ancestor, changes);
+        this.merge(this.pathB, lengthB, ancestor, changes);
+        if (!this.onLoop.get(ancestor))
+        {
+            this.onLoop.set(ancestor);
+            if (changes != null)
+            {
+                changes.loopFormed(ancestor);
+            }
+        }
+    }
+
+    private void merge(int[] path, int length, int ancestor, Listener changes)
+    {
+        for (int i = 0; i < length && path[i] != ancestor; i++)
+        {
+            int group = path[i];
+            this.groups[group] = ancestor;
+            if (!this.onLoop.get(group) && changes != null)
+            {
+                changes.loopFormed(group);
+            }
+        }
+    }
+
+    private int findGroup(int city)
+    {
+        int root = city;
+        while (this.groups[root] != root)
+        {
+            root = this.groups[root];
+        }
+
+        while (city != root)
+        {
+            int next = this.groups[city];
+            this.groups[city] = root;
+            city = next;
+        }
+
+        return root;
+    }
+
+    private int findComponent(int city)
+    {
+        int current = this.findGroup(city);
+        int root = current;
+        while (this.components[root] != root)
+        {
+            root = this.findGroup(this.components[root]);
+        }
+
+        while (current != root)
+        {
+            int next = this.findGroup(this.components[current]);
+            this.components[current] = root;
+            current = next;
+        }
+
+        return root;
+    }
+
+    private static int[] push(int[] path, int length, int group)
+    {
+        int[] result = path;
+        if (length == result.length)
+        {
+            result = Arrays.copyOf(result, length * 2);
+        }
+        result[length] = group;
+
+        return result;
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * IncrementalComponents.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.index;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps connected component labels usable while routes are added, without
+ * rebuilding them on the thread adding routes.
+ * <p>
+ * Queries read the last labels built plus a small delta: the routes added
+ * since, united over the labels of their cities in a union-find that only
+ * holds the labels those routes touch. A query therefore costs a label lookup
+ * and a short walk in the union-find, however the network grows. Once the
+ * delta passes a threshold, the labels are extended by its routes on a
+ * background thread, and the writer swaps the new labels in, with the routes
+ * still pending, when it next adds a route.
+ * <p>
+ * Routes are added by one thread at a time with no queries running, as for
+ * the graph itself; the background thread only reads copies of the delta.
+ */
+public class IncrementalComponents
+{
+    private static final Logger LOG = Logger.getLogger(IncrementalComponents.class.getName());
+
+    private static final int MIN_DELTA = 1024;
+    private static final int DELTA_DIVISOR = 16;
+
+    private static final ExecutorService REBUILDS = Executors.newSingleThreadExecutor((runnable) ->
+    {
+        Thread thread = new Thread(runnable, "teleporter-index-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Executor executor;
+
+    private volatile Components labels;
+    private volatile Components built;
+    private volatile boolean building;
+    private int builtRoutes;
+    private long rebuildCount;
+
+    // the routes added since the labels were built, as pairs of cities
+    private int[] delta = new int[2 * MIN_DELTA];
+    private int deltaCount;
+    private LabelForest forest = new LabelForest();
+
+    /**
+     * Starts from labels built for the current network, rebuilding them on a
+     * shared background thread.
+     *
+     * @param labels the current labels
+     */
+    public IncrementalComponents(Components labels)
+    {
+        this(labels, REBUILDS);
+    }
+
+    /**
+     * Starts from labels built for the current network.
+     *
+     * @param labels   the current labels
+     * @param executor runs the rebuilds
+     */
+    public IncrementalComponents(Components labels, Executor executor)
+    {
+        Objects.requireNonNull(labels, "labels cannot be null");
+        Objects.requireNonNull(executor, "executor cannot be null");
+
+        this.labels = labels;
+        this.executor = executor;
+    }
+
+    /**
+     * Records an added route, starting a rebuild in the background if the
+     * delta is large enough.
+     *
+     * @param from      the identifier of one city
+     * @param to        the identifier of the other city
+     * @param cityCount the number of cities in the network
+     */
+    public void routeAdded(int from, int to, int cityCount)
+    {
+        this.install();
+
+        if (2 * this.deltaCount == this.delta.length)
+        {
+            this.delta = Arrays.copyOf(this.delta, this.delta.length * 2);
+        }
+        this.delta[2 * this.deltaCount] = from;
+        this.delta[2 * this.deltaCount + 1] = to;
+        this.deltaCount++;
+
+        Components current = this.labels;
+        this.forest.union(current, Components.extendedLabel(current, from), Components.extendedLabel(current, to));
+
+        if (!this.building && this.deltaCount >= Math.max(MIN_DELTA, current.getCityCount() / DELTA_DIVISOR))
+        {
+            this.rebuild(current, cityCount);
+        }
+    }
+
+    /**
+     * Determines if two cities are connected.
+     *
+     * @param from the identifier of the first city
+     * @param to   the identifier of the second city
+     * @return if the cities are in the same component
+     */
+    public boolean isConnected(int from, int to)
+    {
+        Components current = this.labels;
+
+        return this.forest.find(Components.extendedLabel(current, from)) == this.forest
+                .find(Components.extendedLabel(current, to));
+    }
+
+    /**
+     * Gets the number of cities in the component of a city.
+     *
+     * @param city the city identifier
+     * @return the number of cities
+     */
+    public long getComponentSize(int city)
+    {
+        Components current = this.labels;
+
+        return this.forest.size(current, this.forest.find(Components.extendedLabel(current, city)));
+    }
+
+    /**
+     * Labels the components of the network now, extending the last labels
+     * built by the routes added since.
+     *
+     * @param cityCount the number of cities in the network
+     * @return the components
+     */
+    public Components getComponents(int cityCount)
+    {
+        Components current = this.labels;
+
+        return this.deltaCount == 0 && current.getCityCount() == cityCount ? current
+                : Components.extend(current, cityCount, this.delta, this.deltaCount);
+    }
+
+    /**
+     * Gets the number of routes added since the last labels were built.
+     *
+     * @return the number of routes
+     */
+    public int getDeltaSize()
+    {
+        return this.deltaCount;
+    }
+
+    /**
+     * Gets the number of labels swapped in since starting.
+     *
+     * @return the number of rebuilds
+     */
+    public long getRebuildCount()
+    {
+        return this.rebuildCount;
+    }
+
+    private void rebuild(Components current, int cityCount)
+    {
+        int[] routes = Arrays.copyOf(this.delta, 2 * this.deltaCount);
+        int count = this.deltaCount;
+
+        this.building = true;
+        try
+        {
+            this.executor.execute(() ->
+            {
+                try
+                {
+                    this.builtRoutes = count;
+                    this.built = Components.extend(current, cityCount, routes, count);
+                }
+                catch (RuntimeException | Error ex)
+                {
+                    LOG.log(Level.WARNING, "unable to rebuild component labels", ex);
+                    this.building = false;
+                }
+            });
+        }
+        catch (RejectedExecutionException ex)
+        {
+            this.building = false;
+        }
+    }
+
+    /**
+     * Swaps in labels built in the background, keeping only the routes added
+     * since that build started in the delta.
+     */
+    private void install()
+    {
+        Components next = this.built;
+        if (next == null)
+        {
+            return;
+        }
+
+        int consumed = this.builtRoutes;
+        this.deltaCount -= consumed;
+        System.arraycopy(this.delta, 2 * consumed, this.delta, 0, 2 * this.deltaCount);
+
+        LabelForest nextForest = new LabelForest();
+        for (int i = 0; i < this.deltaCount; i++)
+        {
+            nextForest.union(next, Components.extendedLabel(next, this.delta[2 * i]),
+                    Components.extendedLabel(next, this.delta[2 * i + 1]));
+        }
+
+        this.forest = nextForest;
+        this.labels = next;
+        this.built = null;
+        this.building = false;
+        this.rebuildCount++;
+    }
+
+    /**
+     * A union-find over the labels touched by the delta, in open addressing
+     * tables keyed by label. Labels that are not in the tables are roots of
+     * their own. Trees are united by size, so finding a root never needs to
+     * change them and queries can share the forest.
+     */
+    private static final class LabelForest
+    {
+        private static final int EMPTY = -1;
+
+        private int[] keys = newKeys(16);
+        private int[] parents = new int[16];
+        private long[] sizes = new long[16];
+        private int count;
+
+        int find(int label)
+        {
+            int node = label;
+            int slot = this.slot(node);
+            while (this.keys[slot] != EMPTY && this.parents[slot] != node)
+            {
+                node = this.parents[slot];
+                slot = this.slot(node);
+            }
+
+            return node;
+        }
+
+        long size(Components labels, int root)
+        {
+            int slot = this.slot(root);
+
+            return this.keys[slot] == EMPTY ? baseSize(labels, root) : this.sizes[slot];
+        }
+
+        void union(Components labels, int a, int b)
+        {
+            int rootA = this.find(a);
+            int rootB = this.find(b);
+            if (rootA == rootB)
+            {
+                return;
+            }
+
+            // inserting may grow the tables, so both slots are found after
+            this.insert(labels, rootA);
+            this.insert(labels, rootB);
+            int slotA = this.slot(rootA);
+            int slotB = this.slot(rootB);
+            if (this.sizes[slotA] < this.sizes[slotB])
+            {
+                int swap = slotA;
+                slotA = slotB;
+                slotB = swap;
+            }
+
+            this.parents[slotB] = this.keys[slotA];
+            this.sizes[slotA] += this.sizes[slotB];
+        }
+
+        private void insert(Components labels, int label)
+        {
+            int slot = this.slot(label);
+            if (this.keys[slot] == EMPTY)
+            {
+                if (2 * (this.count + 1) > this.keys.length)
+                {
+                    this.grow();
+                    slot = this.slot(label);
+                }
+
+                this.keys[slot] = label;
+                this.parents[slot] = label;
+                this.sizes[slot] = baseSize(labels, label);
+                this.count++;
+            }
+        }
+
+        private int slot(int label)
+        {
+            int mask = this.keys.length - 1;
+            int hash = label * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (this.keys[slot] != EMPTY && this.keys[slot] != label)
+            {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        private void grow()
+        {
+            int[] oldKeys = this.keys;
+            int[] oldParents = this.parents;
+            long[] oldSizes = this.sizes;
+
+            this.keys = newKeys(oldKeys.length * 2);
+            this.parents = new int[oldKeys.length * 2];
+            this.sizes = new long[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] != EMPTY)
+                {
+                    int slot = this.slot(oldKeys[i]);
+                    this.keys[slot] = oldKeys[i];
+                    this.parents[slot] = oldParents[i];
+                    this.sizes[slot] = oldSizes[i];
+                }
+            }
+        }
+
+        private static long baseSize(Components labels, int label)
+        {
+            return label < labels.getCount() ? labels.getSize(label) : 1;
+        }
+
+        private static int[] newKeys(int length)
+        {
+            int[] keys = new int[length];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * ResultStore.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.index;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import teleporter.util.IntBitmap;
+
+/**
+ * Keeps named query results as bitmaps of city identifiers so they can be
+ * reused and combined. The results together stay within a memory budget;
+ * storing past it evicts the least recently used results first.
+ * <p>
+ * Results are tied to the numbering of the cities they were computed under.
+ * When the cities are renumbered, every stored result is dropped.
+ */
+public class ResultStore
+{
+    private final long maxBytes;
+    private final LinkedHashMap<String, IntBitmap> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private int numbering;
+
+    /**
+     * Creates a new, empty store.
+     *
+     * @param maxBytes the memory budget in bytes
+     */
+    public ResultStore(long maxBytes)
+    {
+        if (maxBytes < 0)
+        {
+            throw new IllegalArgumentException("maxBytes cannot be negative");
+        }
+
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Stores a result, replacing any result with the same name.
+     *
+     * @param name      the name
+     * @param cities    the city identifiers
+     * @param numbering the numbering the identifiers belong to
+     * @return the names of results evicted to make room
+     * @throws IllegalArgumentException if the result alone exceeds the budget
+     */
+    public synchronized List<String> put(String name, IntBitmap cities, int numbering)
+    {
+        Objects.requireNonNull(name, "name cannot be null");
+        Objects.requireNonNull(cities, "cities cannot be null");
+
+        long size = cities.getSizeInBytes();
+        if (size > this.maxBytes)
+        {
+            throw new IllegalArgumentException(
+                    "result of " + size + " bytes exceeds the budget of " + this.maxBytes + " bytes");
+        }
+
+        this.checkNumbering(numbering);
+        this.remove(name);
+
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, IntBitmap>> iterator = this.results.entrySet().iterator();
+        while (this.bytes + size > this.maxBytes && iterator.hasNext())
+        {
+            Map.Entry<String, IntBitmap> eldest = iterator.next();
+            this.bytes -= eldest.getValue().getSizeInBytes();
+            evicted.add(eldest.getKey());
+            iterator.remove();
+        }
+
+        this.results.put(name, cities);
+        this.bytes += size;
+
+        return evicted;
+    }
+
+    /**
+     * Gets a result.
+     *
+     * @param name      the name
+     * @param numbering the current numbering of the cities
+     * @return the city identifiers, or null if there is no such result
+     */
+    public synchronized IntBitmap get(String name, int numbering)
+    {
+        Objects.requireNonNull(name, "name cannot be null");
+
+        this.checkNumbering(numbering);
+
+        return this.results.get(name);
+    }
+
+    /**
+     * Removes a result.
+     *
+     * @param name the name
+     * @return if the result was stored
+     */
+    public synchronized boolean remove(String name)
+    {
+        IntBitmap removed = this.results.remove(name);
+        if (removed != null)
+        {
+            this.bytes -= removed.getSizeInBytes();
+        }
+
+        return removed != null;
+    }
+
+    /**
+     * Describes the stored results, least recently used first.
+     *
+     * @param numbering the current numbering of the cities
+     * @return a line per result with its name, city count and size
+     */
+    public synchronized List<String> describe(int numbering)
+    {
+        this.checkNumbering(numbering);
+
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, IntBitmap> entry : this.results.entrySet())
+        {
+            lines.add(entry.getKey() + ": " + entry.getValue().size() + " cities, "
+                    + entry.getValue().getSizeInBytes() + " bytes");
+        }
+
+        return lines;
+    }
+
+    /**
+     * Gets the memory used by the stored results.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getSizeInBytes()
+    {
+        return this.bytes;
+    }
+
+    /**
+     * Gets the memory budget.
+     *
+     * @return the budget in bytes
+     */
+    public long getMaxBytes()
+    {
+        return this.maxBytes;
+    }
+
+    private void checkNumbering(int numbering)
+    {
+        if (numbering != this.numbering)
+        {
+            this.results.clear();
+            this.bytes = 0;
+            this.numbering = numbering;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * CommandStats.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the latency histogram and work counters of one command.
+ */
+public final class CommandStats implements CommandStatsMBean
+{
+    private static final double NANOS_PER_MICRO = 1000.0;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong cities = new AtomicLong();
+    private final AtomicLong routes = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+    private final long created = System.nanoTime();
+
+    /**
+     * Records a handled line.
+     *
+     * @param nanos     the time taken to handle the line
+     * @param cities    the number of cities whose routes were followed
+     * @param routes    the number of routes followed
+     * @param truncated if the line ran out of budget
+     */
+    public void record(long nanos, long cities, long routes, boolean truncated)
+    {
+        this.latencies.record(nanos);
+
+        if (cities != 0)
+        {
+            this.cities.addAndGet(cities);
+        }
+        if (routes != 0)
+        {
+            this.routes.addAndGet(routes);
+        }
+        if (truncated)
+        {
+            this.truncated.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the latency histogram.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getLatencies()
+    {
+        return this.latencies;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return this.latencies.getCount();
+    }
+
+    @Override
+    public double getRate()
+    {
+        return this.latencies.getCount() * NANOS_PER_SECOND / Math.max(1, System.nanoTime() - this.created);
+    }
+
+    @Override
+    public double getMeanMicros()
+    {
+        return this.latencies.getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getP50Micros()
+    {
+        return this.latencies.getValueAtPercentile(50) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getP99Micros()
+    {
+        return this.latencies.getValueAtPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getP999Micros()
+    {
+        return this.latencies.getValueAtPercentile(99.9) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getMaxMicros()
+    {
+        return this.latencies.getMax() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public long getCitiesVisited()
+    {
+        return this.cities.get();
+    }
+
+    @Override
+    public long getRoutesVisited()
+    {
+        return this.routes.get();
+    }
+
+    @Override
+    public long getTruncatedCount()
+    {
+        return this.truncated.get();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * CommandStatsMBean.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.metrics;
+
+/**
+ * Exposes the statistics of one command over JMX.
+ */
+public interface CommandStatsMBean
+{
+    /**
+     * Gets the number of lines handled.
+     *
+     * @return the count
+     */
+    long getCount();
+
+    /**
+     * Gets the number of lines handled per second since the statistics were
+     * created.
+     *
+     * @return the rate
+     */
+    double getRate();
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return the mean in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * Gets the median latency.
+     *
+     * @return the median in microseconds
+     */
+    double getP50Micros();
+
+    /**
+     * Gets the 99th percentile latency.
+     *
+     * @return the percentile in microseconds
+     */
+    double getP99Micros();
+
+    /**
+     * Gets the 99.9th percentile latency.
+     *
+     * @return the percentile in microseconds
+     */
+    double getP999Micros();
+
+    /**
+     * Gets the highest latency.
+     *
+     * @return the maximum in microseconds
+     */
+    double getMaxMicros();
+
+    /**
+     * Gets the number of cities whose routes were followed.
+     *
+     * @return the number of cities
+     */
+    long getCitiesVisited();
+
+    /**
+     * Gets the number of routes followed.
+     *
+     * @return the number of routes
+     */
+    long getRoutesVisited();
+
+    /**
+     * Gets the number of lines that ran out of budget and returned a partial
+     * result.
+     *
+     * @return the count
+     */
+    long getTruncatedCount();
+}
@@ -0,0 +1,169 @@
+/**
+ * FeedStats.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Tracks the progress and lag of a followed route feed. Updated by the thread
+ * following the feed and read from any thread.
+ */
+public final class FeedStats implements FeedStatsMBean
+{
+    private static final Logger LOG = Logger.getLogger(FeedStats.class.getName());
+
+    private static final String DOMAIN = "teleporter";
+
+    private final AtomicLong appliedLines = new AtomicLong();
+    private final AtomicLong skippedLines = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong checkpoints = new AtomicLong();
+
+    private volatile long appliedOffset;
+    private volatile long size;
+    // when lines were first seen waiting since the feed was caught up, or zero
+    private volatile long waitingSince;
+
+    /**
+     * Records the size of the feed, starting the lag clock if it holds lines
+     * not yet applied.
+     *
+     * @param bytes the size of the feed in bytes
+     */
+    public void seen(long bytes)
+    {
+        this.size = bytes;
+        if (bytes > this.appliedOffset && this.waitingSince == 0)
+        {
+            this.waitingSince = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records an applied batch.
+     *
+     * @param offset  the offset of the first line not applied
+     * @param applied the number of lines applied
+     * @param skipped the number of lines skipped
+     */
+    public void applied(long offset, int applied, int skipped)
+    {
+        this.appliedOffset = offset;
+        this.appliedLines.addAndGet(applied);
+        this.skippedLines.addAndGet(skipped);
+        this.batches.incrementAndGet();
+
+        if (offset >= this.size)
+        {
+            this.waitingSince = 0;
+        }
+    }
+
+    /**
+     * Records the feed being read again from the start.
+     */
+    public void restarted()
+    {
+        this.appliedOffset = 0;
+        this.waitingSince = 0;
+    }
+
+    /**
+     * Records a written checkpoint.
+     */
+    public void checkpointed()
+    {
+        this.checkpoints.incrementAndGet();
+    }
+
+    @Override
+    public long getAppliedOffset()
+    {
+        return this.appliedOffset;
+    }
+
+    @Override
+    public long getAppliedLines()
+    {
+        return this.appliedLines.get();
+    }
+
+    @Override
+    public long getSkippedLines()
+    {
+        return this.skippedLines.get();
+    }
+
+    @Override
+    public long getBatchCount()
+    {
+        return this.batches.get();
+    }
+
+    @Override
+    public long getCheckpointCount()
+    {
+        return this.checkpoints.get();
+    }
+
+    @Override
+    public long getLagBytes()
+    {
+        return Math.max(0, this.size - this.appliedOffset);
+    }
+
+    @Override
+    public long getLagMillis()
+    {
+        long since = this.waitingSince;
+
+        return since == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+    }
+
+    /**
+     * Registers the statistics with the platform MBean server, named
+     * <code>teleporter:type=Feed,name=FILE</code>. Failures are logged.
+     *
+     * @param feed the name of the feed file
+     */
+    public void register(String feed)
+    {
+        try
+        {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Feed,name=" + ObjectName.quote(feed));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        }
+        catch (JMException ex)
+        {
+            LOG.log(Level.WARNING, "unable to register statistics for " + feed, ex);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * FeedStatsMBean.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.metrics;
+
+/**
+ * Exposes the progress of a followed route feed over JMX.
+ */
+public interface FeedStatsMBean
+{
+    /**
+     * Gets the number of bytes of the feed applied to the network.
+     *
+     * @return the offset of the first line not applied
+     */
+    long getAppliedOffset();
+
+    /**
+     * Gets the number of lines applied to the network.
+     *
+     * @return the count
+     */
+    long getAppliedLines();
+
+    /**
+     * Gets the number of lines that were neither a new nor a removed route.
+     *
+     * @return the count
+     */
+    long getSkippedLines();
+
+    /**
+     * Gets the number of batches applied.
+     *
+     * @return the count
+     */
+    long getBatchCount();
+
+    /**
+     * Gets the number of checkpoints written.
+     *
+     * @return the count
+     */
+    long getCheckpointCount();
+
+    /**
+     * Gets the number of bytes appended to the feed but not yet applied.
+     *
+     * @return the lag in bytes
+     */
+    long getLagBytes();
+
+    /**
+     * Gets how long lines have been waiting to be applied, since the feed was
+     * last caught up.
+     *
+     * @return the lag in milliseconds, or zero when caught up
+     */
+    long getLagMillis();
+}
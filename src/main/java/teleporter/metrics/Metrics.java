@@ -0,0 +1,96 @@
+/**
+ * Metrics.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import teleporter.parser.Command;
+
+/**
+ * Collects statistics for every command.
+ */
+public final class Metrics
+{
+    private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+
+    private static final String DOMAIN = "teleporter";
+
+    private final Map<Command, CommandStats> stats = new EnumMap<>(Command.class);
+
+    /**
+     * Creates empty statistics for every command.
+     */
+    public Metrics()
+    {
+        for (Command command : Command.values())
+        {
+            this.stats.put(command, new CommandStats());
+        }
+    }
+
+    /**
+     * Gets the statistics of a command.
+     *
+     * @param command the command
+     * @return the statistics
+     */
+    public CommandStats get(Command command)
+    {
+        Objects.requireNonNull(command, "command cannot be null");
+
+        return this.stats.get(command);
+    }
+
+    /**
+     * Registers an MBean for every command with the platform MBean server,
+     * named <code>teleporter:type=Command,name=COMMAND</code>. Failures are
+     * logged; statistics are still collected.
+     */
+    public void register()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (Map.Entry<Command, CommandStats> entry : this.stats.entrySet())
+        {
+            try
+            {
+                ObjectName name = new ObjectName(DOMAIN + ":type=Command,name=" + entry.getKey());
+                server.registerMBean(entry.getValue(), name);
+            }
+            catch (JMException ex)
+            {
+                LOG.log(Level.WARNING, "unable to register statistics for " + entry.getKey(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * QueryContext.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.metrics;
+
+/**
+ * Accumulates the work done by the query running on the current thread and
+ * holds its budget.
+ * <p>
+ * Searches add the cities and routes they visited once they finish, rather
+ * than per step, so counting costs a thread local lookup per search. While
+ * running, searches ask {@link #isExhausted(long)} after each route; the
+ * budget is only compared every 1024 routes, and a search that runs out stops
+ * and returns what it found so far, marking the query truncated.
+ */
+public final class QueryContext
+{
+    private static final ThreadLocal<QueryContext> CURRENT = ThreadLocal.withInitial(QueryContext::new);
+
+    private static final int CHECK_INTERVAL = 1024;
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    private long cities;
+    private long routes;
+    private long maxRoutes = UNLIMITED;
+    private long deadline = UNLIMITED;
+    private boolean truncated;
+
+    private QueryContext()
+    {
+    }
+
+    /**
+     * Gets the context of the current thread.
+     *
+     * @return the context
+     */
+    public static QueryContext current()
+    {
+        return CURRENT.get();
+    }
+
+    /**
+     * Starts a new query on the current thread, clearing its counts and
+     * budget.
+     *
+     * @return the context
+     */
+    public static QueryContext begin()
+    {
+        QueryContext context = CURRENT.get();
+        context.cities = 0;
+        context.routes = 0;
+        context.maxRoutes = UNLIMITED;
+        context.deadline = UNLIMITED;
+        context.truncated = false;
+
+        return context;
+    }
+
+    /**
+     * Limits the work of the current query.
+     *
+     * @param maxRoutes the number of routes searches may follow, or zero for
+     *                  no limit
+     * @param maxNanos  the time searches may take from now, or zero for no
+     *                  limit
+     */
+    public void limit(long maxRoutes, long maxNanos)
+    {
+        if (maxRoutes < 0 || maxNanos < 0)
+        {
+            throw new IllegalArgumentException("limits cannot be negative");
+        }
+
+        this.maxRoutes = maxRoutes == 0 ? UNLIMITED : maxRoutes;
+        this.deadline = maxNanos == 0 ? UNLIMITED : System.nanoTime() + maxNanos;
+    }
+
+    /**
+     * Determines if a running search must stop. Only every 1024th route is
+     * compared with the budget.
+     *
+     * @param routes the number of routes the search has followed so far
+     * @return if the budget is used up, in which case the query is marked
+     *         truncated
+     */
+    public boolean isExhausted(long routes)
+    {
+        if ((routes & (CHECK_INTERVAL - 1)) != 0)
+        {
+            return false;
+        }
+
+        if (this.routes + routes >= this.maxRoutes
+                || (this.deadline != UNLIMITED && System.nanoTime() - this.deadline >= 0))
+        {
+            this.truncated = true;
+        }
+
+        return this.truncated;
+    }
+
+    /**
+     * Determines if a search of the current query ran out of budget and
+     * returned a partial result.
+     *
+     * @return if the query was truncated
+     */
+    public boolean isTruncated()
+    {
+        return this.truncated;
+    }
+
+    /**
+     * Adds work done by a search.
+     *
+     * @param cities the number of cities whose routes were followed
+     * @param routes the number of routes followed
+     */
+    public void visited(long cities, long routes)
+    {
+        this.cities += cities;
+        this.routes += routes;
+    }
+
+    /**
+     * Gets the number of cities whose routes were followed.
+     *
+     * @return the number of cities
+     */
+    public long getCities()
+    {
+        return this.cities;
+    }
+
+    /**
+     * Gets the number of routes followed.
+     *
+     * @return the number of routes
+     */
+    public long getRoutes()
+    {
+        return this.routes;
+    }
+}
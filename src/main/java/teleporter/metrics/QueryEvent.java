@@ -0,0 +1,64 @@
+/**
+ * QueryEvent.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for a query handled by the application.
+ */
+@Name("teleporter.Query")
+@Label("Query")
+@Category("Teleporter")
+@Description("A query answered from the teleportation network")
+public final class QueryEvent extends Event
+{
+    /** The command of the query. */
+    @Label("Command")
+    public String command;
+
+    /** The city the query starts from. */
+    @Label("City")
+    public String city;
+
+    /** The destination city, for queries between two cities. */
+    @Label("Destination")
+    public String destination;
+
+    /** The jump limit of the query, or -1 if it has none. */
+    @Label("Max Jumps")
+    public int maxJumps = -1;
+
+    /** The number of cities whose routes were followed. */
+    @Label("Cities Visited")
+    public long citiesVisited;
+
+    /** The number of routes followed. */
+    @Label("Routes Visited")
+    public long routesVisited;
+}
@@ -0,0 +1,174 @@
+/**
+ * SlowQueryLog.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import teleporter.parser.Command;
+
+/**
+ * Appends lines that took longer than a threshold to a file.
+ * <p>
+ * Entries are handed to a background thread through a bounded queue, so
+ * recording never waits for the disk. When the queue is full the entry is
+ * dropped and counted rather than slowing down the query.
+ */
+public final class SlowQueryLog implements Closeable
+{
+    private static final Logger LOG = Logger.getLogger(SlowQueryLog.class.getName());
+
+    private static final int QUEUE_SIZE = 4096;
+    private static final long POLL_MILLIS = 200;
+
+    private final long thresholdNanos;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Writer writer;
+    private final Thread thread;
+
+    private volatile boolean closed;
+
+    /**
+     * Opens a log, appending to the file if it exists.
+     *
+     * @param path            the log file
+     * @param thresholdMillis the least duration of a logged line
+     * @throws IOException if unable to open the file
+     */
+    public SlowQueryLog(Path path, long thresholdMillis) throws IOException
+    {
+        Objects.requireNonNull(path, "path cannot be null");
+
+        if (thresholdMillis < 0)
+        {
+            throw new IllegalArgumentException("thresholdMillis cannot be negative");
+        }
+
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+
+        this.thread = new Thread(this::drain, "slow-query-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Logs a line if it took at least the threshold.
+     *
+     * @param nanos   the time taken to handle the line
+     * @param command the command of the line
+     * @param cities  the number of cities whose routes were followed
+     * @param routes  the number of routes followed
+     * @param line    the input line
+     */
+    public void record(long nanos, Command command, long cities, long routes, String line)
+    {
+        if (nanos >= this.thresholdNanos && !this.closed)
+        {
+            String entry = Instant.now() + "\t" + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms\t" + command + "\t"
+                    + cities + " cities\t" + routes + " routes\t" + line;
+
+            if (!this.queue.offer(entry))
+            {
+                this.dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of entries dropped because the writer fell behind.
+     *
+     * @return the number of entries
+     */
+    public long getDroppedCount()
+    {
+        return this.dropped.get();
+    }
+
+    /**
+     * Writes the remaining entries and closes the file.
+     *
+     * @throws IOException if unable to close the file
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.closed = true;
+
+        try
+        {
+            this.thread.join();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        this.writer.close();
+    }
+
+    private void drain()
+    {
+        try
+        {
+            while (!this.closed || !this.queue.isEmpty())
+            {
+                String entry = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry != null)
+                {
+                    this.writer.write(entry);
+                    this.writer.write(System.lineSeparator());
+                }
+
+                if (this.queue.isEmpty())
+                {
+                    this.writer.flush();
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            LOG.log(Level.WARNING, "unable to write slow query log", ex);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
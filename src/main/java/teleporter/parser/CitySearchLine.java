@@ -36,6 +36,8 @@ public final class CitySearchLine extends Line
     public final City originCity;
     /** The maximum number of jumps to teleport in the search. */
     public final int maxJumps;
+    /** The maximum number of cities to find. */
+    public final int limit;
 
     /**
      * Creates a new line representation.
@@ -44,6 +46,18 @@ public final class CitySearchLine extends Line
      * @param maxJumps   the number of jumps for the search
      */
     public CitySearchLine(City originCity, int maxJumps)
+    {
+        this(originCity, maxJumps, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new line representation.
+     *
+     * @param originCity the origin city for the search
+     * @param maxJumps   the number of jumps for the search
+     * @param limit      the maximum number of cities to find
+     */
+    public CitySearchLine(City originCity, int maxJumps, int limit)
     {
         super(Command.CITY_SEARCH);
 
@@ -54,14 +68,20 @@ public final class CitySearchLine extends Line
             throw new IllegalArgumentException("maxJumps cannot be less than one");
         }
 
+        if (limit < 0)
+        {
+            throw new IllegalArgumentException("limit cannot be negative");
+        }
+
         this.originCity = originCity;
         this.maxJumps = maxJumps;
+        this.limit = limit;
     }
 
     @Override
     public String toString()
     {
-        return "CitySearchLine [originCity=" + this.originCity + ", maxJumps=" + this.maxJumps + ", command="
-                + this.command + "]";
+        return "CitySearchLine [originCity=" + this.originCity + ", maxJumps=" + this.maxJumps + ", limit="
+                + this.limit + ", command=" + this.command + "]";
     }
 }
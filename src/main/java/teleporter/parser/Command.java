@@ -30,14 +30,60 @@ public enum Command
 {
     /** Create a new route. */
     NEW_ROUTE,
+    /** Remove a route. */
+    REMOVE_ROUTE,
     /** Identify all cities within a certain number of jumps from a city. */
     CITY_SEARCH,
+    /** Search for cities near any of several origins. */
+    MULTI_CITY_SEARCH,
+    /** Count all cities within a certain number of jumps from a city. */
+    CITY_COUNT,
     /** Determine if a route exists between two cities. */
     ROUTE_SEARCH,
+    /** Determine if a route of at most a number of jumps exists between two cities. */
+    BOUNDED_ROUTE_SEARCH,
+    /** Count the jumps on a shortest path between two cities. */
+    DISTANCE_SEARCH,
+    /** Build the distance labels. */
+    DISTANCE_INDEX,
+    /** Save the distance labels to a file. */
+    DISTANCE_SAVE,
+    /** Load the distance labels from a file. */
+    DISTANCE_LOAD,
+    /** Freeze the network into compact, renumbered storage. */
+    FREEZE,
     /** Identify if a loop exists for a given city. */
     LOOP_SEARCH,
+    /** List every city on a loop. */
+    LOOP_REPORT,
+    /** List the cities and routes whose loss would disconnect the network. */
+    CRITICAL_REPORT,
+    /** Find the shortest loop through a city. */
+    SHORTEST_LOOP,
+    /** Summarize the connected components. */
+    COMPONENT_SUMMARY,
+    /** Identify the connected component of a city. */
+    COMPONENT_SEARCH,
+    /** Store a neighborhood as a named result. */
+    RESULT_STORE,
+    /** Combine two named results into a new one. */
+    RESULT_COMBINE,
+    /** Show the cities of a named result. */
+    RESULT_SHOW,
+    /** Drop a named result. */
+    RESULT_DROP,
+    /** List the named results. */
+    RESULT_LIST,
     /** Show the current routes. */
     SHOW_ROUTES,
+    /** Show the command statistics. */
+    STATS,
+    /** Explain how a query would be answered. */
+    EXPLAIN,
+    /** Start notifying each change of a route or loop search answer. */
+    WATCH,
+    /** Stop notifying the changes of a route or loop search answer. */
+    UNWATCH,
     /** Quit the application. */
     QUIT;
 }
@@ -0,0 +1,68 @@
+/**
+ * DistanceIndexLine.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.parser;
+
+import java.util.Objects;
+
+/**
+ * Represents a line requesting that the distance labels be built, saved or
+ * loaded.
+ */
+public final class DistanceIndexLine extends Line
+{
+    /** The file to save to or load from, or null when building. */
+    public final String file;
+
+    /**
+     * Creates a new line representation.
+     *
+     * @param command the line type, one of {@link Command#DISTANCE_INDEX},
+     *                {@link Command#DISTANCE_SAVE} and
+     *                {@link Command#DISTANCE_LOAD}
+     * @param file    the file to save to or load from, or null when building
+     */
+    public DistanceIndexLine(Command command, String file)
+    {
+        super(command);
+
+        Objects.requireNonNull(command, "command cannot be null");
+        if (command != Command.DISTANCE_INDEX && command != Command.DISTANCE_SAVE
+                && command != Command.DISTANCE_LOAD)
+        {
+            throw new IllegalArgumentException("not a distance index command: " + command);
+        }
+        if ((file == null) != (command == Command.DISTANCE_INDEX))
+        {
+            throw new IllegalArgumentException("file is required to save or load");
+        }
+
+        this.file = file;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DistanceIndexLine [file=" + this.file + ", command=" + this.command + "]";
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * FreezeLine.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.parser;
+
+import java.util.Objects;
+
+import teleporter.storage.VertexOrder;
+
+/**
+ * Represents a line requesting that the network be frozen into compact
+ * storage.
+ */
+public final class FreezeLine extends Line
+{
+    /** The order to number cities in. */
+    public final VertexOrder order;
+    /** If neighbor lists are compressed. */
+    public final boolean compressed;
+
+    /**
+     * Creates a new line representation.
+     *
+     * @param order      the order to number cities in
+     * @param compressed if neighbor lists are compressed
+     */
+    public FreezeLine(VertexOrder order, boolean compressed)
+    {
+        super(Command.FREEZE);
+
+        Objects.requireNonNull(order, "order cannot be null");
+
+        this.order = order;
+        this.compressed = compressed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "FreezeLine [order=" + this.order + ", compressed=" + this.compressed + ", command=" + this.command + "]";
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * MultiCitySearchLine.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import teleporter.data.City;
+
+/**
+ * Represents a line requesting a city search from several origins at once.
+ */
+public final class MultiCitySearchLine extends Line
+{
+    /** The origin cities for the search. */
+    public final List<City> originCities;
+    /** The maximum number of jumps to teleport in the search. */
+    public final int maxJumps;
+    /** The maximum number of cities to find. */
+    public final int limit;
+
+    /**
+     * Creates a new line representation.
+     *
+     * @param originCities the origin cities for the search
+     * @param maxJumps     the number of jumps for the search
+     * @param limit        the maximum number of cities to find
+     */
+    public MultiCitySearchLine(List<City> originCities, int maxJumps, int limit)
+    {
+        super(Command.MULTI_CITY_SEARCH);
+
+        Objects.requireNonNull(originCities, "originCities cannot be null");
+
+        if (originCities.isEmpty())
+        {
+            throw new IllegalArgumentException("originCities cannot be empty");
+        }
+
+        if (maxJumps < 1)
+        {
+            throw new IllegalArgumentException("maxJumps cannot be less than one");
+        }
+
+        if (limit < 0)
+        {
+            throw new IllegalArgumentException("limit cannot be negative");
+        }
+
+        this.originCities = Collections.unmodifiableList(new ArrayList<>(originCities));
+        this.maxJumps = maxJumps;
+        this.limit = limit;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MultiCitySearchLine [originCities=" + this.originCities + ", maxJumps=" + this.maxJumps + ", limit="
+                + this.limit + ", command=" + this.command + "]";
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * ResultCombineLine.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.parser;
+
+import java.util.Objects;
+
+/**
+ * Represents a line requesting that two stored results be combined into a
+ * new named result.
+ */
+public final class ResultCombineLine extends Line
+{
+    /** The name to store the combined result as. */
+    public final String name;
+    /** The name of the first result. */
+    public final String left;
+    /** The operation combining the results. */
+    public final SetOperation operation;
+    /** The name of the second result. */
+    public final String right;
+
+    /**
+     * Creates a new line representation.
+     *
+     * @param name      the name to store the combined result as
+     * @param left      the name of the first result
+     * @param operation the operation combining the results
+     * @param right     the name of the second result
+     */
+    public ResultCombineLine(String name, String left, SetOperation operation, String right)
+    {
+        super(Command.RESULT_COMBINE);
+
+        Objects.requireNonNull(name, "name cannot be null");
+        Objects.requireNonNull(left, "left cannot be null");
+        Objects.requireNonNull(operation, "operation cannot be null");
+        Objects.requireNonNull(right, "right cannot be null");
+
+        this.name = name;
+        this.left = left;
+        this.operation = operation;
+        this.right = right;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ResultCombineLine [name=" + this.name + ", left=" + this.left + ", operation=" + this.operation
+                + ", right=" + this.right + ", command=" + this.command + "]";
+    }
+}
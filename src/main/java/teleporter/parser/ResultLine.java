@@ -0,0 +1,67 @@
+/**
+ * ResultLine.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.parser;
+
+import java.util.Objects;
+
+/**
+ * Represents a line requesting that a stored result be shown or dropped, or
+ * that the stored results be listed.
+ */
+public final class ResultLine extends Line
+{
+    /** The name of the result, or null when listing. */
+    public final String name;
+
+    /**
+     * Creates a new line representation.
+     *
+     * @param command the line type, one of {@link Command#RESULT_SHOW},
+     *                {@link Command#RESULT_DROP} and
+     *                {@link Command#RESULT_LIST}
+     * @param name    the name of the result, or null when listing
+     */
+    public ResultLine(Command command, String name)
+    {
+        super(command);
+
+        Objects.requireNonNull(command, "command cannot be null");
+        if (command != Command.RESULT_SHOW && command != Command.RESULT_DROP && command != Command.RESULT_LIST)
+        {
+            throw new IllegalArgumentException("not a result command: " + command);
+        }
+        if ((name == null) != (command == Command.RESULT_LIST))
+        {
+            throw new IllegalArgumentException("name is required to show or drop a result");
+        }
+
+        this.name = name;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ResultLine [name=" + this.name + ", command=" + this.command + "]";
+    }
+}
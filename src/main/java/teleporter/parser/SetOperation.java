@@ -0,0 +1,66 @@
+/**
+ * SetOperation.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.parser;
+
+/**
+ * Provides an enum for the ways two stored results can be combined.
+ */
+public enum SetOperation
+{
+    /** Cities in both results, written <code>and</code>. */
+    INTERSECTION("and"),
+    /** Cities in either result, written <code>or</code>. */
+    UNION("or"),
+    /** Cities in the first result but not the second, written <code>minus</code>. */
+    DIFFERENCE("minus");
+
+    /** The word naming the operation in commands. */
+    public final String word;
+
+    SetOperation(String word)
+    {
+        this.word = word;
+    }
+
+    /**
+     * Gets the operation named by a word.
+     *
+     * @param word the word
+     * @return the operation, or null if the word names none
+     */
+    public static SetOperation of(String word)
+    {
+        SetOperation result = null;
+
+        for (SetOperation operation : values())
+        {
+            if (operation.word.equals(word))
+            {
+                result = operation;
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * ShortestLoopLine.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.parser;
+
+import java.util.Objects;
+
+import teleporter.data.City;
+
+/**
+ * Represents a line requesting a search for the shortest loop through a city.
+ */
+public final class ShortestLoopLine extends Line
+{
+    /** The city the loop passes through. */
+    public final City city;
+
+    /**
+     * Creates a new line representation.
+     *
+     * @param city the city the loop passes through
+     */
+    public ShortestLoopLine(City city)
+    {
+        super(Command.SHORTEST_LOOP);
+
+        Objects.requireNonNull(city, "city cannot be null");
+
+        this.city = city;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ShortestLoopLine [city=" + this.city + ", command=" + this.command + "]";
+    }
+}
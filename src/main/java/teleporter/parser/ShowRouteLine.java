@@ -28,17 +28,24 @@ package teleporter.parser;
  */
 public final class ShowRouteLine extends Line
 {
+    /** If the routes should be sorted by city name. */
+    public final boolean sorted;
+
     /**
      * Creates a new line representation.
+     *
+     * @param sorted if the routes should be sorted by city name
      */
-    public ShowRouteLine()
+    public ShowRouteLine(boolean sorted)
     {
         super(Command.SHOW_ROUTES);
+
+        this.sorted = sorted;
     }
 
     @Override
     public String toString()
     {
-        return "ShowRouteLine [command=" + this.command + "]";
+        return "ShowRouteLine [sorted=" + this.sorted + ", command=" + this.command + "]";
     }
 }
@@ -23,9 +23,12 @@
  */
 package teleporter.parser;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -33,25 +36,53 @@ import java.util.regex.Pattern;
 
 import teleporter.data.City;
 import teleporter.data.Route;
+import teleporter.storage.VertexOrder;
 
 /**
- * Parses a line to generate a Line.
+ * Parses a line to generate a Line. A parser may be shared between threads.
  */
 public class StringParser
 {
     private static final Logger LOG = Logger.getLogger(StringParser.class.getName());
 
+    private static final Pattern BOUNDED_ROUTE_SEARCH_PATTERN;
+    private static final Pattern CITY_COUNT_PATTERN;
     private static final Pattern CITY_SEARCH_PATTERN;
+    private static final Pattern COMPONENT_SEARCH_PATTERN;
+    private static final Pattern DISTANCE_SEARCH_PATTERN;
+    private static final Pattern DISTANCE_LOAD_PATTERN;
+    private static final Pattern DISTANCE_SAVE_PATTERN;
+    private static final Pattern FREEZE_PATTERN;
     private static final Pattern LOOP_SEARCH_PATTERN;
+    private static final Pattern MULTI_CITY_SEARCH_PATTERN;
+    private static final Pattern RESULT_COMBINE_PATTERN;
+    private static final Pattern RESULT_DROP_PATTERN;
+    private static final Pattern RESULT_SHOW_PATTERN;
+    private static final Pattern RESULT_STORE_PATTERN;
     private static final Pattern ROUTE_SEARCH_PATTERN;
+    private static final Pattern SHORTEST_LOOP_PATTERN;
 
-    private final Map<String, City> cityMap = new HashMap<>();
-    private final Map<Route, Route> routeMap = new HashMap<>();
+    private final Map<String, City> cityMap = new ConcurrentHashMap<>();
 
     static
     {
-        CITY_SEARCH_PATTERN = Pattern.compile("cities from ([\\sa-zA-Z]+?) in (\\d+) jumps");
+        BOUNDED_ROUTE_SEARCH_PATTERN = Pattern
+                .compile("can I teleport from ([\\sa-zA-Z]+?) to ([\\sa-zA-Z]+?) in (\\d+) jumps");
+        CITY_COUNT_PATTERN = Pattern.compile("count cities from ([\\sa-zA-Z]+?) in (\\d+) jumps");
+        CITY_SEARCH_PATTERN = Pattern.compile("cities from ([\\sa-zA-Z]+?) in (\\d+) jumps(?: limit (\\d+))?");
+        COMPONENT_SEARCH_PATTERN = Pattern.compile("component of ([\\sa-zA-Z]+)");
+        DISTANCE_SEARCH_PATTERN = Pattern.compile("jumps from ([\\sa-zA-Z]+?) to ([\\sa-zA-Z]+)");
+        DISTANCE_LOAD_PATTERN = Pattern.compile("load distances from (\\S.*)");
+        DISTANCE_SAVE_PATTERN = Pattern.compile("save distances to (\\S.*)");
+        FREEZE_PATTERN = Pattern.compile("freeze( compressed)?(?: by (none|bfs|rcm|degree))?");
         LOOP_SEARCH_PATTERN = Pattern.compile("loop possible from ([\\sa-zA-Z]+)");
+        MULTI_CITY_SEARCH_PATTERN = Pattern
+                .compile("cities from ([\\sa-zA-Z]+?(?:,[\\sa-zA-Z]+?)+) in (\\d+) jumps(?: limit (\\d+))?");
+        RESULT_COMBINE_PATTERN = Pattern.compile("store (\\w+) (and|or|minus) (\\w+) as (\\w+)");
+        RESULT_DROP_PATTERN = Pattern.compile("drop result (\\w+)");
+        RESULT_SHOW_PATTERN = Pattern.compile("show result (\\w+)");
+        RESULT_STORE_PATTERN = Pattern.compile("store cities from ([\\sa-zA-Z]+?) in (\\d+) jumps as (\\w+)");
+        SHORTEST_LOOP_PATTERN = Pattern.compile("shortest loop from ([\\sa-zA-Z]+)");
         ROUTE_SEARCH_PATTERN = Pattern.compile("can I teleport from ([\\sa-zA-Z]+?) to ([\\sa-zA-Z]+)");
     }
 
@@ -80,19 +111,93 @@ public class StringParser
         switch (first)
         {
         case "cities":
-            line = this.parseCitySearchLine(trimmed);
+            line = trimmed.indexOf(',') < 0 ? this.parseCitySearchLine(trimmed)
+                    : this.parseMultiCitySearchLine(trimmed);
+            break;
+
+        case "count":
+            line = this.parseCityCountLine(trimmed);
             break;
 
         case "can":
             line = this.parseRouteSearchLine(trimmed);
             break;
 
+        case "jumps":
+            line = this.parseDistanceSearchLine(trimmed);
+            break;
+
+        case "index":
+            line = this.parseDistanceIndexLine(trimmed);
+            break;
+
+        case "save":
+            line = this.parseDistanceFileLine(trimmed, DISTANCE_SAVE_PATTERN, Command.DISTANCE_SAVE);
+            break;
+
+        case "load":
+            line = this.parseDistanceFileLine(trimmed, DISTANCE_LOAD_PATTERN, Command.DISTANCE_LOAD);
+            break;
+
+        case "freeze":
+            line = this.parseFreezeLine(trimmed);
+            break;
+
         case "loop":
-            line = this.parseLoopSearchLine(trimmed);
+            line = "loop report".equals(trimmed) ? new LoopReportLine() : this.parseLoopSearchLine(trimmed);
+            break;
+
+        case "component":
+            line = this.parseComponentSearchLine(trimmed);
+            break;
+
+        case "components":
+            line = this.parseComponentSummaryLine(trimmed);
+            break;
+
+        case "remove":
+            line = this.parseRemoveRouteLine(trimmed);
             break;
 
         case "show":
-            line = this.createShowRouteLine();
+            line = trimmed.startsWith("show result") ? this.parseResultLine(trimmed, RESULT_SHOW_PATTERN,
+                    Command.RESULT_SHOW) : this.createShowRouteLine(trimmed);
+            break;
+
+        case "store":
+            line = this.parseResultStoreLine(trimmed);
+            break;
+
+        case "drop":
+            line = this.parseResultLine(trimmed, RESULT_DROP_PATTERN, Command.RESULT_DROP);
+            break;
+
+        case "results":
+            line = "results".equals(trimmed) ? new ResultLine(Command.RESULT_LIST, null) : null;
+            break;
+
+        case "shortest":
+            line = this.parseShortestLoopLine(trimmed);
+            break;
+
+        case "critical":
+            line = "critical report".equals(trimmed) ? new CriticalReportLine() : null;
+            break;
+
+        case "stats":
+            line = this.parseStatsLine(trimmed);
+            break;
+
+        case "explain":
+            line = this.parseExplainLine(trimmed.substring(index));
+            break;
+
+        case "watch":
+            line = this.parseWatchLine(trimmed.substring(index), Command.WATCH);
+            break;
+
+        case "unwatch":
+            line = this.parseWatchLine(trimmed.substring(index), Command.UNWATCH);
             break;
 
         case "quit":
@@ -115,28 +220,154 @@ public class StringParser
         if (m.matches())
         {
             String cityName = m.group(1);
-            String jumpString = m.group(2);
 
-            Integer jumps = null;
-            try
+            Integer jumps = this.parseNumber(m.group(2), "jumps");
+            Integer limit = Integer.MAX_VALUE;
+            if (m.group(3) != null)
+            {
+                limit = this.parseNumber(m.group(3), "cities");
+            }
+
+            if (jumps != null && limit != null)
+            {
+                City city = this.getCity(cityName);
+                line = new CitySearchLine(city, jumps, limit);
+            }
+        }
+
+        return line;
+    }
+
+    private MultiCitySearchLine parseMultiCitySearchLine(String string)
+    {
+        MultiCitySearchLine line = null;
+
+        Matcher m = MULTI_CITY_SEARCH_PATTERN.matcher(string);
+        if (m.matches())
+        {
+            Integer jumps = this.parseNumber(m.group(2), "jumps");
+            Integer limit = Integer.MAX_VALUE;
+            if (m.group(3) != null)
             {
-                jumps = Integer.valueOf(jumpString);
+                limit = this.parseNumber(m.group(3), "cities");
             }
-            catch (NumberFormatException ex)
+
+            if (jumps != null && limit != null)
             {
-                LOG.log(Level.SEVERE, "unable to parse number of jumps: " + jumpString, ex);
+                List<City> cities = new ArrayList<>();
+                for (String cityName : m.group(1).split(","))
+                {
+                    cities.add(this.getCity(cityName.trim()));
+                }
+                line = new MultiCitySearchLine(cities, jumps, limit);
             }
+        }
+
+        return line;
+    }
+
+    private CityCountLine parseCityCountLine(String string)
+    {
+        CityCountLine line = null;
+
+        Matcher m = CITY_COUNT_PATTERN.matcher(string);
+        if (m.matches())
+        {
+            Integer jumps = this.parseNumber(m.group(2), "jumps");
 
             if (jumps != null)
             {
-                City city = this.getCity(cityName);
-                line = new CitySearchLine(city, jumps);
+                City city = this.getCity(m.group(1));
+                line = new CityCountLine(city, jumps);
             }
         }
 
         return line;
     }
 
+    private ComponentSearchLine parseComponentSearchLine(String string)
+    {
+        ComponentSearchLine line = null;
+
+        Matcher m = COMPONENT_SEARCH_PATTERN.matcher(string);
+        if (m.matches())
+        {
+            String cityName = m.group(1);
+
+            City city = this.getCity(cityName);
+            line = new ComponentSearchLine(city);
+        }
+
+        return line;
+    }
+
+    private ComponentSummaryLine parseComponentSummaryLine(String string)
+    {
+        ComponentSummaryLine line = null;
+
+        if ("components".equals(string))
+        {
+            line = new ComponentSummaryLine();
+        }
+
+        return line;
+    }
+
+    private DistanceSearchLine parseDistanceSearchLine(String string)
+    {
+        DistanceSearchLine line = null;
+
+        Matcher m = DISTANCE_SEARCH_PATTERN.matcher(string);
+        if (m.matches())
+        {
+            City fromCity = this.getCity(m.group(1));
+            City toCity = this.getCity(m.group(2));
+
+            line = new DistanceSearchLine(fromCity, toCity);
+        }
+
+        return line;
+    }
+
+    private DistanceIndexLine parseDistanceIndexLine(String string)
+    {
+        DistanceIndexLine line = null;
+
+        if ("index distances".equals(string))
+        {
+            line = new DistanceIndexLine(Command.DISTANCE_INDEX, null);
+        }
+
+        return line;
+    }
+
+    private FreezeLine parseFreezeLine(String string)
+    {
+        FreezeLine line = null;
+
+        Matcher m = FREEZE_PATTERN.matcher(string);
+        if (m.matches())
+        {
+            String order = m.group(2) == null ? "bfs" : m.group(2);
+            line = new FreezeLine(VertexOrder.valueOf(order.toUpperCase(Locale.ROOT)), m.group(1) != null);
+        }
+
+        return line;
+    }
+
+    private DistanceIndexLine parseDistanceFileLine(String string, Pattern pattern, Command command)
+    {
+        DistanceIndexLine line = null;
+
+        Matcher m = pattern.matcher(string);
+        if (m.matches())
+        {
+            line = new DistanceIndexLine(command, m.group(1));
+        }
+
+        return line;
+    }
+
     private LoopSearchLine parseLoopSearchLine(String string)
     {
         LoopSearchLine line = null;
@@ -174,17 +405,94 @@ public class StringParser
         return line;
     }
 
+    private RemoveRouteLine parseRemoveRouteLine(String string)
+    {
+        RemoveRouteLine line = null;
+
+        NewRouteLine newRouteLine = this.parseNewRouteLine(string.substring("remove".length()).trim());
+        if (newRouteLine != null)
+        {
+            line = new RemoveRouteLine(newRouteLine.route);
+        }
+
+        return line;
+    }
+
+    private ShortestLoopLine parseShortestLoopLine(String string)
+    {
+        ShortestLoopLine line = null;
+
+        Matcher m = SHORTEST_LOOP_PATTERN.matcher(string);
+        if (m.matches())
+        {
+            line = new ShortestLoopLine(this.getCity(m.group(1)));
+        }
+
+        return line;
+    }
+
+    private StatsLine parseStatsLine(String string)
+    {
+        StatsLine line = null;
+
+        if ("stats".equals(string))
+        {
+            line = new StatsLine();
+        }
+
+        return line;
+    }
+
+    private ExplainLine parseExplainLine(String string)
+    {
+        ExplainLine line = null;
+
+        Line query = string.isBlank() ? null : this.parse(string);
+        if (query != null && query.command != Command.EXPLAIN)
+        {
+            line = new ExplainLine(query);
+        }
+
+        return line;
+    }
+
+    private WatchLine parseWatchLine(String string, Command command)
+    {
+        WatchLine line = null;
+
+        Line query = string.isBlank() ? null : this.parse(string);
+        if (query instanceof RouteSearchLine || query instanceof LoopSearchLine)
+        {
+            line = new WatchLine(command, query);
+        }
+
+        return line;
+    }
+
     private QuitLine createQuitLine()
     {
         return new QuitLine();
     }
 
-    private RouteSearchLine parseRouteSearchLine(String string)
+    private Line parseRouteSearchLine(String string)
     {
-        RouteSearchLine line = null;
+        Line line = null;
 
         Matcher m = ROUTE_SEARCH_PATTERN.matcher(string);
-        if (m.matches())
+        Matcher bounded = BOUNDED_ROUTE_SEARCH_PATTERN.matcher(string);
+        if (bounded.matches())
+        {
+            Integer jumps = this.parseNumber(bounded.group(3), "jumps");
+
+            if (jumps != null)
+            {
+                City fromCity = this.getCity(bounded.group(1));
+                City toCity = this.getCity(bounded.group(2));
+
+                line = new BoundedRouteSearchLine(fromCity, toCity, jumps);
+            }
+        }
+        else if (m.matches())
         {
             String fromCityName = m.group(1);
             String toCityName = m.group(2);
@@ -198,9 +506,63 @@ public class StringParser
         return line;
     }
 
-    private ShowRouteLine createShowRouteLine()
+    private Line parseResultStoreLine(String string)
     {
-        return new ShowRouteLine();
+        Line line = null;
+
+        Matcher m = RESULT_STORE_PATTERN.matcher(string);
+        if (m.matches())
+        {
+            Integer jumps = this.parseNumber(m.group(2), "jumps");
+            if (jumps != null)
+            {
+                line = new ResultStoreLine(m.group(3), this.getCity(m.group(1)), jumps);
+            }
+        }
+        else
+        {
+            m = RESULT_COMBINE_PATTERN.matcher(string);
+            if (m.matches())
+            {
+                line = new ResultCombineLine(m.group(4), m.group(1), SetOperation.of(m.group(2)), m.group(3));
+            }
+        }
+
+        return line;
+    }
+
+    private ResultLine parseResultLine(String string, Pattern pattern, Command command)
+    {
+        ResultLine line = null;
+
+        Matcher m = pattern.matcher(string);
+        if (m.matches())
+        {
+            line = new ResultLine(command, m.group(1));
+        }
+
+        return line;
+    }
+
+    private ShowRouteLine createShowRouteLine(String string)
+    {
+        return new ShowRouteLine(string.endsWith(" sorted"));
+    }
+
+    private Integer parseNumber(String string, String what)
+    {
+        Integer number = null;
+
+        try
+        {
+            number = Integer.valueOf(string);
+        }
+        catch (NumberFormatException ex)
+        {
+            LOG.log(Level.SEVERE, "unable to parse number of " + what + ": " + string, ex);
+        }
+
+        return number;
     }
 
     private City getCity(String cityName)
@@ -213,9 +575,6 @@ public class StringParser
         City fromCity = this.getCity(from);
         City toCity = this.getCity(to);
 
-        Route key = new Route(fromCity, toCity);
-        Route route = this.routeMap.computeIfAbsent(key, (r) -> r);
-
-        return route;
+        return new Route(fromCity, toCity);
     }
 }
@@ -0,0 +1,67 @@
+/**
+ * WatchLine.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.parser;
+
+import java.util.Objects;
+
+/**
+ * Represents a line starting or stopping a watch on a route or loop search.
+ */
+public final class WatchLine extends Line
+{
+    /** The search to watch, a route search or a loop search. */
+    public final Line query;
+
+    /**
+     * Creates a new line representation.
+     *
+     * @param command the line type, {@link Command#WATCH} or
+     *                {@link Command#UNWATCH}
+     * @param query   the search to watch, a {@link RouteSearchLine} or a
+     *                {@link LoopSearchLine}
+     */
+    public WatchLine(Command command, Line query)
+    {
+        super(command);
+
+        Objects.requireNonNull(command, "command cannot be null");
+        Objects.requireNonNull(query, "query cannot be null");
+        if (command != Command.WATCH && command != Command.UNWATCH)
+        {
+            throw new IllegalArgumentException("not a watch command: " + command);
+        }
+        if (!(query instanceof RouteSearchLine) && !(query instanceof LoopSearchLine))
+        {
+            throw new IllegalArgumentException("only route and loop searches can be watched");
+        }
+
+        this.query = query;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WatchLine [query=" + this.query + ", command=" + this.command + "]";
+    }
+}
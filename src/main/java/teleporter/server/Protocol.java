@@ -0,0 +1,307 @@
+/**
+ * Protocol.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.server;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Provides the framing of the line protocol spoken by {@link Server}.
+ * <p>
+ * Each request is a single line. The response is zero or more lines followed
+ * by a line containing a single period. Response lines that begin with a
+ * period are sent with an extra leading period, which the reader removes.
+ * <p>
+ * Between responses the server may push notices, single lines beginning with
+ * <code>!</code> and not followed by a period line, such as the changes of
+ * watched answers. Response lines beginning with <code>!</code> get a leading
+ * period like those beginning with a period.
+ * <p>
+ * Lines beginning with <code>@</code> are control requests:
+ * <ul>
+ * <li><code>@load N</code> is followed by N lines which are parsed without
+ * individual responses</li>
+ * <li><code>@neighbors A\tB...</code> responds with one line per city listing
+ * its neighbors separated by tabs</li>
+ * <li><code>@shutdown</code> stops the server</li>
+ * </ul>
+ */
+public final class Protocol
+{
+    /** The line ending a response. */
+    public static final String END = ".";
+    /** Prefix of a bulk load request. */
+    public static final String LOAD = "@load ";
+    /** Prefix of a neighbor request. */
+    public static final String NEIGHBORS = "@neighbors ";
+    /** The shutdown request. */
+    public static final String SHUTDOWN = "@shutdown";
+    /** Prefix of a notice pushed between responses. */
+    public static final String NOTICE = "!";
+    /** Separates city names within a control line. */
+    public static final char SEPARATOR = '\t';
+
+    private Protocol()
+    {
+    }
+
+    /**
+     * Writes a single response line.
+     *
+     * @param writer the destination
+     * @param line   the line
+     * @throws IOException if unable to write
+     */
+    public static void writeLine(Writer writer, String line) throws IOException
+    {
+        if (line.startsWith(END) || line.startsWith(NOTICE))
+        {
+            writer.write(END);
+        }
+
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    /**
+     * Writes a notice between responses and flushes the writer.
+     *
+     * @param writer the destination
+     * @param notice the notice, without its prefix
+     * @throws IOException if unable to write
+     */
+    public static void writeNotice(Writer writer, String notice) throws IOException
+    {
+        writer.write(NOTICE);
+        writer.write(notice);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * Wraps a writer so that free form response text, such as a route listing,
+     * is escaped the same way as {@link #writeLine(Writer, String)}.
+     *
+     * @param writer the destination
+     * @return the escaping writer
+     */
+    public static Writer escaping(Writer writer)
+    {
+        return new EscapingWriter(writer);
+    }
+
+    /**
+     * Writes the end of a response and flushes the writer.
+     *
+     * @param writer the destination
+     * @throws IOException if unable to write
+     */
+    public static void writeEnd(Writer writer) throws IOException
+    {
+        writer.write(END);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * Reads a complete response.
+     *
+     * @param reader the source
+     * @return the response lines
+     * @throws IOException if unable to read or the connection closed early
+     */
+    public static List<String> readResponse(BufferedReader reader) throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+
+        readResponse(reader, lines::add);
+
+        return lines;
+    }
+
+    /**
+     * Reads a complete response, passing each line to a consumer as it
+     * arrives.
+     *
+     * @param reader   the source
+     * @param consumer receives the response lines
+     * @throws IOException if unable to read or the connection closed early
+     */
+    public static void readResponse(BufferedReader reader, Consumer<String> consumer) throws IOException
+    {
+        readResponse(reader, consumer, (notice) ->
+        {
+        });
+    }
+
+    /**
+     * Reads a complete response, passing each line to a consumer as it
+     * arrives and the notices read before or within it to another.
+     *
+     * @param reader   the source
+     * @param consumer receives the response lines
+     * @param notices  receives the notices, without their prefix
+     * @throws IOException if unable to read or the connection closed early
+     */
+    public static void readResponse(BufferedReader reader, Consumer<String> consumer, Consumer<String> notices)
+            throws IOException
+    {
+        String line = reader.readLine();
+        while (line != null && !END.equals(line))
+        {
+            if (line.startsWith(NOTICE))
+            {
+                notices.accept(line.substring(NOTICE.length()));
+            }
+            else
+            {
+                consumer.accept(line.startsWith(END) ? line.substring(END.length()) : line);
+            }
+            line = reader.readLine();
+        }
+
+        if (line == null)
+        {
+            throw new EOFException("connection closed before end of response");
+        }
+    }
+
+    /**
+     * Reads the next line of a response, skipping notices, so that several
+     * responses can be read a line at a time side by side.
+     *
+     * @param reader the source
+     * @return the line, or null once the response ended
+     * @throws IOException if unable to read or the connection closed early
+     */
+    public static String readResponseLine(BufferedReader reader) throws IOException
+    {
+        String line = reader.readLine();
+        while (line != null && line.startsWith(NOTICE))
+        {
+            line = reader.readLine();
+        }
+
+        if (line == null)
+        {
+            throw new EOFException("connection closed before end of response");
+        }
+
+        return END.equals(line) ? null : line.startsWith(END) ? line.substring(END.length()) : line;
+    }
+
+    /**
+     * Joins city names into a control line field.
+     *
+     * @param names the names
+     * @return the joined names
+     */
+    public static String join(List<String> names)
+    {
+        StringBuilder b = new StringBuilder();
+        for (String name : names)
+        {
+            if (b.length() > 0)
+            {
+                b.append(SEPARATOR);
+            }
+
+            b.append(name);
+        }
+
+        return b.toString();
+    }
+
+    /**
+     * Splits a control line field into city names.
+     *
+     * @param string the field
+     * @return the names
+     */
+    public static List<String> split(String string)
+    {
+        List<String> names = new ArrayList<>();
+        if (!string.isEmpty())
+        {
+            int start = 0;
+            int index = string.indexOf(SEPARATOR);
+            while (index != -1)
+            {
+                names.add(string.substring(start, index));
+                start = index + 1;
+                index = string.indexOf(SEPARATOR, start);
+            }
+
+            names.add(string.substring(start));
+        }
+
+        return names;
+    }
+
+    private static final class EscapingWriter extends FilterWriter
+    {
+        private boolean lineStart = true;
+
+        EscapingWriter(Writer writer)
+        {
+            super(writer);
+        }
+
+        @Override
+        public void write(int c) throws IOException
+        {
+            if (this.lineStart && (c == END.charAt(0) || c == NOTICE.charAt(0)))
+            {
+                this.out.write(END.charAt(0));
+            }
+
+            this.out.write(c);
+            this.lineStart = c == '\n';
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException
+        {
+            for (int i = off; i < off + len; i++)
+            {
+                this.write(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException
+        {
+            for (int i = off; i < off + len; i++)
+            {
+                this.write(str.charAt(i));
+            }
+        }
+    }
+}
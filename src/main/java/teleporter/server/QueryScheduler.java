@@ -0,0 +1,460 @@
+/**
+ * QueryScheduler.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.server;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import teleporter.Graph;
+import teleporter.data.City;
+import teleporter.metrics.LatencyHistogram;
+import teleporter.parser.BoundedRouteSearchLine;
+import teleporter.parser.CityCountLine;
+import teleporter.parser.CitySearchLine;
+import teleporter.parser.DistanceSearchLine;
+import teleporter.parser.Line;
+import teleporter.parser.LoopSearchLine;
+import teleporter.parser.MultiCitySearchLine;
+import teleporter.parser.ResultStoreLine;
+import teleporter.parser.RouteSearchLine;
+import teleporter.parser.ShortestLoopLine;
+
+/**
+ * Runs queries against a graph on two bounded pools, one for cheap queries
+ * such as label lookups and one for expensive searches, so that cheap queries
+ * never wait behind large searches. The cost of a query is estimated, in
+ * routes followed, from the degree of its cities, the size of their component
+ * when known, and its jump limit.
+ * <p>
+ * Queries hold a shared lock while they run; changes to the graph hold the
+ * exclusive lock. Submitting blocks while a pool and its queue are full. An
+ * index requested by a query is built after it, on the expensive pool under
+ * the exclusive lock, so a cheap query never pays for the build.
+ */
+public class QueryScheduler implements Closeable
+{
+    private static final Logger LOG = Logger.getLogger(QueryScheduler.class.getName());
+
+    private final Graph graph;
+    private final long cheapCost;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private final Pool cheap;
+    private final Pool expensive;
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param graph            the graph being queried
+     * @param cheapThreads     the number of threads running cheap queries
+     * @param expensiveThreads the number of threads running expensive queries
+     * @param queueSize        the number of queries each pool may queue before
+     *                         submitting blocks
+     * @param cheapCost        the highest estimated cost of a cheap query
+     */
+    public QueryScheduler(Graph graph, int cheapThreads, int expensiveThreads, int queueSize, long cheapCost)
+    {
+        Objects.requireNonNull(graph, "graph cannot be null");
+
+        if (cheapThreads < 1 || expensiveThreads < 1)
+        {
+            throw new IllegalArgumentException("thread counts must be positive");
+        }
+
+        if (queueSize < 0)
+        {
+            throw new IllegalArgumentException("queueSize cannot be negative");
+        }
+
+        this.graph = graph;
+        this.cheapCost = cheapCost;
+        this.cheap = new Pool("cheap", cheapThreads, queueSize);
+        this.expensive = new Pool("expensive", expensiveThreads, queueSize);
+    }
+
+    /**
+     * Estimates the number of routes a query follows. Queries answered from
+     * labels cost one. Estimate within {@link #read(Callable)} if the graph
+     * may be changing.
+     *
+     * @param line the query
+     * @return the estimated cost
+     */
+    public long estimateCost(Line line)
+    {
+        Objects.requireNonNull(line, "line cannot be null");
+
+        long cost = 1;
+
+        switch (line.command)
+        {
+        case ROUTE_SEARCH:
+            RouteSearchLine routeLine = (RouteSearchLine) line;
+            if (this.graph.getKnownComponentSize(routeLine.from) < 0)
+            {
+                cost = this.estimateReach(routeLine.from, Integer.MAX_VALUE);
+            }
+            break;
+
+        case BOUNDED_ROUTE_SEARCH:
+            BoundedRouteSearchLine boundedLine = (BoundedRouteSearchLine) line;
+            if (!this.graph.isDistanceIndexed())
+            {
+                int half = (boundedLine.maxJumps + 1) / 2;
+                cost = this.estimateReach(boundedLine.from, half) + this.estimateReach(boundedLine.to, half);
+            }
+            break;
+
+        case DISTANCE_SEARCH:
+            if (!this.graph.isDistanceIndexed())
+            {
+                cost = this.estimateReach(((DistanceSearchLine) line).from, Integer.MAX_VALUE);
+            }
+            break;
+
+        case CITY_SEARCH:
+            CitySearchLine cityLine = (CitySearchLine) line;
+            cost = Math.min(this.estimateReach(cityLine.originCity, cityLine.maxJumps),
+                    (long) cityLine.limit * Math.max(1, this.getAverageDegree()));
+            break;
+
+        case MULTI_CITY_SEARCH:
+            MultiCitySearchLine multiLine = (MultiCitySearchLine) line;
+            long reach = 0;
+            for (City city : multiLine.originCities)
+            {
+                reach += this.estimateReach(city, multiLine.maxJumps);
+            }
+            cost = Math.min(Math.min(reach, 2 * this.graph.getRouteCount()),
+                    (long) multiLine.limit * Math.max(1, this.getAverageDegree()));
+            break;
+
+        case CITY_COUNT:
+            CityCountLine countLine = (CityCountLine) line;
+            cost = this.estimateReach(countLine.originCity, countLine.maxJumps);
+            break;
+
+        case RESULT_STORE:
+            ResultStoreLine storeLine = (ResultStoreLine) line;
+            cost = this.estimateReach(storeLine.originCity, storeLine.maxJumps);
+            break;
+
+        case LOOP_SEARCH:
+            cost = this.estimateReach(((LoopSearchLine) line).city, Integer.MAX_VALUE);
+            break;
+
+        case SHORTEST_LOOP:
+            cost = this.estimateReach(((ShortestLoopLine) line).city, Integer.MAX_VALUE);
+            break;
+
+        case COMPONENT_SUMMARY:
+        case COMPONENT_SEARCH:
+            cost = 2 * this.graph.getRouteCount();
+            break;
+
+        default:
+            break;
+        }
+
+        return Math.max(1, cost);
+    }
+
+    /**
+     * Determines if a query of a given cost runs on the cheap pool.
+     *
+     * @param cost the estimated cost
+     * @return if the query is cheap
+     */
+    public boolean isCheap(long cost)
+    {
+        return cost <= this.cheapCost;
+    }
+
+    /**
+     * Runs a query on the pool matching its estimated cost while holding the
+     * shared lock, blocking while that pool is full.
+     *
+     * @param <T>   the result type
+     * @param line  the query being run
+     * @param query runs the query
+     * @return the result, completed exceptionally if the query failed or the
+     *         scheduler is closed
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public <T> CompletableFuture<T> submit(Line line, Callable<T> query) throws InterruptedException
+    {
+        Objects.requireNonNull(line, "line cannot be null");
+        Objects.requireNonNull(query, "query cannot be null");
+
+        long cost;
+        this.lock.readLock().lockInterruptibly();
+        try
+        {
+            cost = this.estimateCost(line);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+
+        return this.submit(cost, query);
+    }
+
+    /**
+     * Runs a query of a known cost on the matching pool while holding the
+     * shared lock, blocking while that pool is full.
+     *
+     * @param <T>   the result type
+     * @param cost  the estimated number of routes the query follows
+     * @param query runs the query
+     * @return the result, completed exceptionally if the query failed or the
+     *         scheduler is closed
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public <T> CompletableFuture<T> submit(long cost, Callable<T> query) throws InterruptedException
+    {
+        Objects.requireNonNull(query, "query cannot be null");
+
+        return (this.isCheap(cost) ? this.cheap : this.expensive).submit(() ->
+        {
+            try
+            {
+                return this.read(query);
+            }
+            finally
+            {
+                this.buildRequestedIndexes();
+            }
+        });
+    }
+
+    /**
+     * Runs a query on the calling thread while holding the shared lock.
+     *
+     * @param <T>   the result type
+     * @param query the query
+     * @return the result
+     * @throws Exception if the query failed
+     */
+    public <T> T read(Callable<T> query) throws Exception
+    {
+        return call(this.lock.readLock(), query);
+    }
+
+    /**
+     * Changes the graph on the calling thread while holding the exclusive
+     * lock.
+     *
+     * @param <T>    the result type
+     * @param change the change
+     * @return the result
+     * @throws Exception if the change failed
+     */
+    public <T> T write(Callable<T> change) throws Exception
+    {
+        return call(this.lock.writeLock(), change);
+    }
+
+    /**
+     * Gets the time cheap queries spent queued and running.
+     *
+     * @return the latencies in nanoseconds
+     */
+    public LatencyHistogram getCheapLatency()
+    {
+        return this.cheap.latency;
+    }
+
+    /**
+     * Gets the time expensive queries spent queued and running.
+     *
+     * @return the latencies in nanoseconds
+     */
+    public LatencyHistogram getExpensiveLatency()
+    {
+        return this.expensive.latency;
+    }
+
+    /**
+     * Stops the pools once queued queries have run.
+     */
+    @Override
+    public void close()
+    {
+        this.cheap.executor.shutdown();
+        this.expensive.executor.shutdown();
+    }
+
+    /**
+     * Queues one build of the indexes requested by queries, unless one is
+     * already queued. Requests are only made by queries, which cannot run
+     * while the build holds the exclusive lock.
+     */
+    private void buildRequestedIndexes()
+    {
+        if (this.graph.hasRequestedIndexes() && this.building.compareAndSet(false, true))
+        {
+            try
+            {
+                this.expensive.executor.execute(() ->
+                {
+                    try
+                    {
+                        this.write(() ->
+                        {
+                            this.graph.buildRequestedIndexes();
+                            return null;
+                        });
+                    }
+                    catch (Exception ex)
+                    {
+                        LOG.log(Level.WARNING, "unable to build requested indexes", ex);
+                    }
+                    finally
+                    {
+                        this.building.set(false);
+                    }
+                });
+            }
+            catch (RejectedExecutionException ex)
+            {
+                // closing, the queries that requested the build are done
+                this.building.set(false);
+            }
+        }
+    }
+
+    private long estimateReach(City city, int maxJumps)
+    {
+        long degree = this.graph.getDegree(city);
+        long average = Math.max(1, this.getAverageDegree());
+
+        long limit = 2 * this.graph.getRouteCount();
+        long componentSize = this.graph.getKnownComponentSize(city);
+        if (componentSize >= 0)
+        {
+            limit = Math.min(limit, componentSize * average);
+        }
+
+        long reach = degree;
+        for (int jumps = 1; jumps < maxJumps && reach < limit; jumps++)
+        {
+            reach = reach > limit / average ? limit : reach * average;
+        }
+
+        return Math.min(reach, limit);
+    }
+
+    private long getAverageDegree()
+    {
+        int cities = this.graph.getCityCount();
+
+        return cities == 0 ? 0 : (2 * this.graph.getRouteCount() + cities - 1) / cities;
+    }
+
+    private static <T> T call(Lock lock, Callable<T> callable) throws Exception
+    {
+        Objects.requireNonNull(callable, "callable cannot be null");
+
+        lock.lockInterruptibly();
+        try
+        {
+            return callable.call();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private static final class Pool
+    {
+        private final ThreadPoolExecutor executor;
+        private final Semaphore permits;
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Pool(String name, int threads, int queueSize)
+        {
+            AtomicInteger count = new AtomicInteger();
+
+            this.permits = new Semaphore(threads + queueSize);
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), (runnable) ->
+                    {
+                        Thread thread = new Thread(runnable, "teleporter-" + name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+
+        <T> CompletableFuture<T> submit(Callable<T> callable) throws InterruptedException
+        {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            long start = System.nanoTime();
+
+            this.permits.acquire();
+            try
+            {
+                this.executor.execute(() ->
+                {
+                    try
+                    {
+                        future.complete(callable.call());
+                    }
+                    catch (Exception | Error ex)
+                    {
+                        future.completeExceptionally(ex);
+                    }
+                    finally
+                    {
+                        this.permits.release();
+                        this.latency.record(System.nanoTime() - start);
+                    }
+                });
+            }
+            catch (RejectedExecutionException ex)
+            {
+                this.permits.release();
+                future.completeExceptionally(ex);
+            }
+
+            return future;
+        }
+    }
+}
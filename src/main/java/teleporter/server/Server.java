@@ -0,0 +1,574 @@
+/**
+ * Server.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import teleporter.FeedFollower;
+import teleporter.Graph;
+import teleporter.Main;
+import teleporter.Options;
+import teleporter.Watch;
+import teleporter.data.City;
+import teleporter.parser.Line;
+import teleporter.storage.StorageType;
+
+/**
+ * Serves a single graph to clients over the {@link Protocol line protocol}.
+ * <p>
+ * Each connection reads requests on one thread and writes responses on
+ * another, so a client may send requests without waiting for responses.
+ * Queries run concurrently on the pools of a {@link QueryScheduler}, while
+ * changes to the graph wait for the earlier requests of their connection and
+ * then run alone. Responses are always written in the order of the requests.
+ */
+public class Server
+{
+    private static final Logger LOG = Logger.getLogger(Server.class.getName());
+
+    private static final String QUIT = "QUIT";
+    private static final int MAX_PENDING_REPLIES = 256;
+    private static final Reply CLOSE = (writer, listing) ->
+    {
+    };
+    private static final Reply NOTIFY = (writer, listing) ->
+    {
+    };
+
+    private final Graph graph;
+    private final Main main;
+    private final QueryScheduler scheduler;
+    private final ServerSocket serverSocket;
+
+    /**
+     * Creates a new server listening on the loopback interface with the
+     * default scheduler options.
+     *
+     * @param graph the graph to serve
+     * @param port  the port, or zero to pick a free port
+     * @throws IOException if unable to listen
+     */
+    public Server(Graph graph, int port) throws IOException
+    {
+        this(graph, port, new Options());
+    }
+
+    /**
+     * Creates a new server listening on the loopback interface.
+     * <p>
+     * Supported options:
+     * <ul>
+     * <li><code>--cheap-threads=N</code> the threads running cheap queries,
+     * by default one per processor</li>
+     * <li><code>--expensive-threads=N</code> the threads running expensive
+     * queries, by default one per four processors</li>
+     * <li><code>--queue=N</code> the queries each pool queues before reading
+     * more requests blocks, by default 1024</li>
+     * <li><code>--cheap-cost=N</code> the most routes a query is expected to
+     * follow and still be cheap, by default 10000</li>
+     * </ul>
+     *
+     * @param graph   the graph to serve
+     * @param port    the port, or zero to pick a free port
+     * @param options the scheduler options
+     * @throws IOException if unable to listen
+     */
+    public Server(Graph graph, int port, Options options) throws IOException
+    {
+        Objects.requireNonNull(graph, "graph cannot be null");
+        Objects.requireNonNull(options, "options cannot be null");
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        int cheapThreads = Integer.parseInt(options.get("cheap-threads", String.valueOf(processors)));
+        int expensiveThreads = Integer.parseInt(
+                options.get("expensive-threads", String.valueOf(Math.max(1, processors / 4))));
+        int queueSize = Integer.parseInt(options.get("queue", "1024"));
+        long cheapCost = Long.parseLong(options.get("cheap-cost", "10000"));
+
+        this.graph = graph;
+        this.main = new Main(graph);
+        this.scheduler = new QueryScheduler(graph, cheapThreads, expensiveThreads, queueSize, cheapCost);
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Entry point for running a server process.
+     * <p>
+     * Supported options:
+     * <ul>
+     * <li><code>--port=N</code> the port to listen on</li>
+     * <li><code>--storage=heap|off-heap</code> selects where the graph is
+     * stored</li>
+     * <li>the options of {@link #Server(Graph, int, Options)}</li>
+     * <li>the options of {@link Main#configure(Options)}</li>
+     * <li>the options of {@link Main#follow(Options, FeedFollower.Access)}</li>
+     * </ul>
+     *
+     * @param args the command line options
+     * @throws IOException if unable to listen
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Options options = new Options(args);
+
+        int port = Integer.parseInt(options.get("port", "0"));
+        StorageType storageType = options.getEnum("storage", StorageType.HEAP);
+
+        Server server = new Server(new Graph(storageType.create()), port, options);
+        server.main.configure(options);
+        server.main.getMetrics().register();
+        server.main.follow(options, new FeedFollower.Access()
+        {
+            @Override
+            public void read(Callable<?> task) throws Exception
+            {
+                server.scheduler.read(task);
+            }
+
+            @Override
+            public void write(Callable<?> task) throws Exception
+            {
+                server.scheduler.write(task);
+            }
+        });
+        LOG.info("listening on port " + server.getPort());
+
+        server.run();
+        server.main.close();
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return the port
+     */
+    public int getPort()
+    {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the scheduler running queries.
+     *
+     * @return the scheduler
+     */
+    public QueryScheduler getScheduler()
+    {
+        return this.scheduler;
+    }
+
+    /**
+     * Accepts connections until the server is shut down.
+     */
+    public void run()
+    {
+        while (!this.serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = this.serverSocket.accept();
+
+                Thread thread = new Thread(() -> this.serve(socket), "teleporter-client-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            }
+            catch (IOException ex)
+            {
+                if (!this.serverSocket.isClosed())
+                {
+                    LOG.log(Level.SEVERE, "unable to accept connection", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections and stops the scheduler once queued queries
+     * have run.
+     */
+    public void shutdown()
+    {
+        try
+        {
+            this.serverSocket.close();
+        }
+        catch (IOException ex)
+        {
+            LOG.log(Level.WARNING, "unable to close server socket", ex);
+        }
+
+        this.scheduler.close();
+    }
+
+    private void serve(Socket socket)
+    {
+        try (Socket s = socket;
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter writer = new PrintWriter(new BufferedWriter(
+                        new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))))
+        {
+            Connection connection = new Connection(writer);
+
+            Thread replier = new Thread(connection::reply, "teleporter-reply-" + s.getPort());
+            replier.setDaemon(true);
+            replier.start();
+
+            try
+            {
+                String line = reader.readLine();
+                while (line != null && connection.handle(line, reader))
+                {
+                    line = reader.readLine();
+                }
+            }
+            finally
+            {
+                this.unwatch(connection);
+                connection.send(CLOSE);
+                replier.join();
+            }
+        }
+        catch (IOException ex)
+        {
+            LOG.log(Level.WARNING, "connection failed", ex);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void unwatch(Connection connection)
+    {
+        try
+        {
+            this.scheduler.write(() -> this.graph.unwatch(connection.watcher));
+        }
+        catch (Exception ex)
+        {
+            LOG.log(Level.WARNING, "unable to stop watches", ex);
+        }
+    }
+
+    private static void respond(PrintWriter writer, String response) throws IOException
+    {
+        if (response != null && !QUIT.equals(response))
+        {
+            Protocol.writeLine(writer, response);
+        }
+    }
+
+    /**
+     * Writes a response once it is ready.
+     */
+    private interface Reply
+    {
+        void write(PrintWriter writer, PrintWriter listing) throws Exception;
+    }
+
+    /**
+     * Holds the responses of one connection waiting to be written, and the
+     * notices of its watches written between them.
+     */
+    private final class Connection
+    {
+        private final BlockingQueue<Reply> replies = new ArrayBlockingQueue<>(MAX_PENDING_REPLIES);
+        private final Queue<String> notices = new ConcurrentLinkedQueue<>();
+        private final Watch.Listener watcher = (watch, answer) -> this.notice(Main.describe(watch, answer));
+        private final AtomicInteger pending = new AtomicInteger();
+        private final PrintWriter writer;
+        private final PrintWriter listing;
+        private final PrintWriter noListing = new PrintWriter(Writer.nullWriter());
+
+        Connection(PrintWriter writer)
+        {
+            this.writer = writer;
+            this.listing = new PrintWriter(Protocol.escaping(writer));
+        }
+
+        boolean handle(String string, BufferedReader reader) throws IOException, InterruptedException
+        {
+            boolean open = true;
+
+            if (string.startsWith(Protocol.LOAD))
+            {
+                int count = Integer.parseInt(string.substring(Protocol.LOAD.length()).trim());
+
+                List<String> strings = new ArrayList<>(count);
+                List<Line> lines = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    String next = reader.readLine();
+                    if (next != null)
+                    {
+                        strings.add(next);
+                        lines.add(Server.this.main.parseLine(next));
+                    }
+                }
+
+                this.change(() ->
+                {
+                    for (int i = 0; i < strings.size(); i++)
+                    {
+                        Server.this.main.execute(strings.get(i), lines.get(i), this.listing);
+                    }
+
+                    return null;
+                });
+            }
+            else if (string.startsWith(Protocol.NEIGHBORS))
+            {
+                List<String> names = Protocol.split(string.substring(Protocol.NEIGHBORS.length()));
+
+                CompletableFuture<List<String>> future = Server.this.scheduler.submit(names.size(), () ->
+                {
+                    List<String> responses = new ArrayList<>(names.size());
+                    for (String name : names)
+                    {
+                        List<String> neighbors = new ArrayList<>();
+                        for (City city : Server.this.graph.getNeighbors(new City(name)))
+                        {
+                            neighbors.add(city.name);
+                        }
+
+                        responses.add(Protocol.join(neighbors));
+                    }
+
+                    return responses;
+                });
+
+                this.send((writer, listing) ->
+                {
+                    for (String response : future.get())
+                    {
+                        Protocol.writeLine(writer, response);
+                    }
+                });
+            }
+            else if (string.equals(Protocol.SHUTDOWN))
+            {
+                open = false;
+                this.send((writer, listing) -> Server.this.shutdown());
+            }
+            else
+            {
+                Line line = Server.this.main.parseLine(string);
+
+                if (line == null)
+                {
+                    this.send((writer, listing) -> respond(writer, Server.this.main.execute(string, null, listing)));
+                }
+                else
+                {
+                    open = this.handle(string, line);
+                }
+            }
+
+            return open;
+        }
+
+        private boolean handle(String string, Line line) throws InterruptedException
+        {
+            boolean open = true;
+
+            switch (line.command)
+            {
+            case NEW_ROUTE:
+            case REMOVE_ROUTE:
+            case DISTANCE_INDEX:
+            case DISTANCE_LOAD:
+            case FREEZE:
+                this.change(() -> Server.this.main.execute(string, line, this.listing));
+                break;
+
+            case WATCH:
+            case UNWATCH:
+                this.change(() -> Server.this.main.execute(string, line, this.listing, this.watcher));
+                break;
+
+            case SHOW_ROUTES:
+            case STATS:
+            case LOOP_REPORT:
+            case CRITICAL_REPORT:
+            case DISTANCE_SAVE:
+            case RESULT_COMBINE:
+            case RESULT_SHOW:
+            case RESULT_DROP:
+            case RESULT_LIST:
+                this.send((writer, listing) -> respond(writer,
+                        Server.this.scheduler.read(() -> Server.this.main.execute(string, line, listing))));
+                break;
+
+            case QUIT:
+                open = false;
+                this.send((writer, listing) -> respond(writer, Server.this.main.execute(string, line, listing)));
+                break;
+
+            default:
+                CompletableFuture<String> future = Server.this.scheduler.submit(line,
+                        () -> Server.this.main.execute(string, line, this.noListing));
+                this.send((writer, listing) -> respond(writer, future.get()));
+                break;
+            }
+
+            return open;
+        }
+
+        /**
+         * Changes the graph once the earlier requests of this connection are
+         * answered, so that they never see the change and later requests
+         * always do. The change runs on this thread when nothing is pending.
+         */
+        private void change(Callable<String> change) throws InterruptedException
+        {
+            if (this.pending.get() == 0)
+            {
+                String response = null;
+                try
+                {
+                    response = Server.this.scheduler.write(change);
+                }
+                catch (Exception ex)
+                {
+                    LOG.log(Level.WARNING, "unable to change graph", ex);
+                }
+
+                String result = response;
+                this.send((writer, listing) -> respond(writer, result));
+            }
+            else
+            {
+                FutureTask<String> task = new FutureTask<>(() -> Server.this.scheduler.write(change));
+                this.send((writer, listing) ->
+                {
+                    task.run();
+                    respond(writer, task.get());
+                });
+
+                try
+                {
+                    task.get();
+                }
+                catch (ExecutionException ex)
+                {
+                    // reported when the response is written
+                }
+            }
+        }
+
+        void send(Reply reply) throws InterruptedException
+        {
+            this.pending.incrementAndGet();
+            this.replies.put(reply);
+        }
+
+        /**
+         * Queues a notice without blocking, since it comes from the thread
+         * changing the graph. When the replies are full, the replier is busy
+         * and writes the notice after its next reply.
+         */
+        void notice(String notice)
+        {
+            this.notices.add(notice);
+            this.replies.offer(NOTIFY);
+        }
+
+        void reply()
+        {
+            try
+            {
+                for (Reply reply = this.replies.take(); reply != CLOSE; reply = this.replies.take())
+                {
+                    if (reply == NOTIFY)
+                    {
+                        this.writeNotices();
+                        continue;
+                    }
+
+                    try
+                    {
+                        reply.write(this.writer, this.listing);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        throw ex;
+                    }
+                    catch (ExecutionException ex)
+                    {
+                        LOG.log(Level.WARNING, "unable to answer request", ex.getCause());
+                    }
+                    catch (Exception ex)
+                    {
+                        LOG.log(Level.WARNING, "unable to answer request", ex);
+                    }
+
+                    Protocol.writeEnd(this.writer);
+                    this.pending.decrementAndGet();
+                    this.writeNotices();
+                }
+            }
+            catch (IOException ex)
+            {
+                LOG.log(Level.WARNING, "connection failed", ex);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void writeNotices() throws IOException
+        {
+            for (String notice = this.notices.poll(); notice != null; notice = this.notices.poll())
+            {
+                Protocol.writeNotice(this.writer, notice);
+            }
+        }
+    }
+}
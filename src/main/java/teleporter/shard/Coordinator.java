@@ -0,0 +1,700 @@
+/**
+ * Coordinator.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.shard;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import teleporter.Options;
+import teleporter.data.Route;
+import teleporter.parser.BoundedRouteSearchLine;
+import teleporter.parser.CityCountLine;
+import teleporter.parser.CitySearchLine;
+import teleporter.parser.Line;
+import teleporter.parser.LoopSearchLine;
+import teleporter.parser.NewRouteLine;
+import teleporter.parser.RemoveRouteLine;
+import teleporter.parser.RouteSearchLine;
+import teleporter.parser.ShowRouteLine;
+import teleporter.parser.StringParser;
+import teleporter.server.Protocol;
+
+/**
+ * Answers queries over a network split across several shard servers.
+ * <p>
+ * Queries about a component held entirely by one shard are forwarded to that
+ * shard unchanged. Queries about a component joined across shards by cross
+ * links are answered here with a breadth first search whose frontier is
+ * expanded by asking each shard for the neighbors of the cities it owns. A
+ * route search between cities in different components is answered without
+ * contacting any shard. Sorted route listings are merged from the sorted
+ * listings of the shards.
+ */
+public class Coordinator implements Closeable
+{
+    private static final String COLON = ": ";
+    private static final String YES = "yes";
+    private static final String NO = "no";
+    private static final String EMPTY = "";
+    private static final String QUIT = "QUIT";
+    private static final String ROUTE_SEPARATOR = " - ";
+    private static final String ROUTE_PREFIX = "";
+    private static final String REMOVE_PREFIX = "remove ";
+    private static final int BATCH_SIZE = 10_000;
+
+    private final StringParser parser = new StringParser();
+    private final ShardMap map;
+    private final List<ShardClient> shards;
+    private final List<List<String>> pending = new ArrayList<>();
+    private final PrintWriter out;
+
+    /**
+     * Creates a new coordinator.
+     *
+     * @param map    the shard assignments
+     * @param shards the connected shards, indexed by shard number
+     * @param out    receives route listings
+     */
+    public Coordinator(ShardMap map, List<ShardClient> shards, PrintWriter out)
+    {
+        Objects.requireNonNull(map, "map cannot be null");
+        Objects.requireNonNull(shards, "shards cannot be null");
+        Objects.requireNonNull(out, "out cannot be null");
+
+        if (shards.size() != map.getShards())
+        {
+            throw new IllegalArgumentException("expected " + map.getShards() + " shards but got " + shards.size());
+        }
+
+        this.map = map;
+        this.shards = shards;
+        this.out = out;
+
+        for (int i = 0; i < shards.size(); i++)
+        {
+            this.pending.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Entry point for running a sharded network from the command line. Queries
+     * are read from standard input as for {@link teleporter.Main}.
+     * <p>
+     * Supported options:
+     * <ul>
+     * <li><code>--shards=K</code> the number of shards to launch (default 2)</li>
+     * <li><code>--routes=file</code> a route file partitioned by connected
+     * component and loaded before reading standard input</li>
+     * <li><code>--ports=P1:P2...</code> connect to running shards instead of
+     * launching local JVMs</li>
+     * <li><code>--shard-heap=SIZE</code> the maximum heap of each launched
+     * shard, such as <code>4g</code></li>
+     * <li><code>--storage=heap|off-heap</code> the storage used by launched
+     * shards</li>
+     * </ul>
+     *
+     * @param args the command line options
+     * @throws IOException if unable to reach the shards or read input
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Options options = new Options(args);
+
+        String ports = options.get("ports", null);
+        String routes = options.get("routes", null);
+        int count = ports == null
+                ? Integer.parseInt(options.get("shards", "2"))
+                : ports.split(":").length;
+
+        ShardMap map = new ShardMap(count);
+        if (routes != null)
+        {
+            StringParser parser = new StringParser();
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(routes), StandardCharsets.UTF_8))
+            {
+                for (String string = reader.readLine(); string != null; string = reader.readLine())
+                {
+                    Line line = parser.parse(string);
+                    if (line instanceof NewRouteLine)
+                    {
+                        Route route = ((NewRouteLine) line).route;
+                        map.addRoute(route.from.name, route.to.name);
+                    }
+                }
+            }
+        }
+        map.partition();
+
+        List<ShardClient> shards = new ArrayList<>();
+        try
+        {
+            if (ports != null)
+            {
+                for (String port : ports.split(":"))
+                {
+                    shards.add(ShardClient.connect(Integer.parseInt(port)));
+                }
+            }
+            else
+            {
+                List<String> jvmOptions = new ArrayList<>();
+                String heap = options.get("shard-heap", null);
+                if (heap != null)
+                {
+                    jvmOptions.add("-Xmx" + heap);
+                }
+
+                List<String> serverOptions = Collections.singletonList(
+                        "--storage=" + options.get("storage", "heap"));
+
+                for (int i = 0; i < count; i++)
+                {
+                    shards.add(ShardClient.launch(jvmOptions, serverOptions));
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            for (ShardClient shard : shards)
+            {
+                shard.close();
+            }
+            throw ex;
+        }
+
+        try (Coordinator coordinator = new Coordinator(map, shards, new PrintWriter(System.out));
+                InputStreamReader isr = new InputStreamReader(System.in);
+                BufferedReader reader = new BufferedReader(isr))
+        {
+            if (routes != null)
+            {
+                coordinator.load(routes);
+            }
+
+            String string = reader.readLine();
+
+            while (string != null)
+            {
+                String response = coordinator.parse(string);
+
+                if (response != null)
+                {
+                    if (QUIT.equals(response))
+                    {
+                        break;
+                    }
+
+                    System.out.println(response);
+                }
+
+                string = reader.readLine();
+            }
+        }
+    }
+
+    /**
+     * Sends the routes of a partitioned route file to their shards.
+     *
+     * @param path the route file
+     * @throws IOException if unable to read the file or reach the shards
+     */
+    public void load(String path) throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8))
+        {
+            for (String string = reader.readLine(); string != null; string = reader.readLine())
+            {
+                Line line = this.parser.parse(string);
+                if (line instanceof NewRouteLine)
+                {
+                    Route route = ((NewRouteLine) line).route;
+                    this.queue(this.map.owner(route.from.name), ROUTE_PREFIX, route);
+                }
+            }
+        }
+
+        this.flush();
+    }
+
+    /**
+     * Parses a string and forwards it to the shards as needed.
+     *
+     * @param string the string to parse
+     * @return the response (may be null)
+     * @throws IOException if unable to reach the shards
+     */
+    public String parse(String string) throws IOException
+    {
+        Objects.requireNonNull(string, "string cannot be null");
+
+        Line line = this.parser.parse(string);
+
+        String response = null;
+
+        if (line != null)
+        {
+            if (line instanceof NewRouteLine)
+            {
+                Route route = ((NewRouteLine) line).route;
+                for (int shard : this.map.placeRoute(route.from.name, route.to.name))
+                {
+                    this.queue(shard, ROUTE_PREFIX, route);
+                }
+            }
+            else if (line instanceof RemoveRouteLine)
+            {
+                // components are never split in the shard map, which keeps
+                // its answers conservative: shards still search what changed
+                Route route = ((RemoveRouteLine) line).route;
+
+                int fromShard = this.map.owner(route.from.name);
+                int toShard = this.map.owner(route.to.name);
+                if (fromShard != -1)
+                {
+                    this.queue(fromShard, REMOVE_PREFIX, route);
+                }
+                if (toShard != -1 && toShard != fromShard)
+                {
+                    this.queue(toShard, REMOVE_PREFIX, route);
+                }
+            }
+            else
+            {
+                this.flush();
+
+                switch (line.command)
+                {
+                case SHOW_ROUTES:
+                    this.handleShowRoute(string, line instanceof ShowRouteLine && ((ShowRouteLine) line).sorted);
+                    break;
+
+                case CITY_SEARCH:
+                    CitySearchLine citySearchLine = (CitySearchLine) line;
+                    response = this.handleCitySearchRequest(string, citySearchLine.originCity.name,
+                            citySearchLine.maxJumps, citySearchLine.limit, false);
+                    break;
+
+                case CITY_COUNT:
+                    CityCountLine cityCountLine = (CityCountLine) line;
+                    response = this.handleCitySearchRequest(string, cityCountLine.originCity.name,
+                            cityCountLine.maxJumps, Integer.MAX_VALUE, true);
+                    break;
+
+                case ROUTE_SEARCH:
+                    RouteSearchLine routeSearchLine = (RouteSearchLine) line;
+                    response = this.handleRouteSearchRequest(string, routeSearchLine.from.name,
+                            routeSearchLine.to.name, Integer.MAX_VALUE);
+                    break;
+
+                case BOUNDED_ROUTE_SEARCH:
+                    BoundedRouteSearchLine boundedLine = (BoundedRouteSearchLine) line;
+                    response = this.handleRouteSearchRequest(string, boundedLine.from.name, boundedLine.to.name,
+                            boundedLine.maxJumps);
+                    break;
+
+                case LOOP_SEARCH:
+                    response = this.handleLoopSearchRequest(string, (LoopSearchLine) line);
+                    break;
+
+                case QUIT:
+                    response = QUIT;
+                    break;
+
+                default:
+                    response = "unhandled line: " + line;
+                    break;
+                }
+            }
+        }
+        else
+        {
+            response = "unable to parse line: " + string;
+        }
+
+        return response;
+    }
+
+    /**
+     * Stops launched shards and closes all connections.
+     *
+     * @throws IOException if unable to close a connection
+     */
+    @Override
+    public void close() throws IOException
+    {
+        IOException failure = null;
+
+        for (ShardClient shard : this.shards)
+        {
+            try
+            {
+                shard.close();
+            }
+            catch (IOException ex)
+            {
+                failure = ex;
+            }
+        }
+
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    private void queue(int shard, String prefix, Route route) throws IOException
+    {
+        List<String> lines = this.pending.get(shard);
+        lines.add(prefix + route.from.name + ROUTE_SEPARATOR + route.to.name);
+
+        if (lines.size() >= BATCH_SIZE)
+        {
+            this.flush();
+        }
+    }
+
+    private void flush() throws IOException
+    {
+        for (int shard = 0; shard < this.shards.size(); shard++)
+        {
+            List<String> lines = this.pending.get(shard);
+            if (!lines.isEmpty())
+            {
+                this.shards.get(shard).sendLoad(lines);
+            }
+        }
+
+        for (int shard = 0; shard < this.shards.size(); shard++)
+        {
+            List<String> lines = this.pending.get(shard);
+            if (!lines.isEmpty())
+            {
+                this.shards.get(shard).receive();
+                lines.clear();
+            }
+        }
+    }
+
+    private void handleShowRoute(String string, boolean sorted) throws IOException
+    {
+        for (ShardClient shard : this.shards)
+        {
+            shard.send(string);
+        }
+
+        if (sorted)
+        {
+            this.mergeSortedRoutes();
+        }
+        else
+        {
+            for (int i = 0; i < this.shards.size(); i++)
+            {
+                int shard = i;
+                this.shards.get(shard).receive((route) -> this.showRoute(new ShardRoute(shard, route)));
+            }
+        }
+
+        this.out.flush();
+    }
+
+    /**
+     * Merges the sorted listings of the shards, holding one route of each
+     * shard at a time.
+     */
+    private void mergeSortedRoutes() throws IOException
+    {
+        PriorityQueue<ShardRoute> heads = new PriorityQueue<>(this.shards.size());
+        for (int shard = 0; shard < this.shards.size(); shard++)
+        {
+            String route = this.shards.get(shard).receiveLine();
+            if (route != null)
+            {
+                heads.add(new ShardRoute(shard, route));
+            }
+        }
+
+        while (!heads.isEmpty())
+        {
+            ShardRoute head = heads.poll();
+            this.showRoute(head);
+
+            String route = this.shards.get(head.shard).receiveLine();
+            if (route != null)
+            {
+                heads.add(new ShardRoute(head.shard, route));
+            }
+        }
+    }
+
+    /**
+     * Shows a route listed by a shard, unless it is a cross link listed by
+     * both shards and this is the copy of the shard not owning its first
+     * city.
+     */
+    private void showRoute(ShardRoute route)
+    {
+        if (!this.map.isCrossLink(route.from, route.to) || this.map.owner(route.from) == route.shard)
+        {
+            this.out.println(route.line);
+        }
+    }
+
+    private String handleCitySearchRequest(String string, String origin, int maxJumps, int limit, boolean count)
+            throws IOException
+    {
+        int owner = this.map.owner(origin);
+
+        if (owner == -1)
+        {
+            return string + COLON + (count ? "0" : EMPTY);
+        }
+
+        if (!this.map.isSpanning(origin))
+        {
+            return this.forward(owner, string);
+        }
+
+        List<String> found = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        visited.add(origin);
+
+        List<String> frontier = Collections.singletonList(origin);
+        for (int jumps = 0; jumps < maxJumps && !frontier.isEmpty() && found.size() < limit; jumps++)
+        {
+            Map<String, List<String>> neighbors = this.neighbors(frontier);
+
+            List<String> next = new ArrayList<>();
+            for (String city : frontier)
+            {
+                for (String neighbor : neighbors.get(city))
+                {
+                    if (found.size() < limit && visited.add(neighbor))
+                    {
+                        found.add(neighbor);
+                        next.add(neighbor);
+                    }
+                }
+            }
+
+            frontier = next;
+        }
+
+        return string + COLON + (count ? String.valueOf(found.size()) : String.join(", ", found));
+    }
+
+    private String handleRouteSearchRequest(String string, String from, String to, int maxJumps)
+            throws IOException
+    {
+        if (!this.map.isConnected(from, to) || from.equals(to) || maxJumps == 0)
+        {
+            return string + COLON + NO;
+        }
+
+        if (!this.map.isSpanning(from))
+        {
+            return this.forward(this.map.owner(from), string);
+        }
+
+        Set<String> visited = new HashSet<>();
+        visited.add(from);
+
+        List<String> frontier = Collections.singletonList(from);
+        for (int jumps = 0; jumps < maxJumps && !frontier.isEmpty(); jumps++)
+        {
+            Map<String, List<String>> neighbors = this.neighbors(frontier);
+
+            List<String> next = new ArrayList<>();
+            for (String city : frontier)
+            {
+                for (String neighbor : neighbors.get(city))
+                {
+                    if (neighbor.equals(to))
+                    {
+                        return string + COLON + YES;
+                    }
+
+                    if (visited.add(neighbor))
+                    {
+                        next.add(neighbor);
+                    }
+                }
+            }
+
+            frontier = next;
+        }
+
+        return string + COLON + NO;
+    }
+
+    private String handleLoopSearchRequest(String string, LoopSearchLine line) throws IOException
+    {
+        String origin = line.city.name;
+        int owner = this.map.owner(origin);
+
+        if (owner == -1)
+        {
+            return string + COLON + NO;
+        }
+
+        if (!this.map.isSpanning(origin))
+        {
+            return this.forward(owner, string);
+        }
+
+        // Each neighbor of the origin starts its own branch. The origin is on a
+        // loop exactly when some route joins two different branches.
+        Map<String, String> branches = new HashMap<>();
+
+        List<String> frontier = this.neighbors(Collections.singletonList(origin)).get(origin);
+        for (String city : frontier)
+        {
+            branches.put(city, city);
+        }
+
+        while (!frontier.isEmpty())
+        {
+            Map<String, List<String>> neighbors = this.neighbors(frontier);
+
+            List<String> next = new ArrayList<>();
+            for (String city : frontier)
+            {
+                String branch = branches.get(city);
+
+                for (String neighbor : neighbors.get(city))
+                {
+                    if (neighbor.equals(origin))
+                    {
+                        continue;
+                    }
+
+                    String other = branches.putIfAbsent(neighbor, branch);
+                    if (other == null)
+                    {
+                        next.add(neighbor);
+                    }
+                    else if (!other.equals(branch))
+                    {
+                        return string + COLON + YES;
+                    }
+                }
+            }
+
+            frontier = next;
+        }
+
+        return string + COLON + NO;
+    }
+
+    private String forward(int shard, String string) throws IOException
+    {
+        List<String> response = this.shards.get(shard).request(string);
+
+        return response.isEmpty() ? null : response.get(0);
+    }
+
+    private Map<String, List<String>> neighbors(List<String> cities) throws IOException
+    {
+        List<List<String>> requests = new ArrayList<>();
+        for (int i = 0; i < this.shards.size(); i++)
+        {
+            requests.add(new ArrayList<>());
+        }
+
+        for (String city : cities)
+        {
+            requests.get(this.map.owner(city)).add(city);
+        }
+
+        for (int shard = 0; shard < this.shards.size(); shard++)
+        {
+            if (!requests.get(shard).isEmpty())
+            {
+                this.shards.get(shard).send(Protocol.NEIGHBORS + Protocol.join(requests.get(shard)));
+            }
+        }
+
+        Map<String, List<String>> neighbors = new LinkedHashMap<>();
+        for (int shard = 0; shard < this.shards.size(); shard++)
+        {
+            List<String> request = requests.get(shard);
+            if (!request.isEmpty())
+            {
+                List<String> response = this.shards.get(shard).receive();
+                for (int i = 0; i < request.size(); i++)
+                {
+                    neighbors.put(request.get(i), Protocol.split(response.get(i)));
+                }
+            }
+        }
+
+        return neighbors;
+    }
+
+    /**
+     * Holds a route listed by a shard, ordered as a sorted listing orders
+     * routes: by first city name and then second city name.
+     */
+    private static final class ShardRoute implements Comparable<ShardRoute>
+    {
+        final int shard;
+        final String line;
+        final String from;
+        final String to;
+
+        ShardRoute(int shard, String line)
+        {
+            int index = line.indexOf(ROUTE_SEPARATOR);
+
+            this.shard = shard;
+            this.line = line;
+            this.from = line.substring(0, index);
+            this.to = line.substring(index + ROUTE_SEPARATOR.length());
+        }
+
+        @Override
+        public int compareTo(ShardRoute other)
+        {
+            int order = this.from.compareTo(other.from);
+
+            return order != 0 ? order : this.to.compareTo(other.to);
+        }
+    }
+}
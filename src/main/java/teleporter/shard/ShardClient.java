@@ -0,0 +1,275 @@
+/**
+ * ShardClient.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.shard;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import teleporter.server.Protocol;
+import teleporter.server.Server;
+
+/**
+ * Connects the coordinator to one shard server. Requests may be pipelined by
+ * calling {@link #send(String)} on several shards before reading their
+ * responses.
+ */
+public class ShardClient implements Closeable
+{
+    private static final int CONNECT_ATTEMPTS = 100;
+    private static final long CONNECT_DELAY_MILLIS = 100;
+
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final Writer writer;
+    private final Process process;
+
+    private ShardClient(Socket socket, Process process) throws IOException
+    {
+        this.socket = socket;
+        this.process = process;
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Connects to a running shard on the loopback interface.
+     *
+     * @param port the port of the shard
+     * @return the client
+     * @throws IOException if unable to connect
+     */
+    public static ShardClient connect(int port) throws IOException
+    {
+        return new ShardClient(open(port), null);
+    }
+
+    /**
+     * Starts a shard server in a new local JVM and connects to it.
+     *
+     * @param jvmOptions   options for the new JVM, such as a heap size
+     * @param serverOptions options for the server
+     * @return the client
+     * @throws IOException if unable to start or connect to the shard
+     */
+    public static ShardClient launch(List<String> jvmOptions, List<String> serverOptions) throws IOException
+    {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress()))
+        {
+            port = probe.getLocalPort();
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Server.class.getName());
+        command.add("--port=" + port);
+        command.addAll(serverOptions);
+
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        try
+        {
+            return new ShardClient(open(port), process);
+        }
+        catch (IOException ex)
+        {
+            process.destroy();
+            throw ex;
+        }
+    }
+
+    private static Socket open(int port) throws IOException
+    {
+        ConnectException failure = null;
+
+        for (int attempt = 0; attempt < CONNECT_ATTEMPTS; attempt++)
+        {
+            try
+            {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                socket.setTcpNoDelay(true);
+                return socket;
+            }
+            catch (ConnectException ex)
+            {
+                failure = ex;
+            }
+
+            try
+            {
+                Thread.sleep(CONNECT_DELAY_MILLIS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        throw failure != null ? failure : new ConnectException("unable to connect to port " + port);
+    }
+
+    /**
+     * Sends a request without waiting for the response.
+     *
+     * @param line the request
+     * @throws IOException if unable to send
+     */
+    public void send(String line) throws IOException
+    {
+        this.writer.write(line);
+        this.writer.write('\n');
+        this.writer.flush();
+    }
+
+    /**
+     * Reads the response to the oldest outstanding request.
+     *
+     * @return the response lines
+     * @throws IOException if unable to read
+     */
+    public List<String> receive() throws IOException
+    {
+        return Protocol.readResponse(this.reader);
+    }
+
+    /**
+     * Reads the response to the oldest outstanding request, passing each line
+     * to a consumer as it arrives.
+     *
+     * @param consumer receives the response lines
+     * @throws IOException if unable to read
+     */
+    public void receive(Consumer<String> consumer) throws IOException
+    {
+        Protocol.readResponse(this.reader, consumer);
+    }
+
+    /**
+     * Reads the next line of the response to the oldest outstanding request.
+     *
+     * @return the line, or null once the response ended
+     * @throws IOException if unable to read
+     */
+    public String receiveLine() throws IOException
+    {
+        return Protocol.readResponseLine(this.reader);
+    }
+
+    /**
+     * Sends a request and waits for the response.
+     *
+     * @param line the request
+     * @return the response lines
+     * @throws IOException if unable to communicate with the shard
+     */
+    public List<String> request(String line) throws IOException
+    {
+        this.send(line);
+
+        return this.receive();
+    }
+
+    /**
+     * Sends several lines to be parsed as a single request without waiting
+     * for the response.
+     *
+     * @param lines the lines
+     * @throws IOException if unable to send
+     */
+    public void sendLoad(List<String> lines) throws IOException
+    {
+        this.writer.write(Protocol.LOAD);
+        this.writer.write(Integer.toString(lines.size()));
+        this.writer.write('\n');
+
+        for (String line : lines)
+        {
+            this.writer.write(line);
+            this.writer.write('\n');
+        }
+
+        this.writer.flush();
+    }
+
+    /**
+     * Stops the shard if it was launched by this client and closes the
+     * connection.
+     *
+     * @throws IOException if unable to close the connection
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            if (this.process != null)
+            {
+                // the shard may exit before answering, so wait for the process
+                this.send(Protocol.SHUTDOWN);
+            }
+        }
+        finally
+        {
+            this.socket.close();
+
+            if (this.process != null)
+            {
+                try
+                {
+                    if (!this.process.waitFor(5, TimeUnit.SECONDS))
+                    {
+                        this.process.destroy();
+                    }
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    this.process.destroy();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/**
+ * ShardMap.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.shard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import teleporter.util.LongHashSet;
+
+/**
+ * Tracks which shard owns each city. Shards are assigned whole connected
+ * components so that most queries can be answered by a single shard.
+ * <p>
+ * The map keeps a union-find over the cities it has seen. Before
+ * {@link #partition()} routes only merge components; partitioning then
+ * assigns components to shards, largest first, each to the shard with the
+ * fewest routes. Routes placed afterwards follow the shard of the cities they
+ * touch. A route between cities on different shards is a cross link: it is
+ * stored on both shards and marks the merged component as spanning, which
+ * makes the coordinator answer its queries by fanning out to the shards.
+ */
+public class ShardMap
+{
+    private final int shards;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final LongHashSet crossLinks = new LongHashSet();
+    private final BitSet spanning = new BitSet();
+    private final long[] loads;
+
+    private int[] parent = new int[16];
+    private int[] size = new int[16];
+    private long[] routes = new long[16];
+    private int[] owners = new int[16];
+    private int count;
+
+    /**
+     * Creates a new, empty map.
+     *
+     * @param shards the number of shards
+     */
+    public ShardMap(int shards)
+    {
+        if (shards < 1)
+        {
+            throw new IllegalArgumentException("shards cannot be less than one");
+        }
+
+        this.shards = shards;
+        this.loads = new long[shards];
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShards()
+    {
+        return this.shards;
+    }
+
+    /**
+     * Records a route before partitioning.
+     *
+     * @param from the name of the first city
+     * @param to   the name of the second city
+     */
+    public void addRoute(String from, String to)
+    {
+        int root = this.union(this.intern(from), this.intern(to));
+
+        this.routes[root]++;
+    }
+
+    /**
+     * Assigns every known component to a shard.
+     */
+    public void partition()
+    {
+        List<Integer> roots = new ArrayList<>();
+        for (int id = 0; id < this.count; id++)
+        {
+            if (this.parent[id] == id)
+            {
+                roots.add(id);
+            }
+        }
+
+        roots.sort((a, b) -> Long.compare(this.routes[b], this.routes[a]));
+
+        for (int root : roots)
+        {
+            int shard = this.leastLoaded();
+
+            this.owners[root] = shard;
+            this.loads[shard] += this.routes[root];
+        }
+
+        for (int id = 0; id < this.count; id++)
+        {
+            this.owners[id] = this.owners[this.find(id)];
+        }
+    }
+
+    /**
+     * Places a route after partitioning.
+     *
+     * @param from the name of the first city
+     * @param to   the name of the second city
+     * @return the shards that must store the route
+     */
+    public int[] placeRoute(String from, String to)
+    {
+        Integer fromId = this.ids.get(from);
+        Integer toId = this.ids.get(to);
+
+        int fromShard = fromId == null ? -1 : this.owners[fromId];
+        int toShard = toId == null ? -1 : this.owners[toId];
+
+        if (fromShard == -1 && toShard == -1)
+        {
+            fromShard = this.leastLoaded();
+            toShard = fromShard;
+        }
+        else if (fromShard == -1)
+        {
+            fromShard = toShard;
+        }
+        else if (toShard == -1)
+        {
+            toShard = fromShard;
+        }
+
+        int a = this.intern(from);
+        int b = this.intern(to);
+        this.owners[a] = fromShard;
+        this.owners[b] = toShard;
+
+        boolean crossLink = fromShard != toShard;
+        boolean wasSpanning = this.spanning.get(this.find(a)) || this.spanning.get(this.find(b));
+
+        int root = this.union(a, b);
+        this.routes[root]++;
+
+        if (crossLink || wasSpanning)
+        {
+            this.spanning.set(root);
+        }
+
+        int[] placement;
+        if (crossLink)
+        {
+            this.crossLinks.add(key(a, b));
+            this.loads[fromShard]++;
+            this.loads[toShard]++;
+
+            placement = new int[] { fromShard, toShard };
+        }
+        else
+        {
+            this.loads[fromShard]++;
+
+            placement = new int[] { fromShard };
+        }
+
+        return placement;
+    }
+
+    /**
+     * Gets the shard that owns a city.
+     *
+     * @param name the city name
+     * @return the shard or -1 if the city is unknown
+     */
+    public int owner(String name)
+    {
+        Integer id = this.ids.get(name);
+
+        return id == null ? -1 : this.owners[id];
+    }
+
+    /**
+     * Determines if two cities are in the same component.
+     *
+     * @param from the name of the first city
+     * @param to   the name of the second city
+     * @return if the cities are connected
+     */
+    public boolean isConnected(String from, String to)
+    {
+        Integer fromId = this.ids.get(from);
+        Integer toId = this.ids.get(to);
+
+        return fromId != null && toId != null && this.find(fromId) == this.find(toId);
+    }
+
+    /**
+     * Determines if the component of a city spans several shards.
+     *
+     * @param name the city name
+     * @return if the component spans shards
+     */
+    public boolean isSpanning(String name)
+    {
+        Integer id = this.ids.get(name);
+
+        return id != null && this.spanning.get(this.find(id));
+    }
+
+    /**
+     * Determines if a route is stored on two shards.
+     *
+     * @param from the name of the first city
+     * @param to   the name of the second city
+     * @return if the route is a cross link
+     */
+    public boolean isCrossLink(String from, String to)
+    {
+        Integer fromId = this.ids.get(from);
+        Integer toId = this.ids.get(to);
+
+        return fromId != null && toId != null && this.crossLinks.contains(key(fromId, toId));
+    }
+
+    private int leastLoaded()
+    {
+        int shard = 0;
+        for (int i = 1; i < this.shards; i++)
+        {
+            if (this.loads[i] < this.loads[shard])
+            {
+                shard = i;
+            }
+        }
+
+        return shard;
+    }
+
+    private int intern(String name)
+    {
+        Integer id = this.ids.get(name);
+        if (id == null)
+        {
+            id = this.count++;
+            this.ids.put(name, id);
+
+            if (id == this.parent.length)
+            {
+                int length = id * 2;
+                this.parent = Arrays.copyOf(this.parent, length);
+                this.size = Arrays.copyOf(this.size, length);
+                this.routes = Arrays.copyOf(this.routes, length);
+                this.owners = Arrays.copyOf(this.owners, length);
+            }
+
+            this.parent[id] = id;
+            this.size[id] = 1;
+            this.owners[id] = -1;
+        }
+
+        return id;
+    }
+
+    private int find(int id)
+    {
+        int root = id;
+        while (this.parent[root] != root)
+        {
+            this.parent[root] = this.parent[this.parent[root]];
+            root = this.parent[root];
+        }
+
+        return root;
+    }
+
+    private int union(int a, int b)
+    {
+        int rootA = this.find(a);
+        int rootB = this.find(b);
+
+        if (rootA == rootB)
+        {
+            return rootA;
+        }
+
+        if (this.size[rootA] < this.size[rootB])
+        {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+
+        this.parent[rootB] = rootA;
+        this.size[rootA] += this.size[rootB];
+        this.routes[rootA] += this.routes[rootB];
+
+        if (this.spanning.get(rootB))
+        {
+            this.spanning.set(rootA);
+        }
+
+        return rootA;
+    }
+
+    private static long key(int a, int b)
+    {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * CompactStorage.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.storage;
+
+/**
+ * Stores a frozen network in compressed sparse row form: the neighbors of
+ * every city lie in one shared array, sorted, between two offsets. Searches
+ * scan adjacency sequentially instead of following node references, and
+ * cities may be renumbered so that neighbors get nearby identifiers.
+ */
+public class CompactStorage extends FrozenStorage
+{
+    private final int[] offsets;
+    private final int[] neighbors;
+
+    private CompactStorage(FrozenAdjacency adjacency, GraphStorage source, VertexOrder order)
+    {
+        super(renumber(source, order, adjacency));
+
+        this.offsets = adjacency.offsets;
+        this.neighbors = adjacency.neighbors;
+    }
+
+    /**
+     * Copies a storage into a compact storage, renumbering its cities.
+     *
+     * @param source the storage to copy
+     * @param order  the order to number cities in
+     * @return the compact storage
+     * @throws IllegalArgumentException if the network has too many routes to
+     *                                  index with integers
+     */
+    public static CompactStorage freeze(GraphStorage source, VertexOrder order)
+    {
+        long entries = 0;
+        for (int id = 0; id < source.size(); id++)
+        {
+            entries += source.degree(id);
+        }
+
+        if (entries > Integer.MAX_VALUE - 8)
+        {
+            throw new IllegalArgumentException("too many routes to freeze uncompressed");
+        }
+
+        return new CompactStorage(new FrozenAdjacency(source.size(), (int) entries), source, order);
+    }
+
+    @Override
+    public long getSizeInBytes()
+    {
+        return 4L * this.offsets.length + 4L * this.neighbors.length;
+    }
+
+    @Override
+    public long getEntryCount()
+    {
+        return this.neighbors.length;
+    }
+
+    @Override
+    public int degree(int id)
+    {
+        return this.offsets[id + 1] - this.offsets[id];
+    }
+
+    @Override
+    public NeighborCursor cursor()
+    {
+        return new CompactCursor();
+    }
+
+    /**
+     * Collects the adjacency arrays while the cities are renumbered.
+     */
+    private static final class FrozenAdjacency implements AdjacencySink
+    {
+        private final int[] offsets;
+        private final int[] neighbors;
+
+        FrozenAdjacency(int size, int entries)
+        {
+            this.offsets = new int[size + 1];
+            this.neighbors = new int[entries];
+        }
+
+        @Override
+        public void accept(int city, int[] cities, int count)
+        {
+            System.arraycopy(cities, 0, this.neighbors, this.offsets[city], count);
+            this.offsets[city + 1] = this.offsets[city] + count;
+        }
+    }
+
+    private final class CompactCursor implements NeighborCursor
+    {
+        private int index;
+        private int end;
+
+        @Override
+        public NeighborCursor of(int city)
+        {
+            this.index = CompactStorage.this.offsets[city];
+            this.end = CompactStorage.this.offsets[city + 1];
+
+            return this;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.index < this.end;
+        }
+
+        @Override
+        public int next()
+        {
+            return CompactStorage.this.neighbors[this.index++];
+        }
+    }
+}
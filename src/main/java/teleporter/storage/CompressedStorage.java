@@ -0,0 +1,268 @@
+/**
+ * CompressedStorage.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores a frozen network with every city's sorted neighbors gap encoded as
+ * variable length integers: the number of neighbors, the first neighbor
+ * relative to the city itself, then the differences between consecutive
+ * neighbors, seven bits per byte. When neighbors have nearby identifiers, as
+ * after renumbering in breadth first or reverse Cuthill-McKee order, most
+ * entries take a single byte. Cursors decode lists as they are scanned.
+ * <p>
+ * Encoded lists are kept in pages of up to a gigabyte so that networks
+ * larger than a single array can be stored; a list never spans two pages.
+ */
+public class CompressedStorage extends FrozenStorage
+{
+    private static final int PAGE_SIZE = 1 << 30;
+    private static final int MAX_VARINT_BYTES = 5;
+
+    private final byte[][] pages;
+    private final int[] firstCities;
+    private final int[] positions;
+    private final long entries;
+
+    private CompressedStorage(Encoder encoder, GraphStorage source, VertexOrder order)
+    {
+        super(renumber(source, order, encoder));
+
+        encoder.finish();
+        this.pages = encoder.pages.toArray(new byte[0][]);
+        this.firstCities = encoder.firstCities.stream().mapToInt(Integer::intValue).toArray();
+        this.positions = encoder.positions;
+        this.entries = encoder.entries;
+    }
+
+    /**
+     * Copies a storage into a compressed storage, renumbering its cities.
+     *
+     * @param source the storage to copy
+     * @param order  the order to number cities in
+     * @return the compressed storage
+     * @throws IllegalArgumentException if a city has too many routes to
+     *                                  encode in one page
+     */
+    public static CompressedStorage freeze(GraphStorage source, VertexOrder order)
+    {
+        return new CompressedStorage(new Encoder(source.size()), source, order);
+    }
+
+    @Override
+    public long getSizeInBytes()
+    {
+        long size = 4L * this.positions.length + 4L * this.firstCities.length;
+        for (byte[] page : this.pages)
+        {
+            size += page.length;
+        }
+
+        return size;
+    }
+
+    @Override
+    public long getEntryCount()
+    {
+        return this.entries;
+    }
+
+    @Override
+    public int degree(int id)
+    {
+        byte[] page = this.pages[this.page(id)];
+        int position = this.positions[id];
+
+        int b = page[position++];
+        int value = b & 0x7f;
+        for (int shift = 7; b < 0; shift += 7)
+        {
+            b = page[position++];
+            value |= (b & 0x7f) << shift;
+        }
+
+        return value;
+    }
+
+    @Override
+    public NeighborCursor cursor()
+    {
+        return new CompressedCursor();
+    }
+
+    private int page(int city)
+    {
+        int page = 0;
+
+        if (this.firstCities.length > 1)
+        {
+            page = Arrays.binarySearch(this.firstCities, city);
+            if (page < 0)
+            {
+                page = -page - 2;
+            }
+        }
+
+        return page;
+    }
+
+    /**
+     * Encodes the neighbors of each city while the cities are renumbered.
+     */
+    private static final class Encoder implements AdjacencySink
+    {
+        private final List<byte[]> pages = new ArrayList<>();
+        private final List<Integer> firstCities = new ArrayList<>();
+        private final int[] positions;
+        private byte[] page = new byte[1024];
+        private int length;
+        private long entries;
+
+        Encoder(int size)
+        {
+            this.positions = new int[size];
+            this.firstCities.add(0);
+        }
+
+        @Override
+        public void accept(int city, int[] neighbors, int count)
+        {
+            long worst = (long) MAX_VARINT_BYTES * (count + 1);
+            if (worst > PAGE_SIZE)
+            {
+                throw new IllegalArgumentException("too many routes from one city to compress");
+            }
+
+            if (this.length + worst > PAGE_SIZE)
+            {
+                this.finish();
+                this.page = new byte[1024];
+                this.length = 0;
+                this.firstCities.add(city);
+            }
+
+            if (this.length + worst > this.page.length)
+            {
+                long capacity = Math.max(2L * this.page.length, this.length + worst);
+                this.page = Arrays.copyOf(this.page, (int) Math.min(capacity, PAGE_SIZE));
+            }
+
+            this.positions[city] = this.length;
+            this.write(count);
+
+            if (count > 0)
+            {
+                int delta = neighbors[0] - city;
+                this.write((delta << 1) ^ (delta >> 31));
+
+                for (int i = 1; i < count; i++)
+                {
+                    this.write(neighbors[i] - neighbors[i - 1]);
+                }
+            }
+
+            this.entries += count;
+        }
+
+        void finish()
+        {
+            this.pages.add(Arrays.copyOf(this.page, this.length));
+        }
+
+        private void write(int value)
+        {
+            int remaining = value;
+            while ((remaining & ~0x7f) != 0)
+            {
+                this.page[this.length++] = (byte) ((remaining & 0x7f) | 0x80);
+                remaining >>>= 7;
+            }
+            this.page[this.length++] = (byte) remaining;
+        }
+    }
+
+    private final class CompressedCursor implements NeighborCursor
+    {
+        private byte[] page;
+        private int position;
+        private int remaining;
+        private int previous;
+        private boolean first;
+
+        @Override
+        public NeighborCursor of(int city)
+        {
+            this.page = CompressedStorage.this.pages[CompressedStorage.this.page(city)];
+            this.position = CompressedStorage.this.positions[city];
+            this.remaining = this.read();
+            this.previous = city;
+            this.first = true;
+
+            return this;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.remaining > 0;
+        }
+
+        @Override
+        public int next()
+        {
+            int value = this.read();
+
+            if (this.first)
+            {
+                this.previous += (value >>> 1) ^ -(value & 1);
+                this.first = false;
+            }
+            else
+            {
+                this.previous += value;
+            }
+            this.remaining--;
+
+            return this.previous;
+        }
+
+        private int read()
+        {
+            byte[] bytes = this.page;
+
+            int b = bytes[this.position++];
+            int value = b & 0x7f;
+            for (int shift = 7; b < 0; shift += 7)
+            {
+                b = bytes[this.position++];
+                value |= (b & 0x7f) << shift;
+            }
+
+            return value;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * FrozenStorage.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import teleporter.data.City;
+
+/**
+ * Stores a frozen network: cities are renumbered once, when the network is
+ * frozen, and routes can no longer be added or removed. Cities already stored
+ * may be interned again. Subclasses choose how adjacency is laid out.
+ */
+public abstract class FrozenStorage implements GraphStorage
+{
+    private final City[] cities;
+    private final Map<City, Integer> ids;
+
+    FrozenStorage(City[] cities)
+    {
+        this.cities = cities;
+        this.ids = new HashMap<>(Math.max(16, (int) (cities.length / 0.75f) + 1));
+        for (int id = 0; id < cities.length; id++)
+        {
+            this.ids.put(cities[id], id);
+        }
+    }
+
+    /**
+     * Gets the memory used by the routes and their index, excluding cities
+     * and their lookup table.
+     *
+     * @return the size in bytes
+     */
+    public abstract long getSizeInBytes();
+
+    /**
+     * Gets the number of route entries stored. Every route is stored from
+     * both of its cities.
+     *
+     * @return the number of entries
+     */
+    public abstract long getEntryCount();
+
+    @Override
+    public int size()
+    {
+        return this.cities.length;
+    }
+
+    @Override
+    public int find(City city)
+    {
+        Integer id = this.ids.get(city);
+
+        return id == null ? -1 : id;
+    }
+
+    @Override
+    public int intern(City city)
+    {
+        Objects.requireNonNull(city, "city cannot be null");
+
+        int id = this.find(city);
+        if (id < 0)
+        {
+            throw new UnsupportedOperationException("storage is frozen");
+        }
+
+        return id;
+    }
+
+    @Override
+    public City city(int id)
+    {
+        return this.cities[id];
+    }
+
+    @Override
+    public void connect(int from, int to)
+    {
+        throw new UnsupportedOperationException("storage is frozen");
+    }
+
+    @Override
+    public void disconnect(int from, int to)
+    {
+        throw new UnsupportedOperationException("storage is frozen");
+    }
+
+    /**
+     * Renumbers the cities of a storage and passes the sorted, renumbered
+     * neighbors of every city to a sink in order of the new identifiers.
+     *
+     * @param source the storage to copy
+     * @param order  the order to number cities in
+     * @param sink   receives the neighbors of each city
+     * @return the cities by new identifier
+     */
+    static City[] renumber(GraphStorage source, VertexOrder order, AdjacencySink sink)
+    {
+        Objects.requireNonNull(source, "source cannot be null");
+        Objects.requireNonNull(order, "order cannot be null");
+
+        int size = source.size();
+        int[] oldIds = order.order(source);
+
+        int[] newIds = new int[size];
+        for (int id = 0; id < size; id++)
+        {
+            newIds[oldIds[id]] = id;
+        }
+
+        City[] cities = new City[size];
+        int[] neighbors = new int[16];
+
+        NeighborCursor cursor = source.cursor();
+        for (int id = 0; id < size; id++)
+        {
+            cities[id] = source.city(oldIds[id]);
+
+            int count = 0;
+            cursor.of(oldIds[id]);
+            while (cursor.hasNext())
+            {
+                if (count == neighbors.length)
+                {
+                    neighbors = Arrays.copyOf(neighbors, count * 2);
+                }
+                neighbors[count++] = newIds[cursor.next()];
+            }
+
+            Arrays.sort(neighbors, 0, count);
+            sink.accept(id, neighbors, count);
+        }
+
+        return cities;
+    }
+
+    /**
+     * Receives the sorted neighbors of each city while a storage is frozen.
+     */
+    interface AdjacencySink
+    {
+        void accept(int city, int[] neighbors, int count);
+    }
+}
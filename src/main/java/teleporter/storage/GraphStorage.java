@@ -0,0 +1,100 @@
+/**
+ * GraphStorage.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.storage;
+
+import teleporter.data.City;
+
+/**
+ * Stores the cities and routes of a teleportation network. Cities are
+ * identified by dense integer identifiers assigned in the order they are first
+ * seen, starting at zero.
+ */
+public interface GraphStorage
+{
+    /**
+     * Gets the number of known cities.
+     *
+     * @return the number of cities
+     */
+    int size();
+
+    /**
+     * Finds the identifier of a city.
+     *
+     * @param city the city
+     * @return the identifier or -1 if the city is unknown
+     */
+    int find(City city);
+
+    /**
+     * Gets the identifier of a city, adding the city if it is unknown.
+     *
+     * @param city the city
+     * @return the identifier
+     */
+    int intern(City city);
+
+    /**
+     * Gets the city for an identifier.
+     *
+     * @param id the identifier
+     * @return the city
+     */
+    City city(int id);
+
+    /**
+     * Adds a two way route between two cities. The graph filters duplicate
+     * routes before they reach the storage, so implementations need not check
+     * for them.
+     *
+     * @param from the identifier of the first city
+     * @param to   the identifier of the second city
+     */
+    void connect(int from, int to);
+
+    /**
+     * Removes a two way route between two cities. The graph only removes
+     * routes that are present.
+     *
+     * @param from the identifier of the first city
+     * @param to   the identifier of the second city
+     */
+    void disconnect(int from, int to);
+
+    /**
+     * Gets the number of routes leaving a city.
+     *
+     * @param id the identifier
+     * @return the number of routes
+     */
+    int degree(int id);
+
+    /**
+     * Creates a new cursor over this storage. Cursors are cheap but not thread
+     * safe; each traversal should use its own.
+     *
+     * @return the cursor
+     */
+    NeighborCursor cursor();
+}
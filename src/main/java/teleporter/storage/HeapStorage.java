@@ -0,0 +1,140 @@
+/**
+ * HeapStorage.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import teleporter.data.City;
+import teleporter.data.Node;
+import teleporter.util.IntBitmap;
+
+/**
+ * Stores a graph as {@link Node} objects on the Java heap, each holding the
+ * identifiers of its neighbors.
+ */
+public class HeapStorage implements GraphStorage
+{
+    private final Map<City, Node> vertexMap = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+
+    @Override
+    public int size()
+    {
+        return this.nodes.size();
+    }
+
+    @Override
+    public int find(City city)
+    {
+        Node node = this.vertexMap.get(city);
+
+        return node == null ? -1 : node.id;
+    }
+
+    @Override
+    public int intern(City city)
+    {
+        Objects.requireNonNull(city, "city cannot be null");
+
+        Node node = this.vertexMap.computeIfAbsent(city, (c) -> {
+            Node n = new Node(this.nodes.size(), c);
+            this.nodes.add(n);
+            return n;
+        });
+
+        return node.id;
+    }
+
+    @Override
+    public City city(int id)
+    {
+        return this.nodes.get(id).city;
+    }
+
+    @Override
+    public void connect(int from, int to)
+    {
+        this.nodes.get(from).addNeighbor(to);
+        this.nodes.get(to).addNeighbor(from);
+    }
+
+    @Override
+    public void disconnect(int from, int to)
+    {
+        this.nodes.get(from).removeNeighbor(to);
+        this.nodes.get(to).removeNeighbor(from);
+    }
+
+    @Override
+    public int degree(int id)
+    {
+        return this.nodes.get(id).getDegree();
+    }
+
+    @Override
+    public NeighborCursor cursor()
+    {
+        return new HeapCursor();
+    }
+
+    private final class HeapCursor implements NeighborCursor
+    {
+        private final IntBitmap.Cursor bitmapCursor = new IntBitmap.Cursor();
+        private int[] array;
+        private int index;
+        private int end;
+
+        @Override
+        public NeighborCursor of(int city)
+        {
+            Node node = HeapStorage.this.nodes.get(city);
+
+            this.array = node.getNeighborArray();
+            this.index = 0;
+            this.end = node.getDegree();
+            if (this.array == null)
+            {
+                this.bitmapCursor.of(node.getNeighborBitmap());
+            }
+
+            return this;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.array != null ? this.index < this.end : this.bitmapCursor.hasNext();
+        }
+
+        @Override
+        public int next()
+        {
+            return this.array != null ? this.array[this.index++] : this.bitmapCursor.next();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * NeighborCursor.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.storage;
+
+/**
+ * Iterates over the neighbors of a city without allocating. A cursor may be
+ * reused for any number of cities by calling {@link #of(int)}.
+ */
+public interface NeighborCursor
+{
+    /**
+     * Positions the cursor at the first neighbor of a city.
+     *
+     * @param city the city identifier
+     * @return this cursor
+     */
+    NeighborCursor of(int city);
+
+    /**
+     * Determines if more neighbors remain.
+     *
+     * @return if more neighbors remain
+     */
+    boolean hasNext();
+
+    /**
+     * Gets the next neighbor.
+     *
+     * @return the identifier of the next neighboring city
+     */
+    int next();
+}
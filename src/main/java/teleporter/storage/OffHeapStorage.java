@@ -0,0 +1,471 @@
+/**
+ * OffHeapStorage.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import teleporter.data.City;
+
+/**
+ * Stores a graph in direct buffers outside of the Java heap. Only a handful of
+ * buffer objects live on the heap regardless of the size of the network, so
+ * the garbage collector has almost nothing to trace.
+ * <p>
+ * Each city has a fixed size record in a paged vertex table holding the
+ * address of its adjacency block, its degree and the address of its name in
+ * the name arena. Adjacency blocks are allocated from an edge arena in power
+ * of two sizes and are recycled through per-size free lists when a city
+ * outgrows them. Names are found through an open addressing hash table of
+ * identifiers, also kept off heap.
+ * <p>
+ * Arena addresses pack a chunk index in the high 32 bits and an offset within
+ * the chunk in the low 32 bits.
+ */
+public class OffHeapStorage implements GraphStorage
+{
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    private static final int RECORD_BYTES = 32;
+    private static final int EDGES = 0;
+    private static final int DEGREE = 8;
+    private static final int CAPACITY = 12;
+    private static final int NAME = 16;
+    private static final int NAME_LENGTH = 24;
+    private static final int HASH = 28;
+
+    private static final int EDGE_CHUNK_INTS = 1 << 22;
+    private static final int NAME_CHUNK_BYTES = 1 << 22;
+    private static final int MIN_BLOCK = 2;
+    private static final int INITIAL_TABLE = 1 << 10;
+
+    private final List<ByteBuffer> vertexPages = new ArrayList<>();
+    private final List<IntBuffer> edgeChunks = new ArrayList<>();
+    private final List<ByteBuffer> nameChunks = new ArrayList<>();
+    private final long[] freeBlocks = new long[32];
+
+    private IntBuffer table = allocateInts(INITIAL_TABLE);
+    private int size;
+    private int edgeChunkUsed;
+    private int nameChunkUsed;
+
+    /**
+     * Creates a new, empty storage.
+     */
+    public OffHeapStorage()
+    {
+        Arrays.fill(this.freeBlocks, -1L);
+    }
+
+    @Override
+    public int size()
+    {
+        return this.size;
+    }
+
+    @Override
+    public int find(City city)
+    {
+        Objects.requireNonNull(city, "city cannot be null");
+
+        byte[] name = city.name.getBytes(StandardCharsets.UTF_8);
+
+        int slot = this.findSlot(name, hash(name));
+        int entry = this.table.get(slot);
+
+        return entry - 1;
+    }
+
+    @Override
+    public int intern(City city)
+    {
+        Objects.requireNonNull(city, "city cannot be null");
+
+        byte[] name = city.name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(name);
+
+        int slot = this.findSlot(name, hash);
+        int entry = this.table.get(slot);
+
+        int id;
+        if (entry != 0)
+        {
+            id = entry - 1;
+        }
+        else
+        {
+            id = this.addCity(name, hash);
+            this.table.put(slot, id + 1);
+
+            if (this.size * 2 > this.table.capacity())
+            {
+                this.growTable();
+            }
+        }
+
+        return id;
+    }
+
+    @Override
+    public City city(int id)
+    {
+        ByteBuffer page = this.page(id);
+        int record = record(id);
+
+        long address = page.getLong(record + NAME);
+        int length = page.getInt(record + NAME_LENGTH);
+
+        ByteBuffer chunk = this.nameChunks.get(chunk(address)).duplicate();
+        chunk.position(offset(address));
+
+        byte[] name = new byte[length];
+        chunk.get(name);
+
+        return new City(new String(name, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void connect(int from, int to)
+    {
+        this.append(from, to);
+        this.append(to, from);
+    }
+
+    @Override
+    public void disconnect(int from, int to)
+    {
+        this.remove(from, to);
+        this.remove(to, from);
+    }
+
+    @Override
+    public int degree(int id)
+    {
+        return this.page(id).getInt(record(id) + DEGREE);
+    }
+
+    @Override
+    public NeighborCursor cursor()
+    {
+        return new OffHeapCursor();
+    }
+
+    private void append(int id, int neighbor)
+    {
+        ByteBuffer page = this.page(id);
+        int record = record(id);
+
+        long address = page.getLong(record + EDGES);
+        int degree = page.getInt(record + DEGREE);
+        int capacity = page.getInt(record + CAPACITY);
+
+        if (degree == capacity)
+        {
+            int newCapacity = Math.max(MIN_BLOCK, capacity * 2);
+            long newAddress = this.allocateBlock(newCapacity);
+
+            if (capacity > 0)
+            {
+                IntBuffer source = this.edgeChunks.get(chunk(address));
+                IntBuffer target = this.edgeChunks.get(chunk(newAddress));
+                int sourceOffset = offset(address);
+                int targetOffset = offset(newAddress);
+
+                for (int i = 0; i < degree; i++)
+                {
+                    target.put(targetOffset + i, source.get(sourceOffset + i));
+                }
+
+                this.freeBlock(address, capacity);
+            }
+
+            address = newAddress;
+            page.putLong(record + EDGES, address);
+            page.putInt(record + CAPACITY, newCapacity);
+        }
+
+        this.edgeChunks.get(chunk(address)).put(offset(address) + degree, neighbor);
+        page.putInt(record + DEGREE, degree + 1);
+    }
+
+    private void remove(int id, int neighbor)
+    {
+        ByteBuffer page = this.page(id);
+        int record = record(id);
+
+        long address = page.getLong(record + EDGES);
+        int degree = page.getInt(record + DEGREE);
+
+        IntBuffer chunk = this.edgeChunks.get(chunk(address));
+        int offset = offset(address);
+        int last = offset + degree - 1;
+
+        for (int i = offset; i <= last; i++)
+        {
+            if (chunk.get(i) == neighbor)
+            {
+                chunk.put(i, chunk.get(last));
+                page.putInt(record + DEGREE, degree - 1);
+                break;
+            }
+        }
+    }
+
+    private long allocateBlock(int capacity)
+    {
+        int sizeClass = Integer.numberOfTrailingZeros(capacity);
+
+        long address = this.freeBlocks[sizeClass];
+        if (address != -1L)
+        {
+            IntBuffer chunk = this.edgeChunks.get(chunk(address));
+            int offset = offset(address);
+
+            this.freeBlocks[sizeClass] = pack(chunk.get(offset), chunk.get(offset + 1));
+        }
+        else
+        {
+            int last = this.edgeChunks.size() - 1;
+            if (last < 0 || this.edgeChunks.get(last).capacity() - this.edgeChunkUsed < capacity)
+            {
+                this.edgeChunks.add(allocateInts(Math.max(EDGE_CHUNK_INTS, capacity)));
+                this.edgeChunkUsed = 0;
+                last++;
+            }
+
+            address = pack(last, this.edgeChunkUsed);
+            this.edgeChunkUsed += capacity;
+        }
+
+        return address;
+    }
+
+    private void freeBlock(long address, int capacity)
+    {
+        int sizeClass = Integer.numberOfTrailingZeros(capacity);
+
+        IntBuffer chunk = this.edgeChunks.get(chunk(address));
+        int offset = offset(address);
+        long next = this.freeBlocks[sizeClass];
+
+        chunk.put(offset, chunk(next));
+        chunk.put(offset + 1, offset(next));
+
+        this.freeBlocks[sizeClass] = address;
+    }
+
+    private int addCity(byte[] name, int hash)
+    {
+        int id = this.size;
+
+        if ((id & PAGE_MASK) == 0)
+        {
+            ByteBuffer page = ByteBuffer.allocateDirect(RECORD_BYTES << PAGE_SHIFT);
+            page.order(ByteOrder.nativeOrder());
+            this.vertexPages.add(page);
+        }
+
+        ByteBuffer page = this.page(id);
+        int record = record(id);
+
+        page.putLong(record + EDGES, -1L);
+        page.putInt(record + DEGREE, 0);
+        page.putInt(record + CAPACITY, 0);
+        page.putLong(record + NAME, this.addName(name));
+        page.putInt(record + NAME_LENGTH, name.length);
+        page.putInt(record + HASH, hash);
+
+        this.size++;
+
+        return id;
+    }
+
+    private long addName(byte[] name)
+    {
+        int last = this.nameChunks.size() - 1;
+        if (last < 0 || this.nameChunks.get(last).capacity() - this.nameChunkUsed < name.length)
+        {
+            this.nameChunks.add(ByteBuffer.allocateDirect(Math.max(NAME_CHUNK_BYTES, name.length)));
+            this.nameChunkUsed = 0;
+            last++;
+        }
+
+        ByteBuffer chunk = this.nameChunks.get(last).duplicate();
+        chunk.position(this.nameChunkUsed);
+        chunk.put(name);
+
+        long address = pack(last, this.nameChunkUsed);
+        this.nameChunkUsed += name.length;
+
+        return address;
+    }
+
+    private int findSlot(byte[] name, int hash)
+    {
+        int mask = this.table.capacity() - 1;
+        int slot = hash & mask;
+
+        int entry = this.table.get(slot);
+        while (entry != 0 && !this.nameEquals(entry - 1, name, hash))
+        {
+            slot = (slot + 1) & mask;
+            entry = this.table.get(slot);
+        }
+
+        return slot;
+    }
+
+    private boolean nameEquals(int id, byte[] name, int hash)
+    {
+        ByteBuffer page = this.page(id);
+        int record = record(id);
+
+        if (page.getInt(record + HASH) != hash
+                || page.getInt(record + NAME_LENGTH) != name.length)
+        {
+            return false;
+        }
+
+        long address = page.getLong(record + NAME);
+        ByteBuffer chunk = this.nameChunks.get(chunk(address));
+        int offset = offset(address);
+
+        for (int i = 0; i < name.length; i++)
+        {
+            if (chunk.get(offset + i) != name[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void growTable()
+    {
+        IntBuffer grown = allocateInts(this.table.capacity() * 2);
+        int mask = grown.capacity() - 1;
+
+        for (int id = 0; id < this.size; id++)
+        {
+            int slot = this.page(id).getInt(record(id) + HASH) & mask;
+            while (grown.get(slot) != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+
+            grown.put(slot, id + 1);
+        }
+
+        this.table = grown;
+    }
+
+    private ByteBuffer page(int id)
+    {
+        return this.vertexPages.get(id >>> PAGE_SHIFT);
+    }
+
+    private static int record(int id)
+    {
+        return (id & PAGE_MASK) * RECORD_BYTES;
+    }
+
+    private static int hash(byte[] name)
+    {
+        int hash = Arrays.hashCode(name);
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private static long pack(int chunk, int offset)
+    {
+        return ((long) chunk << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int chunk(long address)
+    {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address)
+    {
+        return (int) address;
+    }
+
+    private static IntBuffer allocateInts(int count)
+    {
+        return ByteBuffer.allocateDirect(count * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    private final class OffHeapCursor implements NeighborCursor
+    {
+        private IntBuffer chunk;
+        private int position;
+        private int end;
+
+        @Override
+        public NeighborCursor of(int city)
+        {
+            ByteBuffer page = OffHeapStorage.this.page(city);
+            int record = record(city);
+
+            int degree = page.getInt(record + DEGREE);
+            if (degree == 0)
+            {
+                this.chunk = null;
+                this.position = 0;
+                this.end = 0;
+            }
+            else
+            {
+                long address = page.getLong(record + EDGES);
+
+                this.chunk = OffHeapStorage.this.edgeChunks.get(chunk(address));
+                this.position = offset(address);
+                this.end = this.position + degree;
+            }
+
+            return this;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.position < this.end;
+        }
+
+        @Override
+        public int next()
+        {
+            return this.chunk.get(this.position++);
+        }
+    }
+}
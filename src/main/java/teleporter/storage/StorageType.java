@@ -0,0 +1,59 @@
+/**
+ * StorageType.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.storage;
+
+/**
+ * Provides an enum for selecting a graph storage implementation.
+ */
+public enum StorageType
+{
+    /** Stores the graph as linked node objects on the Java heap. */
+    HEAP,
+    /** Stores the graph in direct buffers outside of the Java heap. */
+    OFF_HEAP;
+
+    /**
+     * Creates a new, empty storage of this type.
+     *
+     * @return the storage
+     */
+    public GraphStorage create()
+    {
+        GraphStorage storage;
+
+        switch (this)
+        {
+        case OFF_HEAP:
+            storage = new OffHeapStorage();
+            break;
+
+        case HEAP:
+        default:
+            storage = new HeapStorage();
+            break;
+        }
+
+        return storage;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * VertexOrder.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.storage;
+
+import java.util.Arrays;
+
+/**
+ * Provides an enum for selecting the order cities are numbered in when a
+ * network is frozen. Orders that give neighboring cities nearby identifiers
+ * let searches read adjacency arrays and visited bits from the same cache
+ * lines instead of jumping across memory.
+ */
+public enum VertexOrder
+{
+    /** Keeps the identifiers in the order cities were first seen. */
+    NONE,
+    /** Numbers cities in breadth first order, one component after another. */
+    BFS,
+    /**
+     * Numbers cities in reverse Cuthill-McKee order: breadth first from a
+     * city of least degree, visiting neighbors by increasing degree, then
+     * reversed. This keeps the identifiers of neighbors within a narrow band.
+     */
+    RCM,
+    /** Numbers cities by decreasing degree so the busiest cities are packed together. */
+    DEGREE;
+
+    /**
+     * Computes the new order of the cities of a storage.
+     *
+     * @param storage the storage
+     * @return the old identifier of each new identifier
+     */
+    public int[] order(GraphStorage storage)
+    {
+        int size = storage.size();
+        int[] order;
+
+        switch (this)
+        {
+        case BFS:
+            order = breadthFirst(storage, identity(size), false);
+            break;
+
+        case RCM:
+            order = breadthFirst(storage, byDegree(storage, false), true);
+            for (int i = 0, j = size - 1; i < j; i++, j--)
+            {
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            break;
+
+        case DEGREE:
+            order = byDegree(storage, true);
+            break;
+
+        case NONE:
+        default:
+            order = identity(size);
+            break;
+        }
+
+        return order;
+    }
+
+    private static int[] identity(int size)
+    {
+        int[] order = new int[size];
+        for (int id = 0; id < size; id++)
+        {
+            order[id] = id;
+        }
+
+        return order;
+    }
+
+    private static int[] byDegree(GraphStorage storage, boolean decreasing)
+    {
+        int size = storage.size();
+
+        // sort packed degree and identifier pairs, which keeps ties in identifier order
+        long[] keys = new long[size];
+        for (int id = 0; id < size; id++)
+        {
+            long degree = storage.degree(id);
+            keys[id] = ((decreasing ? Integer.MAX_VALUE - degree : degree) << 32) | id;
+        }
+        Arrays.sort(keys);
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            order[i] = (int) keys[i];
+        }
+
+        return order;
+    }
+
+    private static int[] breadthFirst(GraphStorage storage, int[] starts, boolean sortNeighbors)
+    {
+        int size = storage.size();
+
+        boolean[] visited = new boolean[size];
+        int[] order = new int[size];
+        int tail = 0;
+
+        long[] neighbors = new long[16];
+        NeighborCursor cursor = storage.cursor();
+
+        for (int start : starts)
+        {
+            if (visited[start])
+            {
+                continue;
+            }
+
+            visited[start] = true;
+            order[tail++] = start;
+
+            for (int head = tail - 1; head < tail; head++)
+            {
+                int count = 0;
+                cursor.of(order[head]);
+                while (cursor.hasNext())
+                {
+                    int neighbor = cursor.next();
+                    if (!visited[neighbor])
+                    {
+                        if (count == neighbors.length)
+                        {
+                            neighbors = Arrays.copyOf(neighbors, count * 2);
+                        }
+                        neighbors[count++] = sortNeighbors ? ((long) storage.degree(neighbor) << 32) | neighbor
+                                : neighbor;
+                    }
+                }
+
+                if (sortNeighbors)
+                {
+                    Arrays.sort(neighbors, 0, count);
+                }
+
+                for (int i = 0; i < count; i++)
+                {
+                    int neighbor = (int) neighbors[i];
+                    if (!visited[neighbor])
+                    {
+                        visited[neighbor] = true;
+                        order[tail++] = neighbor;
+                    }
+                }
+            }
+        }
+
+        return order;
+    }
+}
@@ -0,0 +1,631 @@
+/**
+ * IntBitmap.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Provides a compressed set of ints split into chunks of 65536 values by their
+ * upper sixteen bits, in the style of Roaring bitmaps. A chunk holding at most
+ * 4096 values keeps them as a sorted array of chars; a fuller chunk switches to
+ * a plain bitmap of 8 KB. Sparse and dense sets both stay compact, and values
+ * are always iterated in unsigned order.
+ */
+public class IntBitmap
+{
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private int[] keys = new int[4];
+    private char[][] arrays = new char[4][];
+    private long[][] bitmaps = new long[4][];
+    private int[] cardinalities = new int[4];
+    private int chunks;
+    private int size;
+
+    /**
+     * Creates a bitmap of values, sorting them in place first, which is much
+     * faster than adding them one at a time in random order.
+     *
+     * @param values the values, reordered by this call
+     * @param length the number of values to use
+     * @return the bitmap
+     */
+    public static IntBitmap of(int[] values, int length)
+    {
+        Objects.requireNonNull(values, "values cannot be null");
+
+        // sort in unsigned order by flipping the sign bit around a signed sort
+        for (int i = 0; i < length; i++)
+        {
+            values[i] ^= Integer.MIN_VALUE;
+        }
+        Arrays.sort(values, 0, length);
+        for (int i = 0; i < length; i++)
+        {
+            values[i] ^= Integer.MIN_VALUE;
+        }
+
+        IntBitmap bitmap = new IntBitmap();
+
+        for (int start = 0; start < length;)
+        {
+            int key = values[start] >>> 16;
+
+            int end = start;
+            char[] array = new char[Math.min(MAX_ARRAY_SIZE, length - start)];
+            int count = 0;
+            long[] words = null;
+            while (end < length && values[end] >>> 16 == key)
+            {
+                char low = (char) values[end++];
+                if (count > 0 && array != null && array[count - 1] == low || words != null
+                        && (words[low >>> 6] & (1L << low)) != 0)
+                {
+                    continue;
+                }
+
+                if (words == null && count == MAX_ARRAY_SIZE)
+                {
+                    words = toWords(array, count);
+                    array = null;
+                }
+
+                if (words != null)
+                {
+                    words[low >>> 6] |= 1L << low;
+                }
+                else
+                {
+                    array[count] = low;
+                }
+                count++;
+            }
+
+            bitmap.appendChunk(key, array, words, count);
+            start = end;
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Creates the intersection of two bitmaps.
+     *
+     * @param left  the first bitmap
+     * @param right the second bitmap
+     * @return the values in both bitmaps
+     */
+    public static IntBitmap and(IntBitmap left, IntBitmap right)
+    {
+        return combine(left, right, Operation.AND);
+    }
+
+    /**
+     * Creates the union of two bitmaps.
+     *
+     * @param left  the first bitmap
+     * @param right the second bitmap
+     * @return the values in either bitmap
+     */
+    public static IntBitmap or(IntBitmap left, IntBitmap right)
+    {
+        return combine(left, right, Operation.OR);
+    }
+
+    /**
+     * Creates the difference of two bitmaps.
+     *
+     * @param left  the first bitmap
+     * @param right the second bitmap
+     * @return the values in the first bitmap but not in the second
+     */
+    public static IntBitmap andNot(IntBitmap left, IntBitmap right)
+    {
+        return combine(left, right, Operation.AND_NOT);
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value
+     * @return if the value was not already present
+     */
+    public boolean add(int value)
+    {
+        int key = value >>> 16;
+        char low = (char) value;
+
+        int chunk = this.findChunk(key);
+        if (chunk < 0)
+        {
+            chunk = -chunk - 1;
+            this.insertChunk(chunk, key);
+        }
+
+        boolean added;
+        char[] array = this.arrays[chunk];
+        if (array != null)
+        {
+            int cardinality = this.cardinalities[chunk];
+            int index = Arrays.binarySearch(array, 0, cardinality, low);
+
+            added = index < 0;
+            if (added)
+            {
+                if (cardinality == MAX_ARRAY_SIZE)
+                {
+                    this.toBitmap(chunk);
+                    this.bitmaps[chunk][low >>> 6] |= 1L << low;
+                }
+                else
+                {
+                    index = -index - 1;
+                    if (cardinality == array.length)
+                    {
+                        array = Arrays.copyOf(array, Math.min(MAX_ARRAY_SIZE, 2 * cardinality));
+                        this.arrays[chunk] = array;
+                    }
+                    System.arraycopy(array, index, array, index + 1, cardinality - index);
+                    array[index] = low;
+                }
+            }
+        }
+        else
+        {
+            long[] words = this.bitmaps[chunk];
+            long before = words[low >>> 6];
+            words[low >>> 6] = before | (1L << low);
+
+            added = before != words[low >>> 6];
+        }
+
+        if (added)
+        {
+            this.cardinalities[chunk]++;
+            this.size++;
+        }
+
+        return added;
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param value the value
+     * @return if the value was present
+     */
+    public boolean remove(int value)
+    {
+        int chunk = this.findChunk(value >>> 16);
+        if (chunk < 0)
+        {
+            return false;
+        }
+
+        char low = (char) value;
+        int cardinality = this.cardinalities[chunk];
+
+        boolean removed;
+        char[] array = this.arrays[chunk];
+        if (array != null)
+        {
+            int index = Arrays.binarySearch(array, 0, cardinality, low);
+
+            removed = index >= 0;
+            if (removed)
+            {
+                System.arraycopy(array, index + 1, array, index, cardinality - index - 1);
+            }
+        }
+        else
+        {
+            long[] words = this.bitmaps[chunk];
+            long before = words[low >>> 6];
+            words[low >>> 6] = before & ~(1L << low);
+
+            removed = before != words[low >>> 6];
+        }
+
+        if (removed)
+        {
+            this.size--;
+            this.cardinalities[chunk] = --cardinality;
+
+            if (cardinality == 0)
+            {
+                this.removeChunk(chunk);
+            }
+            else if (array == null && cardinality <= MAX_ARRAY_SIZE)
+            {
+                this.toArray(chunk);
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Determines if a value is present.
+     *
+     * @param value the value
+     * @return if the value is present
+     */
+    public boolean contains(int value)
+    {
+        int chunk = this.findChunk(value >>> 16);
+        if (chunk < 0)
+        {
+            return false;
+        }
+
+        char low = (char) value;
+        char[] array = this.arrays[chunk];
+
+        return array != null ? Arrays.binarySearch(array, 0, this.cardinalities[chunk], low) >= 0
+                : (this.bitmaps[chunk][low >>> 6] & (1L << low)) != 0;
+    }
+
+    /**
+     * Gets the number of values.
+     *
+     * @return the number of values
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Determines if the set is empty.
+     *
+     * @return if there are no values
+     */
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * Gets the approximate memory used by the values, excluding object
+     * headers.
+     *
+     * @return the size in bytes
+     */
+    public long getSizeInBytes()
+    {
+        long bytes = 4L * this.keys.length + 4L * this.cardinalities.length + 16L * this.arrays.length;
+        for (int chunk = 0; chunk < this.chunks; chunk++)
+        {
+            bytes += this.arrays[chunk] != null ? 2L * this.arrays[chunk].length : 8L * BITMAP_WORDS;
+        }
+
+        return bytes;
+    }
+
+    private static IntBitmap combine(IntBitmap left, IntBitmap right, Operation operation)
+    {
+        Objects.requireNonNull(left, "left cannot be null");
+        Objects.requireNonNull(right, "right cannot be null");
+
+        IntBitmap result = new IntBitmap();
+
+        int i = 0;
+        int j = 0;
+        while (i < left.chunks || j < right.chunks)
+        {
+            int leftKey = i < left.chunks ? left.keys[i] : Integer.MAX_VALUE;
+            int rightKey = j < right.chunks ? right.keys[j] : Integer.MAX_VALUE;
+
+            if (leftKey == rightKey)
+            {
+                long[] words = left.words(i);
+                long[] other = right.words(j);
+
+                int count = 0;
+                for (int word = 0; word < BITMAP_WORDS; word++)
+                {
+                    words[word] = operation.apply(words[word], other[word]);
+                    count += Long.bitCount(words[word]);
+                }
+
+                if (count > 0)
+                {
+                    result.appendChunk(leftKey, null, words, count);
+                }
+                i++;
+                j++;
+            }
+            else if (leftKey < rightKey)
+            {
+                if (operation != Operation.AND)
+                {
+                    result.appendCopy(left, i);
+                }
+                i++;
+            }
+            else
+            {
+                if (operation == Operation.OR)
+                {
+                    result.appendCopy(right, j);
+                }
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    private long[] words(int chunk)
+    {
+        return this.arrays[chunk] != null ? toWords(this.arrays[chunk], this.cardinalities[chunk])
+                : this.bitmaps[chunk].clone();
+    }
+
+    private static long[] toWords(char[] array, int count)
+    {
+        long[] words = new long[BITMAP_WORDS];
+        for (int i = 0; i < count; i++)
+        {
+            words[array[i] >>> 6] |= 1L << array[i];
+        }
+
+        return words;
+    }
+
+    private void appendCopy(IntBitmap source, int chunk)
+    {
+        char[] array = source.arrays[chunk];
+        int count = source.cardinalities[chunk];
+
+        this.appendChunk(source.keys[chunk], array == null ? null : Arrays.copyOf(array, count),
+                array == null ? source.bitmaps[chunk].clone() : null, count);
+    }
+
+    private void appendChunk(int key, char[] array, long[] words, int count)
+    {
+        this.insertChunk(this.chunks, key);
+
+        int chunk = this.chunks - 1;
+        this.arrays[chunk] = array == null ? null : array.length == count ? array : Arrays.copyOf(array, count);
+        this.bitmaps[chunk] = words;
+        this.cardinalities[chunk] = count;
+        this.size += count;
+
+        if (words != null && count <= MAX_ARRAY_SIZE)
+        {
+            this.toArray(chunk);
+        }
+    }
+
+    private int findChunk(int key)
+    {
+        return Arrays.binarySearch(this.keys, 0, this.chunks, key);
+    }
+
+    private void insertChunk(int chunk, int key)
+    {
+        if (this.chunks == this.keys.length)
+        {
+            int capacity = 2 * this.chunks;
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.arrays = Arrays.copyOf(this.arrays, capacity);
+            this.bitmaps = Arrays.copyOf(this.bitmaps, capacity);
+            this.cardinalities = Arrays.copyOf(this.cardinalities, capacity);
+        }
+
+        int moved = this.chunks - chunk;
+        System.arraycopy(this.keys, chunk, this.keys, chunk + 1, moved);
+        System.arraycopy(this.arrays, chunk, this.arrays, chunk + 1, moved);
+        System.arraycopy(this.bitmaps, chunk, this.bitmaps, chunk + 1, moved);
+        System.arraycopy(this.cardinalities, chunk, this.cardinalities, chunk + 1, moved);
+
+        this.keys[chunk] = key;
+        this.arrays[chunk] = new char[4];
+        this.bitmaps[chunk] = null;
+        this.cardinalities[chunk] = 0;
+        this.chunks++;
+    }
+
+    private void removeChunk(int chunk)
+    {
+        int moved = this.chunks - chunk - 1;
+        System.arraycopy(this.keys, chunk + 1, this.keys, chunk, moved);
+        System.arraycopy(this.arrays, chunk + 1, this.arrays, chunk, moved);
+        System.arraycopy(this.bitmaps, chunk + 1, this.bitmaps, chunk, moved);
+        System.arraycopy(this.cardinalities, chunk + 1, this.cardinalities, chunk, moved);
+
+        this.chunks--;
+        this.arrays[this.chunks] = null;
+        this.bitmaps[this.chunks] = null;
+    }
+
+    private void toBitmap(int chunk)
+    {
+        this.bitmaps[chunk] = toWords(this.arrays[chunk], this.cardinalities[chunk]);
+        this.arrays[chunk] = null;
+    }
+
+    private void toArray(int chunk)
+    {
+        char[] array = new char[this.cardinalities[chunk]];
+
+        long[] words = this.bitmaps[chunk];
+        int index = 0;
+        for (int word = 0; word < BITMAP_WORDS; word++)
+        {
+            for (long bits = words[word]; bits != 0; bits &= bits - 1)
+            {
+                array[index++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+            }
+        }
+
+        this.arrays[chunk] = array;
+        this.bitmaps[chunk] = null;
+    }
+
+    /**
+     * Combines the words of two bitmap chunks.
+     */
+    private enum Operation
+    {
+        AND,
+        OR,
+        AND_NOT;
+
+        long apply(long left, long right)
+        {
+            long result;
+
+            switch (this)
+            {
+            case AND:
+                result = left & right;
+                break;
+
+            case OR:
+                result = left | right;
+                break;
+
+            case AND_NOT:
+            default:
+                result = left & ~right;
+                break;
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Iterates over the values of a bitmap in unsigned order without
+     * allocating. The bitmap must not change while a cursor iterates it.
+     */
+    public static final class Cursor
+    {
+        private IntBitmap bitmap;
+        private int chunk;
+        private int high;
+        private char[] array;
+        private int index;
+        private int end;
+        private long[] words;
+        private int word;
+        private long bits;
+
+        /**
+         * Positions the cursor at the first value of a bitmap.
+         *
+         * @param bitmap the bitmap
+         * @return this cursor
+         */
+        public Cursor of(IntBitmap bitmap)
+        {
+            this.bitmap = bitmap;
+            this.chunk = -1;
+            this.nextChunk();
+
+            return this;
+        }
+
+        /**
+         * Determines if more values remain.
+         *
+         * @return if more values remain
+         */
+        public boolean hasNext()
+        {
+            return this.chunk < this.bitmap.chunks;
+        }
+
+        /**
+         * Gets the next value.
+         *
+         * @return the next value
+         */
+        public int next()
+        {
+            int value;
+
+            if (this.array != null)
+            {
+                value = this.high | this.array[this.index++];
+                if (this.index == this.end)
+                {
+                    this.nextChunk();
+                }
+            }
+            else
+            {
+                value = this.high | (this.word << 6) | Long.numberOfTrailingZeros(this.bits);
+                this.bits &= this.bits - 1;
+                if (this.bits == 0)
+                {
+                    this.nextWord();
+                }
+            }
+
+            return value;
+        }
+
+        private void nextChunk()
+        {
+            this.chunk++;
+            if (this.chunk < this.bitmap.chunks)
+            {
+                this.high = this.bitmap.keys[this.chunk] << 16;
+                this.array = this.bitmap.arrays[this.chunk];
+                this.index = 0;
+                this.end = this.bitmap.cardinalities[this.chunk];
+
+                if (this.array == null)
+                {
+                    this.words = this.bitmap.bitmaps[this.chunk];
+                    this.word = -1;
+                    this.nextWord();
+                }
+            }
+        }
+
+        private void nextWord()
+        {
+            do
+            {
+                this.word++;
+            }
+            while (this.word < BITMAP_WORDS && this.words[this.word] == 0);
+
+            if (this.word < BITMAP_WORDS)
+            {
+                this.bits = this.words[this.word];
+            }
+            else
+            {
+                this.nextChunk();
+            }
+        }
+    }
+}
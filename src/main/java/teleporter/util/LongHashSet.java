@@ -0,0 +1,280 @@
+/**
+ * LongHashSet.java
+ *
+ * Copyright 2018 Michael G. Leatherman <michael.g.leatherman@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package teleporter.util;
+
+import java.util.Arrays;
+
+/**
+ * Provides a set of primitive longs using open addressing with linear probing.
+ * Each entry costs eight bytes of table space and no objects are allocated per
+ * entry, which makes it suitable for tracking hundreds of millions of packed
+ * keys. The table holds at most 2^30 slots, filled to three quarters, so a set
+ * holds at most {@value #MAX_SIZE} values.
+ */
+public class LongHashSet
+{
+    /** The most values a set can hold. */
+    public static final int MAX_SIZE = 805_306_367;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final long EMPTY = 0L;
+
+    private long[] table;
+    private boolean containsEmpty;
+    private int size;
+
+    /**
+     * Creates a new, empty set.
+     */
+    public LongHashSet()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty set sized for an expected number of entries.
+     *
+     * @param expected the expected number of entries
+     */
+    public LongHashSet(int expected)
+    {
+        if (expected < 0)
+        {
+            throw new IllegalArgumentException("expected cannot be negative");
+        }
+
+        this.table = new long[tableSize(expected)];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value
+     * @return if the value was not already present
+     * @throws IllegalStateException if the set already holds
+     *                               {@link #MAX_SIZE} values
+     */
+    public boolean add(long value)
+    {
+        if (value == EMPTY)
+        {
+            boolean added = !this.containsEmpty;
+            if (added)
+            {
+                this.checkNotFull();
+                this.containsEmpty = true;
+                this.size++;
+            }
+
+            return added;
+        }
+
+        int mask = this.table.length - 1;
+        int slot = hash(value) & mask;
+
+        long entry = this.table[slot];
+        while (entry != EMPTY)
+        {
+            if (entry == value)
+            {
+                return false;
+            }
+
+            slot = (slot + 1) & mask;
+            entry = this.table[slot];
+        }
+
+        this.checkNotFull();
+        this.table[slot] = value;
+        this.size++;
+
+        if (this.size * 4L >= this.table.length * 3L && this.table.length < MAX_CAPACITY)
+        {
+            this.grow();
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes a value. Entries following the removed one in its probe sequence
+     * are shifted back so no tombstones are left behind.
+     *
+     * @param value the value
+     * @return if the value was present
+     */
+    public boolean remove(long value)
+    {
+        if (value == EMPTY)
+        {
+            boolean removed = this.containsEmpty;
+            if (removed)
+            {
+                this.containsEmpty = false;
+                this.size--;
+            }
+
+            return removed;
+        }
+
+        int mask = this.table.length - 1;
+        int slot = hash(value) & mask;
+
+        long entry = this.table[slot];
+        while (entry != value)
+        {
+            if (entry == EMPTY)
+            {
+                return false;
+            }
+
+            slot = (slot + 1) & mask;
+            entry = this.table[slot];
+        }
+
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        entry = this.table[next];
+        while (entry != EMPTY)
+        {
+            int home = hash(entry) & mask;
+
+            // move the entry into the hole unless its home lies cyclically
+            // after the hole, up to and including its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask))
+            {
+                this.table[hole] = entry;
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+            entry = this.table[next];
+        }
+
+        this.table[hole] = EMPTY;
+        this.size--;
+
+        return true;
+    }
+
+    /**
+     * Determines if a value is present.
+     *
+     * @param value the value
+     * @return if the value is present
+     */
+    public boolean contains(long value)
+    {
+        if (value == EMPTY)
+        {
+            return this.containsEmpty;
+        }
+
+        int mask = this.table.length - 1;
+        int slot = hash(value) & mask;
+
+        long entry = this.table[slot];
+        while (entry != EMPTY)
+        {
+            if (entry == value)
+            {
+                return true;
+            }
+
+            slot = (slot + 1) & mask;
+            entry = this.table[slot];
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the number of values.
+     *
+     * @return the number of values
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Removes all values, keeping the current capacity.
+     */
+    public void clear()
+    {
+        Arrays.fill(this.table, EMPTY);
+        this.containsEmpty = false;
+        this.size = 0;
+    }
+
+    private void checkNotFull()
+    {
+        if (this.size == MAX_SIZE)
+        {
+            throw new IllegalStateException("set cannot hold more than " + MAX_SIZE + " values");
+        }
+    }
+
+    private void grow()
+    {
+        long[] old = this.table;
+        this.table = new long[old.length * 2];
+
+        int mask = this.table.length - 1;
+        for (long entry : old)
+        {
+            if (entry != EMPTY)
+            {
+                int slot = hash(entry) & mask;
+                while (this.table[slot] != EMPTY)
+                {
+                    slot = (slot + 1) & mask;
+                }
+
+                this.table[slot] = entry;
+            }
+        }
+    }
+
+    private static int tableSize(int expected)
+    {
+        long size = Long.highestOneBit(Math.max(DEFAULT_CAPACITY, expected * 2L) - 1) << 1;
+
+        return (int) Math.min(size, MAX_CAPACITY);
+    }
+
+    private static int hash(long value)
+    {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53b563bL;
+        h ^= h >>> 33;
+
+        return (int) h;
+    }
+}